@@ -0,0 +1,222 @@
+package org.nantipov.utils.wordhugopress.benchmark;
+
+import org.nantipov.utils.wordhugopress.WordHugoPressApplication;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+
+/**
+ * Runs the whole {@code convertPostsJob} against a generated WordPress database and reports throughput,
+ * chunk latencies, peak heap and the size of the output.
+ * <p>
+ * Options: {@code --posts=N --terms=M --terms-per-post=K --variant=SMALL --upload-size=BYTES
+ * --work-dir=build/harness --reuse-fixture}, all other arguments (e.g. {@code --app.convert.partitioned=true})
+ * are passed to the application.
+ */
+public final class ConvertJobHarness {
+
+    private static final String JOB_NAME = "convertPostsJob";
+    private static final String BATCH_SCHEMA = "org/springframework/batch/core/schema-h2.sql";
+
+    private ConvertJobHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            if (Arrays.asList("posts", "terms", "terms-per-post", "variant", "upload-size", "work-dir",
+                              "reuse-fixture").contains(option[0])) {
+                options.put(option[0], option.length > 1 ? option[1] : "true");
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+        long postsCount = Long.parseLong(options.getOrDefault("posts", "10000"));
+        Path workDir = Paths.get(options.getOrDefault("work-dir", "build/harness"));
+        Path databaseFile = workDir.resolve("db/wordpress");
+        Path wordpressHome = workDir.resolve("wordpress");
+        Path contentDir = workDir.resolve("content");
+
+        if (!Boolean.parseBoolean(options.getOrDefault("reuse-fixture", "false")) ||
+            !Files.exists(workDir.resolve("db"))) {
+            FileSystemUtils.deleteRecursively(workDir);
+            long fixtureStart = System.nanoTime();
+            new WordPressFixture(WordPressFixture.url(databaseFile), wordpressHome).create(
+                    SyntheticCorpus.Variant.valueOf(options.getOrDefault("variant", "SMALL")),
+                    postsCount,
+                    Integer.parseInt(options.getOrDefault("terms", "500")),
+                    Integer.parseInt(options.getOrDefault("terms-per-post", "5")),
+                    Integer.parseInt(options.getOrDefault("upload-size", "16384"))
+            );
+            System.out.printf("fixture          %d posts in %.1f s%n",
+                              postsCount, (System.nanoTime() - fixtureStart) / 1e9);
+        } else {
+            FileSystemUtils.deleteRecursively(contentDir);
+            FileSystemUtils.deleteRecursively(workDir.resolve("state"));
+            FileSystemUtils.deleteRecursively(workDir.resolve("media-store"));
+        }
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.config.name", "harness");
+        properties.put("app.sources." + SyntheticCorpus.SOURCE_NAME + ".wordpress-home", wordpressHome.toString());
+        properties.put("app.sources." + SyntheticCorpus.SOURCE_NAME + ".wordpress-remote-base-url",
+                       SyntheticCorpus.BASE_URL);
+        properties.put("app.sources." + SyntheticCorpus.SOURCE_NAME + ".database.url",
+                       WordPressFixture.url(databaseFile));
+        properties.put("app.sources." + SyntheticCorpus.SOURCE_NAME + ".database.username",
+                       WordPressFixture.USERNAME);
+        properties.put("app.sources." + SyntheticCorpus.SOURCE_NAME + ".database.password",
+                       WordPressFixture.PASSWORD);
+        properties.put("app.target.hugo-site-content-items-dir", contentDir.toString());
+        properties.put("app.convert.state-dir", workDir.resolve("state").toString());
+        properties.put("app.media-store.dir", workDir.resolve("media-store").toString());
+
+        ChunkTimer chunkTimer = new ChunkTimer();
+        try (ConfigurableApplicationContext context =
+                     new SpringApplicationBuilder(WordHugoPressApplication.class)
+                             .web(WebApplicationType.NONE)
+                             .properties(properties)
+                             .initializers(ctx -> ctx.getBeanFactory().registerSingleton("harnessChunkTimer",
+                                                                                         chunkTimer))
+                             .run(applicationArgs.toArray(new String[0]))) {
+            ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource(BATCH_SCHEMA));
+            populator.setContinueOnError(true); // already created when the schema is initialized by Spring Boot
+            populator.execute(context.getBean(DataSource.class));
+
+            HeapSampler heapSampler = new HeapSampler();
+            long start = System.nanoTime();
+            JobExecution jobExecution = context.getBean(JobLauncher.class).run(
+                    context.getBean(JOB_NAME, Job.class),
+                    new JobParametersBuilder().addLong("run", System.currentTimeMillis()).toJobParameters()
+            );
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            heapSampler.stop();
+            report(jobExecution, elapsed, chunkTimer, heapSampler.peak(), contentDir);
+        }
+    }
+
+    private static void report(JobExecution jobExecution, double elapsed, ChunkTimer chunkTimer, long peakHeap,
+                               Path contentDir) throws IOException {
+        long posts = writeCount(jobExecution);
+        long[] chunkDurations = chunkTimer.durations();
+        long files = 0;
+        long bytes = 0;
+        if (Files.exists(contentDir)) {
+            try (Stream<Path> paths = Files.walk(contentDir)) {
+                for (Path path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                    files++;
+                    bytes += Files.size(path);
+                }
+            }
+        }
+        System.out.printf("status           %s%n", jobExecution.getStatus());
+        System.out.printf("posts            %d%n", posts);
+        System.out.printf("elapsed          %.2f s%n", elapsed);
+        System.out.printf("throughput       %.1f posts/s%n", posts / elapsed);
+        System.out.printf("chunks           %d%n", chunkDurations.length);
+        System.out.printf("chunk p50        %.2f ms%n", percentile(chunkDurations, 0.50) / 1e6);
+        System.out.printf("chunk p99        %.2f ms%n", percentile(chunkDurations, 0.99) / 1e6);
+        System.out.printf("peak heap        %.1f MiB%n", peakHeap / (1024.0 * 1024.0));
+        System.out.printf("files written    %d%n", files);
+        System.out.printf("bytes written    %d%n", bytes);
+    }
+
+    private static long writeCount(JobExecution jobExecution) {
+        // a partitioned step reports the sum of its workers (named "<worker step>:<partition>") again
+        boolean isPartitioned = jobExecution.getStepExecutions()
+                                            .stream()
+                                            .anyMatch(stepExecution -> stepExecution.getStepName().contains(":"));
+        return jobExecution.getStepExecutions()
+                           .stream()
+                           .filter(stepExecution -> !isPartitioned || stepExecution.getStepName().contains(":"))
+                           .mapToLong(StepExecution::getWriteCount)
+                           .sum();
+    }
+
+    private static long percentile(long[] sortedValues, double percentile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sortedValues.length) - 1;
+        return sortedValues[Math.max(0, Math.min(sortedValues.length - 1, index))];
+    }
+
+    private static class ChunkTimer implements ChunkListener {
+        private final ThreadLocal<Long> chunkStart = new ThreadLocal<>();
+        private final List<Long> durations = new ArrayList<>();
+
+        @Override
+        public void beforeChunk(ChunkContext context) {
+            chunkStart.set(System.nanoTime());
+        }
+
+        @Override
+        public void afterChunk(ChunkContext context) {
+            long duration = System.nanoTime() - chunkStart.get();
+            synchronized (durations) {
+                durations.add(duration);
+            }
+        }
+
+        private long[] durations() {
+            synchronized (durations) {
+                return durations.stream().mapToLong(Long::longValue).sorted().toArray();
+            }
+        }
+    }
+
+    private static class HeapSampler {
+        private final AtomicLong peak = new AtomicLong();
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private HeapSampler() {
+            executor.scheduleAtFixedRate(this::sample, 0, 50, TimeUnit.MILLISECONDS);
+        }
+
+        private void sample() {
+            peak.accumulateAndGet(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), Math::max);
+        }
+
+        private void stop() {
+            executor.shutdownNow();
+            sample();
+        }
+
+        private long peak() {
+            return peak.get();
+        }
+    }
+}
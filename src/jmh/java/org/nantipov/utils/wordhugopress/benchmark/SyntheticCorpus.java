@@ -0,0 +1,187 @@
+package org.nantipov.utils.wordhugopress.benchmark;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import org.nantipov.utils.wordhugopress.domain.Post;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates reproducible WordPress-like posts for benchmarks.
+ */
+public final class SyntheticCorpus {
+
+    public static final String SOURCE_NAME = "blog";
+    public static final String BASE_URL = "https://blog.example.org/";
+    public static final int COVERS = 1000;
+
+    private static final String[] LATIN_WORDS = {
+            "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed", "do",
+            "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua", "veniam"
+    };
+    private static final String[] NON_LATIN_WORDS = {
+            "привет", "мир", "заметки", "путешествие", "фотография", "горы", "река", "осень",
+            "日本語", "東京", "旅行", "写真", "山", "川", "秋", "Ελλάδα", "θάλασσα", "ταξίδι"
+    };
+
+    public enum Variant {
+        /**
+         * A few paragraphs with a couple of links, a typical short note.
+         */
+        SMALL,
+        /**
+         * Hundreds of paragraphs, lists and code blocks.
+         */
+        LARGE,
+        /**
+         * Short text with hundreds of links and images to the source itself and to other sites.
+         */
+        LINK_HEAVY,
+        /**
+         * Cyrillic, Japanese and Greek titles and text.
+         */
+        NON_LATIN
+    }
+
+    private SyntheticCorpus() {
+    }
+
+    public static List<Post> posts(Variant variant, int count) {
+        List<Post> posts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            posts.add(post(variant, i + 1));
+        }
+        return posts;
+    }
+
+    /**
+     * Rows of the joined reader: one copy of each post per term.
+     */
+    public static List<Post> joinedRows(Variant variant, int count, int termsPerPost) {
+        List<Post> rows = new ArrayList<>(count * termsPerPost);
+        for (Post post : posts(variant, count)) {
+            for (int term = 0; term < termsPerPost; term++) {
+                Post row = new Post();
+                row.setId(post.getId());
+                row.setTitle(post.getTitle());
+                row.setContent(post.getContent());
+                row.setSourceName(post.getSourceName());
+                row.setTaxonomy(ImmutableSetMultimap.of(term % 3 == 0 ? "category" : "post_tag", "term-" + term));
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Generates the post with the given {@code ID}, the same one every time.
+     */
+    public static Post post(Variant variant, long id) {
+        Random random = new Random(31L * variant.ordinal() + id);
+        String[] words = variant == Variant.NON_LATIN ? NON_LATIN_WORDS : LATIN_WORDS;
+        Post post = new Post();
+        post.setId(id);
+        post.setSourceName(SOURCE_NAME);
+        post.setAuthor("Author " + random.nextInt(10));
+        post.setCreatedAt(new Timestamp(1_500_000_000_000L + id * 86_400_000L));
+        post.setModifiedAt(new Timestamp(1_600_000_000_000L + id * 86_400_000L));
+        post.setTitle(sentence(words, 4 + random.nextInt(6), random));
+        post.setThumbnailRawData(thumbnailRawData(cover(id)));
+        post.setTaxonomy(ImmutableSetMultimap.of("category", words[random.nextInt(words.length)],
+                                                 "post_tag", words[random.nextInt(words.length)]));
+        switch (variant) {
+            case LARGE:
+                post.setContent(content(words, 400, 2, random));
+                break;
+            case LINK_HEAVY:
+                post.setContent(content(words, 100, 6, random));
+                break;
+            default:
+                post.setContent(content(words, 6, 1, random));
+                break;
+        }
+        return post;
+    }
+
+    private static String content(String[] words, int paragraphs, int linksPerParagraph, Random random) {
+        StringBuilder content = new StringBuilder();
+        for (int paragraph = 0; paragraph < paragraphs; paragraph++) {
+            switch (paragraph % 10) {
+                case 3:
+                    content.append("<ul>\n");
+                    for (int item = 0; item < 4; item++) {
+                        content.append("<li>").append(sentence(words, 5, random)).append("</li>\n");
+                    }
+                    content.append("</ul>\n");
+                    break;
+                case 7:
+                    content.append("<pre><code>for (int i = 0; i &lt; n; i++) {\n    sum += i;\n}</code></pre>\n");
+                    break;
+                default:
+                    content.append("<p>").append(sentence(words, 30, random));
+                    for (int link = 0; link < linksPerParagraph; link++) {
+                        content.append(' ').append(link(words, paragraph, link, random));
+                    }
+                    content.append("</p>\n\n");
+                    break;
+            }
+        }
+        return content.toString();
+    }
+
+    private static String link(String[] words, int paragraph, int link, Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return "<a href=\"" + BASE_URL + "wp-content/uploads/2020/0" + (1 + link % 9) + "/photo-" +
+                       paragraph + "-" + link + "-1024x768.jpg\"><img src=\"" + BASE_URL +
+                       "wp-content/uploads/2020/01/photo-" + paragraph + "-" + link + "-300x200.jpg\" alt=\"" +
+                       words[random.nextInt(words.length)] + "\"></a>";
+            case 1:
+                return "<a href=\"" + BASE_URL + words[random.nextInt(words.length)] + "-" + paragraph + "/\">" +
+                       sentence(words, 3, random) + "</a>";
+            case 2:
+                return "<img src=\"" + BASE_URL + "wp-content/uploads/2021/05/image-" + paragraph + "-" + link +
+                       ".png\" alt=\"\">";
+            default:
+                return "<a href=\"https://www.example.com/" + words[random.nextInt(words.length)] + "\">" +
+                       sentence(words, 2, random) + "</a>";
+        }
+    }
+
+    private static String sentence(String[] words, int length, Random random) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(words[random.nextInt(words.length)]);
+        }
+        return sentence.toString();
+    }
+
+    /**
+     * Number of the cover image of the post, covers are shared by posts.
+     */
+    public static int cover(long postId) {
+        return (int) (postId % COVERS);
+    }
+
+    /**
+     * Serialized {@code _wp_attachment_metadata} of the cover image, its file is {@code 2020/01/cover-<cover>.jpg}.
+     */
+    public static String thumbnailRawData(int cover) {
+        String file = "2020/01/cover-" + cover + ".jpg";
+        String thumbnail = "cover-" + cover + "-150x150.jpg";
+        String medium = "cover-" + cover + "-300x200.jpg";
+        return "a:5:{s:5:\"width\";i:1024;s:6:\"height\";i:768;" +
+               "s:4:\"file\";s:" + file.length() + ":\"" + file + "\";" +
+               "s:5:\"sizes\";a:2:{" +
+               "s:9:\"thumbnail\";a:4:{s:4:\"file\";s:" + thumbnail.length() + ":\"" + thumbnail + "\";" +
+               "s:5:\"width\";i:150;s:6:\"height\";i:150;s:9:\"mime-type\";s:10:\"image/jpeg\";}" +
+               "s:6:\"medium\";a:4:{s:4:\"file\";s:" + medium.length() + ":\"" + medium + "\";" +
+               "s:5:\"width\";i:300;s:6:\"height\";i:200;s:9:\"mime-type\";s:10:\"image/jpeg\";}" +
+               "}s:10:\"image_meta\";a:0:{}}";
+    }
+}
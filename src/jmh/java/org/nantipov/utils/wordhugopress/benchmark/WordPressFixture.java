@@ -0,0 +1,252 @@
+package org.nantipov.utils.wordhugopress.benchmark;
+
+import org.nantipov.utils.wordhugopress.domain.Post;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generated WordPress database (H2 in MySQL mode) and uploads tree for {@link SyntheticCorpus} posts.
+ */
+public class WordPressFixture {
+
+    public static final String USERNAME = "sa";
+    public static final String PASSWORD = "sa";
+
+    private static final String UPLOADS_PATH = "wp-content/uploads/";
+    private static final Pattern UPLOAD_PATTERN =
+            Pattern.compile(Pattern.quote(SyntheticCorpus.BASE_URL + UPLOADS_PATH) + "([^\"]+)");
+    private static final int USERS = 10;
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE wp_users (\n" +
+            "    ID BIGINT PRIMARY KEY,\n" +
+            "    user_login VARCHAR(60) NOT NULL,\n" +
+            "    display_name VARCHAR(250) NOT NULL\n" +
+            ")",
+            "CREATE TABLE wp_posts (\n" +
+            "    ID BIGINT PRIMARY KEY,\n" +
+            "    post_author BIGINT NOT NULL DEFAULT 0,\n" +
+            "    post_date DATETIME NOT NULL,\n" +
+            "    post_content LONGTEXT NOT NULL,\n" +
+            "    post_title TEXT NOT NULL,\n" +
+            "    post_status VARCHAR(20) NOT NULL DEFAULT 'publish',\n" +
+            "    post_name VARCHAR(200) NOT NULL DEFAULT '',\n" +
+            "    post_modified DATETIME NOT NULL,\n" +
+            "    post_parent BIGINT NOT NULL DEFAULT 0,\n" +
+            "    guid VARCHAR(255) NOT NULL DEFAULT '',\n" +
+            "    post_type VARCHAR(20) NOT NULL DEFAULT 'post',\n" +
+            "    post_mime_type VARCHAR(100) NOT NULL DEFAULT ''\n" +
+            ")",
+            "CREATE INDEX wp_posts_type_status_date ON wp_posts (post_type, post_status, post_date, ID)",
+            "CREATE TABLE wp_postmeta (\n" +
+            "    meta_id BIGINT AUTO_INCREMENT PRIMARY KEY,\n" +
+            "    post_id BIGINT NOT NULL DEFAULT 0,\n" +
+            "    meta_key VARCHAR(255),\n" +
+            "    meta_value LONGTEXT\n" +
+            ")",
+            "CREATE INDEX wp_postmeta_post_id ON wp_postmeta (post_id)",
+            "CREATE INDEX wp_postmeta_meta_key ON wp_postmeta (meta_key)",
+            "CREATE TABLE wp_terms (\n" +
+            "    term_id BIGINT PRIMARY KEY,\n" +
+            "    name VARCHAR(200) NOT NULL,\n" +
+            "    slug VARCHAR(200) NOT NULL\n" +
+            ")",
+            "CREATE TABLE wp_term_taxonomy (\n" +
+            "    term_taxonomy_id BIGINT PRIMARY KEY,\n" +
+            "    term_id BIGINT NOT NULL,\n" +
+            "    taxonomy VARCHAR(32) NOT NULL,\n" +
+            "    description LONGTEXT,\n" +
+            "    parent BIGINT NOT NULL DEFAULT 0\n" +
+            ")",
+            "CREATE TABLE wp_term_relationships (\n" +
+            "    object_id BIGINT NOT NULL,\n" +
+            "    term_taxonomy_id BIGINT NOT NULL,\n" +
+            "    term_order INT NOT NULL DEFAULT 0,\n" +
+            "    PRIMARY KEY (object_id, term_taxonomy_id)\n" +
+            ")",
+            "CREATE INDEX wp_term_relationships_term_taxonomy_id ON wp_term_relationships (term_taxonomy_id)"
+    };
+
+    private final String url;
+    private final Path wordpressHome;
+
+    public WordPressFixture(String url, Path wordpressHome) {
+        this.url = url;
+        this.wordpressHome = wordpressHome;
+    }
+
+    /**
+     * H2 URL of the database file in MySQL mode.
+     */
+    public static String url(Path databaseFile) {
+        return "jdbc:h2:file:" + databaseFile.toAbsolutePath() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+    }
+
+    /**
+     * Creates the schema and fills it with posts, their terms and covers, then writes all referenced uploads.
+     *
+     * @param postsCount   number of posts, IDs are {@code 1..postsCount}
+     * @param termsCount   number of terms, every third one is a category and the others are tags
+     * @param termsPerPost number of terms of every post
+     * @param uploadSize   size of every file in the uploads tree
+     */
+    public void create(SyntheticCorpus.Variant variant, long postsCount, int termsCount, int termsPerPost,
+                       int uploadSize) throws SQLException, IOException {
+        Set<String> uploads = new HashSet<>();
+        try (Connection connection = DriverManager.getConnection(url, USERNAME, PASSWORD)) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                for (String ddl : SCHEMA) {
+                    statement.execute(ddl);
+                }
+            }
+            insertUsers(connection);
+            insertTerms(connection, termsCount);
+            insertCovers(connection, postsCount, uploads);
+            insertPosts(connection, variant, postsCount, termsCount, termsPerPost, uploads);
+            connection.commit();
+        }
+        for (String upload : uploads) {
+            writeUpload(upload, uploadSize);
+        }
+    }
+
+    private void insertUsers(Connection connection) throws SQLException {
+        try (PreparedStatement users = connection.prepareStatement(
+                "INSERT INTO wp_users (ID, user_login, display_name) VALUES (?, ?, ?)")) {
+            for (int user = 0; user < USERS; user++) {
+                users.setLong(1, user + 1);
+                users.setString(2, "author" + user);
+                users.setString(3, "Author " + user);
+                users.addBatch();
+            }
+            users.executeBatch();
+        }
+    }
+
+    private void insertTerms(Connection connection, int termsCount) throws SQLException {
+        try (PreparedStatement terms = connection.prepareStatement(
+                "INSERT INTO wp_terms (term_id, name, slug) VALUES (?, ?, ?)");
+             PreparedStatement termTaxonomies = connection.prepareStatement(
+                     "INSERT INTO wp_term_taxonomy (term_taxonomy_id, term_id, taxonomy, description) " +
+                     "VALUES (?, ?, ?, '')")) {
+            for (int term = 1; term <= termsCount; term++) {
+                terms.setLong(1, term);
+                terms.setString(2, "Term " + term);
+                terms.setString(3, "term-" + term);
+                terms.addBatch();
+                termTaxonomies.setLong(1, term);
+                termTaxonomies.setLong(2, term);
+                termTaxonomies.setString(3, term % 3 == 0 ? "category" : "post_tag");
+                termTaxonomies.addBatch();
+                if (term % BATCH_SIZE == 0) {
+                    terms.executeBatch();
+                    termTaxonomies.executeBatch();
+                }
+            }
+            terms.executeBatch();
+            termTaxonomies.executeBatch();
+        }
+    }
+
+    private void insertCovers(Connection connection, long postsCount, Set<String> uploads) throws SQLException {
+        try (PreparedStatement attachments = connection.prepareStatement(
+                "INSERT INTO wp_posts (ID, post_author, post_date, post_content, post_title, post_status, " +
+                "post_modified, post_type, post_mime_type) " +
+                "VALUES (?, 1, ?, '', ?, 'inherit', ?, 'attachment', 'image/jpeg')");
+             PreparedStatement meta = connection.prepareStatement(
+                     "INSERT INTO wp_postmeta (post_id, meta_key, meta_value) VALUES (?, ?, ?)")) {
+            Timestamp date = new Timestamp(1_500_000_000_000L);
+            for (int cover = 0; cover < SyntheticCorpus.COVERS; cover++) {
+                long attachmentId = coverId(postsCount, cover);
+                attachments.setLong(1, attachmentId);
+                attachments.setTimestamp(2, date);
+                attachments.setString(3, "cover-" + cover);
+                attachments.setTimestamp(4, date);
+                attachments.addBatch();
+                meta.setLong(1, attachmentId);
+                meta.setString(2, "_wp_attachment_metadata");
+                meta.setString(3, SyntheticCorpus.thumbnailRawData(cover));
+                meta.addBatch();
+                uploads.add("2020/01/cover-" + cover + ".jpg");
+            }
+            attachments.executeBatch();
+            meta.executeBatch();
+        }
+    }
+
+    private void insertPosts(Connection connection, SyntheticCorpus.Variant variant, long postsCount,
+                             int termsCount, int termsPerPost, Set<String> uploads) throws SQLException {
+        try (PreparedStatement posts = connection.prepareStatement(
+                "INSERT INTO wp_posts (ID, post_author, post_date, post_content, post_title, post_status, " +
+                "post_name, post_modified, post_type) VALUES (?, ?, ?, ?, ?, ?, ?, ?, 'post')");
+             PreparedStatement relationships = connection.prepareStatement(
+                     "INSERT INTO wp_term_relationships (object_id, term_taxonomy_id) VALUES (?, ?)");
+             PreparedStatement meta = connection.prepareStatement(
+                     "INSERT INTO wp_postmeta (post_id, meta_key, meta_value) VALUES (?, '_thumbnail_id', ?)")) {
+            for (long id = 1; id <= postsCount; id++) {
+                Post post = SyntheticCorpus.post(variant, id);
+                posts.setLong(1, id);
+                posts.setLong(2, 1 + id % USERS);
+                posts.setTimestamp(3, post.getCreatedAt());
+                posts.setString(4, post.getContent());
+                posts.setString(5, post.getTitle());
+                posts.setString(6, id % 20 == 0 ? "draft" : "publish");
+                posts.setString(7, "post-" + id);
+                posts.setTimestamp(8, post.getModifiedAt());
+                posts.addBatch();
+                for (int term = 0; term < Math.min(termsPerPost, termsCount); term++) {
+                    relationships.setLong(1, id);
+                    relationships.setLong(2, 1 + (id * 7 + term * 13L) % termsCount);
+                    relationships.addBatch();
+                }
+                meta.setLong(1, id);
+                meta.setString(2, Long.toString(coverId(postsCount, SyntheticCorpus.cover(id))));
+                meta.addBatch();
+                Matcher matcher = UPLOAD_PATTERN.matcher(post.getContent());
+                while (matcher.find()) {
+                    uploads.add(matcher.group(1));
+                }
+                if (id % BATCH_SIZE == 0) {
+                    posts.executeBatch();
+                    relationships.executeBatch();
+                    meta.executeBatch();
+                    connection.commit();
+                }
+            }
+            posts.executeBatch();
+            relationships.executeBatch();
+            meta.executeBatch();
+        }
+    }
+
+    private void writeUpload(String upload, int uploadSize) throws IOException {
+        Path file = wordpressHome.resolve(UPLOADS_PATH + upload);
+        Files.createDirectories(file.getParent());
+        // distinct content per file, so that the media store does not fold them into one
+        byte[] name = upload.getBytes(StandardCharsets.UTF_8);
+        byte[] content = new byte[uploadSize];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = name[i % name.length];
+        }
+        Files.write(file, content);
+    }
+
+    private static long coverId(long postsCount, int cover) {
+        return postsCount + 1 + cover;
+    }
+}
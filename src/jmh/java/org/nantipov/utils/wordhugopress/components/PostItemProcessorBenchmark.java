@@ -0,0 +1,65 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.nantipov.utils.wordhugopress.benchmark.SyntheticCorpus;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PostItemProcessorBenchmark {
+
+    private static final int POSTS = 100;
+
+    @Param
+    private SyntheticCorpus.Variant variant;
+
+    @Param
+    private ConvertSettings.ContentConverter contentConverter;
+
+    private PostItemProcessor processor;
+    private List<Post> posts;
+
+    @Setup
+    public void setUp() {
+        SourcesSettings.Source source = new SourcesSettings.Source();
+        source.setWordpressRemoteBaseUrl(SyntheticCorpus.BASE_URL);
+        SourcesSettings sourcesSettings = new SourcesSettings();
+        sourcesSettings.getSources().put(SyntheticCorpus.SOURCE_NAME, source);
+        ConvertSettings convertSettings = new ConvertSettings();
+        convertSettings.setContentConverter(contentConverter);
+        SourceDataSources sourceDataSources = new SourceDataSources(sourcesSettings);
+        SlugService slugService = new SlugService(convertSettings, sourcesSettings, sourceDataSources);
+        PermalinkIndex permalinkIndex = new PermalinkIndex(convertSettings, sourcesSettings, sourceDataSources,
+                                                           slugService);
+        processor = new PostItemProcessor(sourcesSettings, convertSettings,
+                                          new SourceUrlResolver(sourcesSettings),
+                                          new UploadsIndex(convertSettings, sourcesSettings),
+                                          slugService, permalinkIndex,
+                                          new SimpleMeterRegistry());
+        posts = SyntheticCorpus.posts(variant, POSTS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSTS)
+    public void process(Blackhole blackhole) {
+        for (Post post : posts) {
+            blackhole.consume(processor.process(post));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.nantipov.utils.wordhugopress.benchmark.SyntheticCorpus;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PostMetadataBenchmark {
+
+    private static final int POSTS = 100;
+
+    @Param({"SMALL", "NON_LATIN"})
+    private SyntheticCorpus.Variant variant;
+
+    private SourcesSettings.Source source;
+    private SlugService slugService;
+    private PostItemProcessor processor;
+    private List<Post> posts;
+    private Path wordpressHome;
+
+    @Setup
+    public void setUp() throws IOException {
+        posts = SyntheticCorpus.posts(variant, POSTS);
+        // the cover of every post is found under wordpress-home
+        wordpressHome = Files.createTempDirectory("wordpress-home");
+        Path coversDir = Files.createDirectories(wordpressHome.resolve("wp-content/uploads/2020/01"));
+        for (Post post : posts) {
+            Path cover = coversDir.resolve("cover-" + SyntheticCorpus.cover(post.getId()) + ".jpg");
+            if (!Files.exists(cover)) {
+                Files.createFile(cover);
+            }
+        }
+
+        source = new SourcesSettings.Source();
+        source.setTargetResourceSuffix("-blog");
+        source.setWordpressRemoteBaseUrl(SyntheticCorpus.BASE_URL);
+        source.setWordpressHome(wordpressHome);
+        SourcesSettings sourcesSettings = new SourcesSettings();
+        sourcesSettings.getSources().put(SyntheticCorpus.SOURCE_NAME, source);
+        ConvertSettings convertSettings = new ConvertSettings();
+        SourceDataSources sourceDataSources = new SourceDataSources(sourcesSettings);
+        slugService = new SlugService(convertSettings, sourcesSettings, sourceDataSources);
+        processor = new PostItemProcessor(sourcesSettings, convertSettings, new SourceUrlResolver(sourcesSettings),
+                                          new UploadsIndex(convertSettings, sourcesSettings), slugService,
+                                          new PermalinkIndex(convertSettings, sourcesSettings, sourceDataSources,
+                                                             slugService),
+                                          new SimpleMeterRegistry());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        MoreFiles.deleteRecursively(wordpressHome, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSTS)
+    public void slugify(Blackhole blackhole) {
+        for (Post post : posts) {
+            blackhole.consume(SlugService.slugify(post.getTitle() + source.getTargetResourceSuffix()));
+        }
+    }
+
+    // titles repeat across iterations, so this measures the cache
+    @Benchmark
+    @OperationsPerInvocation(POSTS)
+    public void cachedSlug(Blackhole blackhole) {
+        for (Post post : posts) {
+            blackhole.consume(slugService.slug(post.getTitle(), source));
+        }
+    }
+
+    // posts without content, so that the cover lookup is not buried under the conversion
+    @Benchmark
+    @OperationsPerInvocation(POSTS)
+    public void processCover(Blackhole blackhole) {
+        for (Post post : posts) {
+            Post metadata = new Post();
+            metadata.setId(post.getId());
+            metadata.setSourceName(post.getSourceName());
+            metadata.setTitle(post.getTitle());
+            metadata.setContent("");
+            metadata.setThumbnailRawData(post.getThumbnailRawData());
+            blackhole.consume(processor.process(metadata).getThumbnailFilename());
+        }
+    }
+}
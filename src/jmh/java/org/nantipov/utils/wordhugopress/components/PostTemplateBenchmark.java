@@ -0,0 +1,76 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import freemarker.template.Configuration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.nantipov.utils.wordhugopress.benchmark.SyntheticCorpus;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PostTemplateBenchmark {
+
+    private static final int POSTS = 100;
+
+    @Param
+    private SyntheticCorpus.Variant variant;
+
+    @Param
+    private ConvertSettings.Renderer renderer;
+
+    private PostRenderer postRenderer;
+    private List<Post> posts;
+    private final StringWriter buffer = new StringWriter(16 * 1024);
+
+    @Setup
+    public void setUp() throws IOException {
+        Configuration configuration = new Configuration(Configuration.VERSION_2_3_32);
+        configuration.setClassForTemplateLoading(PostTemplateBenchmark.class, "/templates/");
+        configuration.setDefaultEncoding(StandardCharsets.UTF_8.name());
+        postRenderer = renderer == ConvertSettings.Renderer.FREEMARKER
+                       ? new FreemarkerPostRenderer(configuration.getTemplate("empty-post.ftl"))
+                       : new FrontMatterPostRenderer();
+
+        SourcesSettings sourcesSettings = new SourcesSettings();
+        ConvertSettings convertSettings = new ConvertSettings();
+        SourceDataSources sourceDataSources = new SourceDataSources(sourcesSettings);
+        SlugService slugService = new SlugService(convertSettings, sourcesSettings, sourceDataSources);
+        PermalinkIndex permalinkIndex = new PermalinkIndex(convertSettings, sourcesSettings, sourceDataSources,
+                                                           slugService);
+        PostItemProcessor processor = new PostItemProcessor(sourcesSettings, convertSettings,
+                                                            new SourceUrlResolver(sourcesSettings),
+                                                            new UploadsIndex(convertSettings, sourcesSettings),
+                                                            slugService, permalinkIndex,
+                                                            new SimpleMeterRegistry());
+        posts = SyntheticCorpus.posts(variant, POSTS);
+        posts.forEach(processor::process);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSTS)
+    public void render(Blackhole blackhole) throws IOException {
+        for (Post post : posts) {
+            buffer.getBuffer().setLength(0);
+            postRenderer.render(post, buffer);
+            blackhole.consume(buffer.getBuffer().length());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.nantipov.utils.wordhugopress.config.job.convertposts;
+
+import org.nantipov.utils.wordhugopress.benchmark.SyntheticCorpus;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.nantipov.utils.wordhugopress.tools.PartitionItemReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.support.ListItemReader;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Folding of joined rows (one per post term) into posts, as done by the {@code JOINED} reader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JoinedPostsBenchmark {
+
+    private static final int POSTS = 1000;
+
+    @Param({"1", "8", "32"})
+    private int termsPerPost;
+
+    private PartitionItemReader<Post, Post> reader;
+
+    // the first row of a post becomes the post, so each invocation needs fresh ones
+    @Setup(Level.Invocation)
+    public void setUp() {
+        reader = new PartitionItemReader<>(
+                new ListItemReader<>(SyntheticCorpus.joinedRows(SyntheticCorpus.Variant.SMALL, POSTS, termsPerPost)),
+                Post::getId,
+                ConvertPostsReaderConfig.joinedPostCollector(),
+                -1
+        );
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSTS)
+    public void fold(Blackhole blackhole) throws Exception {
+        Post post;
+        while ((post = reader.read()) != null) {
+            blackhole.consume(post);
+        }
+    }
+}
@@ -1,11 +1,9 @@
 package org.nantipov.utils.wordhugopress;
 
-import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
 @SpringBootApplication
-@EnableBatchProcessing
 public class WordHugoPressApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,181 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.repeat.CompletionPolicy;
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.repeat.context.RepeatContextSupport;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Strings.nullToEmpty;
+
+/**
+ * Closes a chunk of the convert step when it has enough posts, enough bytes of content or has taken long enough.
+ * <p>
+ * The number of posts of a chunk follows the observed time per post, so that a chunk takes about
+ * {@code chunkMaxTime}: chunks of small posts grow up to {@code chunkMaxSize}, chunks of large ones shrink.
+ * Posts read into a chunk are counted by their content (two bytes per char) against {@code chunkMaxBytes}.
+ * When the heap is still mostly used after the last garbage collection, both limits are halved. With
+ * {@code adaptiveChunks} disabled every chunk has {@code chunkSize} posts.
+ * <p>
+ * Chunks of partitions are sized on their own threads, the time per post is shared.
+ */
+@Component
+public class AdaptiveChunkPolicy implements CompletionPolicy, ItemReadListener<Post>, ChunkListener {
+
+    private static final double HEAP_PRESSURE = 0.75;
+    // weight of the last chunk in the average time per post
+    private static final int SMOOTHING = 4;
+
+    private final ConvertSettings convertSettings;
+    private final List<MemoryPoolMXBean> heapPools;
+    private final DistributionSummary chunkSizes;
+    private final AtomicLong postNanos = new AtomicLong();
+    private final ThreadLocal<ChunkStats> chunks = new ThreadLocal<>();
+
+    public AdaptiveChunkPolicy(ConvertSettings convertSettings, MeterRegistry meterRegistry) {
+        this.convertSettings = convertSettings;
+        this.heapPools = ManagementFactory.getMemoryPoolMXBeans()
+                                          .stream()
+                                          .filter(pool -> pool.getType() == MemoryType.HEAP)
+                                          .filter(MemoryPoolMXBean::isCollectionUsageThresholdSupported)
+                                          .collect(Collectors.toList());
+        this.chunkSizes = DistributionSummary.builder("wordhugopress.chunk.posts")
+                                             .description("Posts per chunk")
+                                             .register(meterRegistry);
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        chunks.set(new ChunkStats(nanoTime()));
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        ChunkStats stats = chunks.get();
+        if (stats != null && stats.posts > 0) {
+            chunkSizes.record(stats.posts);
+            long nanos = (nanoTime() - stats.startNanos) / stats.posts;
+            postNanos.accumulateAndGet(nanos, (average, last) -> average == 0
+                                                                 ? last
+                                                                 : average + (last - average) / SMOOTHING);
+        }
+        chunks.remove();
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        chunks.remove();
+    }
+
+    @Override
+    public void afterRead(Post post) {
+        ChunkStats stats = chunks.get();
+        if (stats != null) {
+            stats.bytes += 2L * (nullToEmpty(post.getContent()).length() + nullToEmpty(post.getTitle()).length());
+        }
+    }
+
+    @Override
+    public RepeatContext start(RepeatContext parent) {
+        ChunkStats stats = chunks.get();
+        if (stats == null) {
+            // not registered as a chunk listener of the step
+            stats = new ChunkStats(nanoTime());
+            chunks.set(stats);
+        }
+        if (!convertSettings.isAdaptiveChunks()) {
+            return new Chunk(parent, stats, convertSettings.getChunkSize(), Long.MAX_VALUE, Long.MAX_VALUE);
+        }
+        int maxPosts = convertSettings.getChunkMaxSize();
+        long maxNanos = convertSettings.getChunkMaxTime().toNanos();
+        long maxBytes = convertSettings.getChunkMaxBytes();
+        long nanos = postNanos.get();
+        int posts = nanos > 0
+                    ? (int) Math.max(1, Math.min(maxPosts, maxNanos / nanos))
+                    : Math.min(maxPosts, convertSettings.getChunkSize());
+        if (isHeapUnderPressure()) {
+            posts = Math.max(1, posts / 2);
+            maxBytes /= 2;
+        }
+        return new Chunk(parent, stats, posts, maxBytes, maxNanos);
+    }
+
+    @Override
+    public void update(RepeatContext context) {
+        context.increment();
+        ((Chunk) context).stats.posts++;
+    }
+
+    @Override
+    public boolean isComplete(RepeatContext context, RepeatStatus result) {
+        return result == null || !result.isContinuable() || isComplete(context);
+    }
+
+    @Override
+    public boolean isComplete(RepeatContext context) {
+        Chunk chunk = (Chunk) context;
+        return chunk.getStartedCount() >= chunk.maxPosts ||
+               chunk.stats.bytes >= chunk.maxBytes ||
+               nanoTime() - chunk.stats.startNanos >= chunk.maxNanos;
+    }
+
+    @VisibleForTesting
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * @return {@code true} if a heap pool is mostly used even after the last garbage collection
+     */
+    @VisibleForTesting
+    boolean isHeapUnderPressure() {
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getMax() > 0 && usage.getUsed() > usage.getMax() * HEAP_PRESSURE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class ChunkStats {
+        private final long startNanos;
+        private int posts;
+        private long bytes;
+
+        private ChunkStats(long startNanos) {
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static class Chunk extends RepeatContextSupport {
+        private final ChunkStats stats;
+        private final int maxPosts;
+        private final long maxBytes;
+        private final long maxNanos;
+
+        private Chunk(RepeatContext parent, ChunkStats stats, int maxPosts, long maxBytes, long maxNanos) {
+            super(parent);
+            this.stats = stats;
+            this.maxPosts = maxPosts;
+            this.maxBytes = maxBytes;
+            this.maxNanos = maxNanos;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.nantipov.utils.wordhugopress.domain.Watermark;
+import org.springframework.lang.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Common parts of the readers of WordPress export files.
+ */
+final class ExportFiles {
+
+    static final String POST_TYPE_POST = "post";
+    static final String POST_TYPE_ATTACHMENT = "attachment";
+    static final String META_THUMBNAIL_ID = "_thumbnail_id";
+    static final String META_ATTACHMENT_METADATA = "_wp_attachment_metadata";
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final Set<String> DRAFT_STATUSES = ImmutableSet.of("draft", "auto-draft");
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private ExportFiles() {
+    }
+
+    /**
+     * Opens the file for buffered reading, a {@code .gz} file is decompressed on the fly.
+     */
+    static InputStream open(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        if (file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz")) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        return in;
+    }
+
+    static boolean isDraft(@Nullable String status) {
+        return DRAFT_STATUSES.contains(Strings.nullToEmpty(status).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Parses a MySQL {@code DATETIME} in the time zone of the JVM, as the JDBC driver does.
+     *
+     * @return {@code null} for an empty or zero date
+     */
+    @Nullable
+    static Timestamp timestamp(@Nullable String value) {
+        if (Strings.isNullOrEmpty(value) || value.startsWith("0000-00-00")) {
+            return null;
+        }
+        try {
+            return Timestamp.valueOf(LocalDateTime.parse(value.trim(), DATE_TIME_FORMAT));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks the post against the conditions of the database queries: {@code afterId < ID <= maxId}
+     * and {@code (post_modified, ID)} after the watermark.
+     */
+    static boolean isSelected(Post post, long afterId, long maxId, @Nullable Watermark watermark) {
+        if (post.getId() <= afterId || post.getId() > maxId) {
+            return false;
+        }
+        return watermark == null || watermark.isBefore(post);
+    }
+}
@@ -0,0 +1,30 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.collect.ImmutableMap;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import org.nantipov.utils.wordhugopress.domain.Post;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Renders posts with a FreeMarker template, the post is available in the template as {@code post}.
+ */
+public class FreemarkerPostRenderer implements PostRenderer {
+
+    private final Template template;
+
+    public FreemarkerPostRenderer(Template template) {
+        this.template = template;
+    }
+
+    @Override
+    public void render(Post post, Writer out) throws IOException {
+        try {
+            template.process(ImmutableMap.of("post", post), out);
+        } catch (TemplateException e) {
+            throw new IOException("Could not render post " + post.getId() + " with " + template.getName(), e);
+        }
+    }
+}
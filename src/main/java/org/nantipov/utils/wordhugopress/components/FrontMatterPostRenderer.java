@@ -0,0 +1,150 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Multimap;
+import org.nantipov.utils.wordhugopress.domain.Post;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+
+/**
+ * Writes the page the same way as the {@code empty-post.ftl} template does, directly into the output.
+ * <p>
+ * Dates are written like FreeMarker's {@code ?iso_local}: seconds, milliseconds only when not zero, and
+ * the offset of the default time zone, {@code Z} for UTC and hours only when the offset has no minutes.
+ * A post without a value the template requires is not rendered either.
+ */
+public class FrontMatterPostRenderer implements PostRenderer {
+
+    @Override
+    public void render(Post post, Writer out) throws IOException {
+        // values the template requires
+        String title = required(post, "title", post.getTitle());
+        String author = required(post, "author", post.getAuthor());
+        Timestamp createdAt = required(post, "createdAt", post.getCreatedAt());
+        Timestamp modifiedAt = required(post, "modifiedAt", post.getModifiedAt());
+        boolean hasCover = !Strings.isNullOrEmpty(post.getThumbnailFilename());
+        String postDirectoryName = hasCover ? required(post, "postDirectoryName", post.getPostDirectoryName()) : null;
+        Multimap<String, String> taxonomy = required(post, "taxonomy", post.getTaxonomy());
+        String processedContent = required(post, "processedContent", post.getProcessedContent());
+
+        out.write("---\ntitle: '");
+        out.write(title);
+        out.write("'\nauthor: ");
+        out.write(author);
+        out.write("\ndate: ");
+        writeIsoLocal(out, createdAt);
+        out.write("\npublishdate: ");
+        writeIsoLocal(out, createdAt);
+        out.write("\nlastmod: ");
+        writeIsoLocal(out, modifiedAt);
+        out.write(post.isDraft() ? "\ndraft: true" : "\ndraft: false");
+        out.write("\ndescription: '");
+        out.write(title);
+        out.write("'\n");
+        if (hasCover) {
+            out.write("cover: 'posts/");
+            out.write(postDirectoryName);
+            out.write('/');
+            out.write(post.getThumbnailFilename());
+            out.write("'\n");
+        }
+        for (String taxonomyName : taxonomy.keySet()) {
+            writeTaxonomy(out, taxonomyName, taxonomy.get(taxonomyName));
+        }
+        out.write("---\n\n");
+        out.write(processedContent);
+        out.write('\n');
+    }
+
+    private static <T> T required(Post post, String name, T value) throws IOException {
+        if (value == null) {
+            throw new IOException("Could not render post " + post.getId() + ", it has no " + name);
+        }
+        return value;
+    }
+
+    private static void writeTaxonomy(Writer out, String taxonomyName, Collection<String> terms) throws IOException {
+        switch (taxonomyName) {
+            case "category":
+                out.write("categories");
+                break;
+            case "post_tag":
+                out.write("tags");
+                break;
+            default:
+                out.write(taxonomyName);
+                break;
+        }
+        out.write(": [");
+        boolean isFirst = true;
+        for (String term : terms) {
+            if (!isFirst) {
+                out.write(", ");
+            }
+            out.write('\'');
+            out.write(term);
+            out.write('\'');
+            isFirst = false;
+        }
+        out.write("]\n");
+    }
+
+    private static void writeIsoLocal(Writer out, Timestamp timestamp) throws IOException {
+        ZonedDateTime dateTime = Instant.ofEpochMilli(timestamp.getTime()).atZone(ZoneId.systemDefault());
+        writeDigits(out, dateTime.getYear(), 4);
+        out.write('-');
+        writeDigits(out, dateTime.getMonthValue(), 2);
+        out.write('-');
+        writeDigits(out, dateTime.getDayOfMonth(), 2);
+        out.write('T');
+        writeDigits(out, dateTime.getHour(), 2);
+        out.write(':');
+        writeDigits(out, dateTime.getMinute(), 2);
+        out.write(':');
+        writeDigits(out, dateTime.getSecond(), 2);
+        int millis = dateTime.getNano() / 1_000_000;
+        if (millis != 0) {
+            out.write('.');
+            do {
+                out.write('0' + millis / 100);
+                millis = millis % 100 * 10;
+            } while (millis != 0);
+        }
+        int offset = dateTime.getOffset().getTotalSeconds();
+        if (offset == 0) {
+            out.write('Z');
+            return;
+        }
+        out.write(offset < 0 ? '-' : '+');
+        offset = Math.abs(offset);
+        writeDigits(out, offset / 3600, 2);
+        if (offset % 3600 != 0) {
+            out.write(':');
+            writeDigits(out, offset / 60 % 60, 2);
+            if (offset % 60 != 0) {
+                out.write(':');
+                writeDigits(out, offset % 60, 2);
+            }
+        }
+    }
+
+    private static void writeDigits(Writer out, int value, int digits) throws IOException {
+        int divisor = 1;
+        for (int i = 1; i < digits; i++) {
+            divisor *= 10;
+        }
+        if (value >= divisor * 10) {
+            out.write(Integer.toString(value));
+            return;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.write('0' + value / divisor % 10);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.nantipov.utils.wordhugopress.domain.Watermark;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * State of the incremental conversion: per source the {@link Watermark} of the converted posts
+ * and the directories of all converted posts by {@code ID}.
+ * <p>
+ * Only posts after the watermark are read, a converted post modified at the moment of the watermark
+ * is not read again. After a successful run, page bundles of posts which are gone from the source
+ * (or were renamed) are removed and the state is saved.
+ */
+@Slf4j
+@Component
+public class IncrementalState implements JobExecutionListener {
+
+    private static final String STATE_FILE_SUFFIX = ".state";
+    private static final String WATERMARK_KEY = "watermark";
+    private static final String SEPARATOR = "\t";
+
+    private final ConvertSettings convertSettings;
+    private final SourcesSettings sourcesSettings;
+    private final SourceDataSources sourceDataSources;
+    private final Path contentItemDir;
+
+    private final Map<String, SourceState> states = new ConcurrentHashMap<>();
+
+    public IncrementalState(ConvertSettings convertSettings,
+                            SourcesSettings sourcesSettings,
+                            SourceDataSources sourceDataSources,
+                            @Value("${app.target.hugo-site-content-items-dir}") Path contentItemDir) {
+        this.convertSettings = convertSettings;
+        this.sourcesSettings = sourcesSettings;
+        this.sourceDataSources = sourceDataSources;
+        this.contentItemDir = contentItemDir;
+        if (convertSettings.isIncremental()) {
+            sourcesSettings.getSources().keySet().forEach(sourceName -> states.put(sourceName, load(sourceName)));
+        }
+    }
+
+    /**
+     * Returns watermark after which posts of the source should be read, empty when all posts should be read.
+     */
+    public Optional<Watermark> getWatermark(String sourceName) {
+        return Optional.ofNullable(states.get(sourceName))
+                       .map(state -> state.watermark.get());
+    }
+
+    public void written(Post post) {
+        SourceState state = states.get(post.getSourceName());
+        if (state == null) {
+            return;
+        }
+        if (post.getModifiedAt() != null) {
+            state.watermark.accumulateAndGet(new Watermark(post.getModifiedAt(), post.getId()),
+                                             (current, written) -> current == null || current.isBefore(written)
+                                                                   ? written
+                                                                   : current);
+        }
+        String previousDirectory = state.directories.put(post.getId(), post.getPostDirectoryName());
+        if (previousDirectory != null && !previousDirectory.equals(post.getPostDirectoryName())) {
+            state.staleDirectories.add(previousDirectory);
+        }
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (!convertSettings.isIncremental() || jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            return;
+        }
+        states.forEach((sourceName, state) -> {
+            removeDeletedPosts(sourceName, state);
+            Set<String> usedDirectories = new HashSet<>(state.directories.values());
+            state.staleDirectories.stream()
+                                  .filter(directory -> !usedDirectories.contains(directory))
+                                  .forEach(this::deleteDirectory);
+            state.staleDirectories.clear();
+            save(sourceName, state);
+        });
+    }
+
+    private void removeDeletedPosts(String sourceName, SourceState state) {
+        SourcesSettings.Source source = sourcesSettings.getSources().get(sourceName);
+        if (source.getType() != SourcesSettings.SourceType.DATABASE) {
+            return; // posts of an export file are not listed, its deleted posts are kept
+        }
+        List<Long> ids = new JdbcTemplate(sourceDataSources.get(sourceName)).queryForList(
+                "SELECT ID FROM " + source.getWordpressTablePrefix() + "_posts WHERE post_type = 'post'",
+                Long.class
+        );
+        Set<Long> existingIds = new HashSet<>(ids);
+        state.directories.keySet().removeIf(id -> {
+            if (existingIds.contains(id)) {
+                return false;
+            }
+            log.info("Post {} of source {} is deleted", id, sourceName);
+            state.staleDirectories.add(state.directories.get(id));
+            return true;
+        });
+    }
+
+    private void deleteDirectory(String postDirectoryName) {
+        Path contentDir = contentItemDir.toAbsolutePath().normalize();
+        Path directory = contentDir.resolve(postDirectoryName).normalize();
+        if (!contentDir.equals(directory.getParent())) {
+            // e.g. an empty name of an untitled post, which would be the content directory itself
+            log.warn("Stale post directory '{}' is not a page bundle in {}, it is kept", postDirectoryName, contentDir);
+            return;
+        }
+        try {
+            FileSystemUtils.deleteRecursively(directory);
+        } catch (IOException e) {
+            log.error("Could not remove stale post directory {}", postDirectoryName, e);
+        }
+    }
+
+    private SourceState load(String sourceName) {
+        SourceState state = new SourceState();
+        Path stateFile = stateFile(sourceName);
+        if (!Files.exists(stateFile)) {
+            return state;
+        }
+        try {
+            for (String line : Files.readAllLines(stateFile, StandardCharsets.UTF_8)) {
+                String[] values = line.split(SEPARATOR, 2);
+                if (values.length < 2) {
+                    continue;
+                }
+                if (WATERMARK_KEY.equals(values[0])) {
+                    state.watermark.set(parseWatermark(values[1]));
+                } else {
+                    state.directories.put(Long.parseLong(values[0]), values[1]);
+                }
+            }
+            log.info("Source {} is converted incrementally, {} posts known, after {}",
+                     sourceName, state.directories.size(), state.watermark.get());
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Could not load state {}, source {} will be converted completely", stateFile, sourceName, e);
+            return new SourceState();
+        }
+        return state;
+    }
+
+    private void save(String sourceName, SourceState state) {
+        Path stateFile = stateFile(sourceName);
+        try {
+            Files.createDirectories(stateFile.getParent());
+            Path tempFile = Files.createTempFile(stateFile.getParent(), sourceName, ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                Watermark watermark = state.watermark.get();
+                if (watermark != null) {
+                    writer.write(WATERMARK_KEY + SEPARATOR + watermark.getModifiedAt().getTime() +
+                                 SEPARATOR + watermark.getId());
+                    writer.newLine();
+                }
+                for (Map.Entry<Long, String> entry : state.directories.entrySet()) {
+                    writer.write(entry.getKey() + SEPARATOR + entry.getValue());
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Could not save state {}", stateFile, e);
+        }
+    }
+
+    /**
+     * Parses {@code <post_modified millis>\t<ID>}, a state of a former version has no {@code ID}
+     * and its posts modified at the moment of the watermark are read again.
+     */
+    private static Watermark parseWatermark(String value) {
+        String[] values = value.split(SEPARATOR, 2);
+        long modifiedAt = Long.parseLong(values[0]);
+        if (modifiedAt == Long.MIN_VALUE) {
+            return null; // nothing was converted
+        }
+        long id = values.length > 1 ? Long.parseLong(values[1]) : Long.MIN_VALUE;
+        return new Watermark(new Timestamp(modifiedAt), id);
+    }
+
+    private Path stateFile(String sourceName) {
+        return convertSettings.getStateDir().resolve(sourceName + STATE_FILE_SUFFIX);
+    }
+
+    private static class SourceState {
+        private final AtomicReference<Watermark> watermark = new AtomicReference<>();
+        private final Map<Long, String> directories = new ConcurrentHashMap<>();
+        private final Set<String> staleDirectories = ConcurrentHashMap.newKeySet();
+    }
+}
@@ -0,0 +1,194 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.MoreFiles;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.nantipov.utils.wordhugopress.config.MediaStoreSettings;
+import org.nantipov.utils.wordhugopress.domain.LocalCopyMode;
+import org.nantipov.utils.wordhugopress.domain.ResourceTransferRequest;
+import org.nantipov.utils.wordhugopress.tools.LocalFileCopier;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed store of media files: every distinct file is kept once, named by SHA-256 of its content,
+ * and linked into the post directories.
+ * <p>
+ * Hashes of local files are kept in a persistent index by path, size and modification time,
+ * so unchanged files are not hashed again on the next run.
+ */
+@Slf4j
+@Component
+public class MediaStore {
+
+    private static final String INDEX_FILENAME = ".index";
+    private static final String INDEX_SEPARATOR = "\t";
+    private static final String FILE_SCHEME = "file";
+
+    private final MediaStoreSettings settings;
+    private final Map<Path, IndexEntry> index = new ConcurrentHashMap<>();
+    private volatile boolean isIndexChanged = false;
+
+    public MediaStore(MediaStoreSettings settings) {
+        this.settings = settings;
+        if (settings.isEnabled()) {
+            loadIndex();
+        }
+    }
+
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    /**
+     * Puts the requested resource into the store (unless the same content is there already)
+     * and links it as {@code target}, which must not exist yet.
+     */
+    public void put(ResourceTransferRequest request, Path target) throws IOException {
+        link(store(request), target);
+    }
+
+    public synchronized void flush() {
+        if (!isIndexChanged) {
+            return;
+        }
+        Path indexFile = settings.getDir().resolve(INDEX_FILENAME);
+        Path tempFile = settings.getDir().resolve(INDEX_FILENAME + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.createDirectories(settings.getDir());
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (Map.Entry<Path, IndexEntry> entry : index.entrySet()) {
+                    writer.write(entry.getValue().getHash() + INDEX_SEPARATOR +
+                                 entry.getValue().getSize() + INDEX_SEPARATOR +
+                                 entry.getValue().getModified() + INDEX_SEPARATOR +
+                                 entry.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            isIndexChanged = false;
+        } catch (IOException e) {
+            log.error("Could not save media store index {}", indexFile, e);
+        }
+    }
+
+    private Path store(ResourceTransferRequest request) throws IOException {
+        String extension = extension(request.getLocalFilename());
+        Path tempFile = tempFile();
+        try {
+            if (FILE_SCHEME.equalsIgnoreCase(request.getFrom().getScheme())) {
+                Path source = Paths.get(request.getFrom()).toAbsolutePath();
+                Path stored = storedPath(hash(source), extension);
+                if (!Files.exists(stored)) {
+                    LocalFileCopier.copy(source, tempFile,
+                                         Objects.requireNonNullElse(request.getLocalCopyMode(), LocalCopyMode.AUTO));
+                    moveIntoStore(tempFile, stored);
+                }
+                return stored;
+            } else {
+                String hash;
+                try (HashingInputStream inputStream = new HashingInputStream(
+                        Hashing.sha256(), request.getFrom().toURL().openStream())) {
+                    Files.copy(inputStream, tempFile);
+                    hash = inputStream.hash().toString();
+                }
+                Path stored = storedPath(hash, extension);
+                moveIntoStore(tempFile, stored);
+                return stored;
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private void link(Path stored, Path target) throws IOException {
+        if (settings.getLinkMode() == MediaStoreSettings.LinkMode.SYMBOLIC) {
+            Files.createSymbolicLink(
+                    target,
+                    target.toAbsolutePath().getParent().relativize(stored.toAbsolutePath())
+            );
+        } else {
+            LocalFileCopier.copy(stored, target, LocalCopyMode.HARDLINK);
+        }
+    }
+
+    private String hash(Path source) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        IndexEntry entry = index.get(source);
+        if (entry != null && entry.getSize() == attributes.size() && entry.getModified() == modified) {
+            return entry.getHash();
+        }
+        String hash = MoreFiles.asByteSource(source).hash(Hashing.sha256()).toString();
+        index.put(source, new IndexEntry(hash, attributes.size(), modified));
+        isIndexChanged = true;
+        return hash;
+    }
+
+    private void moveIntoStore(Path tempFile, Path stored) throws IOException {
+        if (Files.exists(stored)) {
+            return;
+        }
+        Files.createDirectories(stored.getParent());
+        // the same content delivered concurrently is identical, so whoever moves last wins
+        Files.move(tempFile, stored, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path storedPath(String hash, String extension) {
+        return settings.getDir().resolve(hash.substring(0, 2)).resolve(hash + extension);
+    }
+
+    private Path tempFile() throws IOException {
+        Path dir = Files.createDirectories(settings.getDir().resolve("tmp"));
+        return dir.resolve(UUID.randomUUID() + ".tmp");
+    }
+
+    private void loadIndex() {
+        Path indexFile = settings.getDir().resolve(INDEX_FILENAME);
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                String[] values = line.split(INDEX_SEPARATOR, 4);
+                if (values.length == 4) {
+                    index.put(Paths.get(values[3]),
+                              new IndexEntry(values[0], Long.parseLong(values[1]), Long.parseLong(values[2])));
+                }
+            }
+            log.info("Loaded {} entries of media store index {}", index.size(), indexFile);
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Could not load media store index {}, files will be hashed again", indexFile, e);
+            index.clear();
+        }
+    }
+
+    private static String extension(String filename) {
+        int dotIndex = filename.lastIndexOf('.');
+        return dotIndex > -1 ? filename.substring(dotIndex).toLowerCase(Locale.ROOT) : "";
+    }
+
+    @Data
+    private static class IndexEntry {
+        private final String hash;
+        private final long size;
+        private final long modified;
+    }
+}
@@ -0,0 +1,363 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.nantipov.utils.wordhugopress.config.TransferSettings;
+import org.nantipov.utils.wordhugopress.domain.LocalCopyMode;
+import org.nantipov.utils.wordhugopress.domain.ResourceTransferRequest;
+import org.nantipov.utils.wordhugopress.tools.LocalFileCopier;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers post resources in background, so writing posts does not wait for media I/O.
+ * <p>
+ * Submitting blocks while {@code queueCapacity} transfers wait for delivery. Transfers from the same host are
+ * limited: a transfer over the limit waits in the queue of its host instead of a pool thread, and a failed one
+ * is retried with exponential backoff by a scheduler, so a slow or failing host never holds the pool. All pending
+ * transfers are awaited at the end of the step; a step which lost media files ends with the exit code
+ * {@value #EXIT_CODE_MEDIA_FAILURES}, or fails with {@code failOnErrors}.
+ */
+@Slf4j
+@Component
+public class MediaTransferEngine implements StepExecutionListener, DisposableBean {
+
+    public static final String EXIT_CODE_MEDIA_FAILURES = "COMPLETED WITH MEDIA FAILURES";
+
+    private static final String LOCAL_HOST_KEY = "";
+    private static final String FILE_SCHEME = "file";
+
+    private final TransferSettings transferSettings;
+    private final MediaStore mediaStore;
+    private final OutputArchive outputArchive;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService retryScheduler;
+    private final Map<String, HostQueue> hosts = new ConcurrentHashMap<>();
+
+    private final Object pendingLock = new Object();
+    private long pending = 0;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long failedBeforeStep = 0;
+
+    private final Timer copyTimer;
+    private final Counter bytesCounter;
+    private final Counter retriesCounter;
+    private final Counter failuresCounter;
+
+    public MediaTransferEngine(TransferSettings transferSettings, MediaStore mediaStore, OutputArchive outputArchive,
+                               MeterRegistry meterRegistry) {
+        this.transferSettings = transferSettings;
+        this.mediaStore = mediaStore;
+        this.outputArchive = outputArchive;
+        this.copyTimer = Timer.builder("wordhugopress.media.copy")
+                              .description("Delivery of one media file")
+                              .register(meterRegistry);
+        this.bytesCounter = Counter.builder("wordhugopress.media.bytes")
+                                   .baseUnit("bytes")
+                                   .register(meterRegistry);
+        this.retriesCounter = Counter.builder("wordhugopress.media.retries").register(meterRegistry);
+        this.failuresCounter = Counter.builder("wordhugopress.media.failures").register(meterRegistry);
+        this.executor = new ThreadPoolExecutor(
+                transferSettings.getThreads(), transferSettings.getThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                daemonThreads("media-transfer-")
+        );
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("media-transfer-retry-"));
+        Gauge.builder("wordhugopress.media.queued", executor, pool -> pool.getQueue().size())
+             .description("Transfers waiting for a thread")
+             .register(meterRegistry);
+    }
+
+    public void submit(ResourceTransferRequest request, Path localDir) {
+        synchronized (pendingLock) {
+            while (pending >= transferSettings.getQueueCapacity() + transferSettings.getThreads()) {
+                try {
+                    pendingLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for the transfer queue", e);
+                }
+            }
+            pending++;
+        }
+        dispatch(new Transfer(request, localDir, transferSettings.getInitialBackoff().toMillis()));
+    }
+
+    public void awaitCompletion() throws InterruptedException {
+        synchronized (pendingLock) {
+            while (pending > 0) {
+                pendingLock.wait();
+            }
+        }
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        failedBeforeStep = failed.get();
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        try {
+            awaitCompletion();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for media transfers of step {}", stepExecution.getStepName());
+        }
+        mediaStore.flush();
+        long stepFailed = failed.get() - failedBeforeStep;
+        log.info("Media transfers after step {}: delivered {}, failed {}",
+                 stepExecution.getStepName(), delivered.get(), stepFailed);
+        ExitStatus exitStatus = stepExecution.getExitStatus();
+        if (stepFailed == 0 || !ExitStatus.COMPLETED.getExitCode().equals(exitStatus.getExitCode())) {
+            return exitStatus;
+        }
+        String description = stepFailed + " media files could not be delivered";
+        if (transferSettings.isFailOnErrors()) {
+            stepExecution.setStatus(BatchStatus.FAILED);
+            return ExitStatus.FAILED.addExitDescription(description);
+        }
+        return new ExitStatus(EXIT_CODE_MEDIA_FAILURES, description);
+    }
+
+    @Override
+    public void destroy() {
+        retryScheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private void complete() {
+        synchronized (pendingLock) {
+            pending--;
+            pendingLock.notifyAll();
+        }
+    }
+
+    private void fail() {
+        failed.incrementAndGet();
+        failuresCounter.increment();
+    }
+
+    /**
+     * Runs the transfer, or queues it while its host has the limit of transfers running.
+     */
+    private void dispatch(Transfer transfer) {
+        HostQueue host = hosts.computeIfAbsent(hostKey(transfer.request.getFrom()), key -> new HostQueue());
+        synchronized (host) {
+            if (host.running >= transferSettings.getPerHostLimit()) {
+                host.waiting.add(transfer);
+                return;
+            }
+            host.running++;
+        }
+        if (!execute(host, transfer)) {
+            release(host);
+        }
+    }
+
+    /**
+     * Hands the slot of a finished transfer to the next waiting transfer of the host.
+     */
+    private void release(HostQueue host) {
+        while (true) {
+            Transfer next;
+            synchronized (host) {
+                next = host.waiting.poll();
+                if (next == null) {
+                    host.running--;
+                    return;
+                }
+            }
+            if (execute(host, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} if the engine is shut down, the transfer is then failed
+     */
+    private boolean execute(HostQueue host, Transfer transfer) {
+        try {
+            executor.execute(() -> attempt(host, transfer));
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.error("Could not deliver request {}, transfers are shut down", transfer.request);
+            fail();
+            complete();
+            return false;
+        }
+    }
+
+    private void attempt(HostQueue host, Transfer transfer) {
+        boolean done = true;
+        try {
+            done = transfer(transfer);
+        } finally {
+            release(host);
+            if (done) {
+                complete();
+            }
+        }
+        if (done) {
+            return;
+        }
+        long backoffMillis = transfer.backoffMillis;
+        transfer.attempt++;
+        transfer.backoffMillis *= 2;
+        try {
+            retryScheduler.schedule(() -> dispatch(transfer), backoffMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.error("Could not retry request {}, transfers are shut down", transfer.request);
+            fail();
+            complete();
+        }
+    }
+
+    /**
+     * Makes one attempt to deliver the request.
+     *
+     * @return {@code false} if the attempt failed and should be retried
+     */
+    private boolean transfer(Transfer transfer) {
+        ResourceTransferRequest request = transfer.request;
+        Path localFile = transfer.localDir.resolve(request.getLocalFilename());
+        if (outputArchive.isEnabled() ? outputArchive.contains(localFile) : Files.exists(localFile)) {
+            return true;
+        }
+        try {
+            Timer.Sample sample = Timer.start();
+            long size = copy(request, transfer.localDir, localFile);
+            sample.stop(copyTimer);
+            bytesCounter.increment(size);
+            delivered.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            if (transfer.attempt >= transferSettings.getMaxAttempts()) {
+                log.error("Could not deliver request {}", request, e);
+                fail();
+                return true;
+            }
+            retriesCounter.increment();
+            log.warn("Attempt {} to deliver request {} failed, retrying: {}", transfer.attempt, request,
+                     e.getMessage());
+            return false;
+        }
+    }
+
+    private long copy(ResourceTransferRequest request, Path localDir, Path localFile) throws IOException {
+        // the same resource could be delivered concurrently, so it is copied aside and then moved in one go
+        Path tempDir = outputArchive.isEnabled() ? outputArchive.getSpoolDir() : localDir;
+        Path tempFile = tempDir.resolve(".transfer-" + UUID.randomUUID() + ".tmp");
+        try {
+            if (mediaStore.isEnabled()) {
+                mediaStore.put(request, tempFile);
+            } else if (FILE_SCHEME.equalsIgnoreCase(request.getFrom().getScheme())) {
+                LocalFileCopier.copy(Paths.get(request.getFrom()), tempFile,
+                                     Objects.requireNonNullElse(request.getLocalCopyMode(), LocalCopyMode.AUTO));
+            } else {
+                try (InputStream inputStream = request.getFrom().toURL().openStream()) {
+                    Files.copy(inputStream, tempFile);
+                }
+            }
+            if (outputArchive.isEnabled()) {
+                return outputArchive.copy(localFile, tempFile);
+            }
+            long size = Files.size(tempFile);
+            Files.move(tempFile, localFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tempFile = null;
+            return size;
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete temporary file {}", file, e);
+            }
+        }
+    }
+
+    private static String hostKey(URI uri) {
+        if (uri.getHost() == null) {
+            return LOCAL_HOST_KEY;
+        }
+        return uri.getHost().toLowerCase(Locale.ROOT) + ":" + uri.getPort();
+    }
+
+    private static ThreadFactory daemonThreads(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class Transfer {
+        private final ResourceTransferRequest request;
+        private final Path localDir;
+        private int attempt = 1;
+        private long backoffMillis;
+
+        private Transfer(ResourceTransferRequest request, Path localDir, long backoffMillis) {
+            this.request = request;
+            this.localDir = localDir;
+            this.backoffMillis = backoffMillis;
+        }
+    }
+
+    /**
+     * Transfers of one host, guarded by itself.
+     */
+    private static class HostQueue {
+        private final Deque<Transfer> waiting = new ArrayDeque<>();
+        private int running;
+    }
+}
@@ -0,0 +1,149 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.nantipov.utils.wordhugopress.config.MetricsSettings;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Times chunks (including their commit) and writes all meters into a file at the end of the job,
+ * as JSON or in Prometheus text format.
+ */
+@Slf4j
+@Component
+public class MetricsReporter implements ChunkListener, JobExecutionListener {
+
+    private final MetricsSettings metricsSettings;
+    private final MeterRegistry meterRegistry;
+    private final Timer chunkTimer;
+    private final ThreadLocal<Timer.Sample> chunkSamples = new ThreadLocal<>();
+
+    public MetricsReporter(MetricsSettings metricsSettings, MeterRegistry meterRegistry) {
+        this.metricsSettings = metricsSettings;
+        this.meterRegistry = meterRegistry;
+        this.chunkTimer = Timer.builder("wordhugopress.chunk")
+                               .description("Chunk processing time including the commit")
+                               .register(meterRegistry);
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        chunkSamples.set(Timer.start(meterRegistry));
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        Timer.Sample sample = chunkSamples.get();
+        if (sample != null) {
+            sample.stop(chunkTimer);
+            chunkSamples.remove();
+        }
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        chunkSamples.remove();
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (!metricsSettings.isEnabled()) {
+            return;
+        }
+        Path file = metricsSettings.getFile();
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Path tempFile = file.resolveSibling("." + file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                if (meterRegistry instanceof PrometheusMeterRegistry) {
+                    writer.write(((PrometheusMeterRegistry) meterRegistry).scrape());
+                } else {
+                    writeJson(writer);
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Metrics are written to {}", file);
+        } catch (IOException e) {
+            log.error("Could not write metrics to {}", file, e);
+        }
+    }
+
+    private void writeJson(Writer writer) throws IOException {
+        List<Meter> meters = meterRegistry.getMeters()
+                                          .stream()
+                                          .sorted(Comparator.comparing((Meter meter) -> meter.getId().getName())
+                                                            .thenComparing(meter -> meter.getId().getTags().toString()))
+                                          .collect(Collectors.toList());
+        writer.write("{\n  \"meters\": [");
+        for (Iterator<Meter> meterIterator = meters.iterator(); meterIterator.hasNext(); ) {
+            Meter meter = meterIterator.next();
+            writer.write("\n    {\"name\": " + quote(meter.getId().getName()) +
+                         ", \"type\": " + quote(meter.getId().getType().name().toLowerCase()));
+            if (meter.getId().getBaseUnit() != null) {
+                writer.write(", \"unit\": " + quote(meter.getId().getBaseUnit()));
+            }
+            writer.write(", \"tags\": {");
+            for (Iterator<Tag> tagIterator = meter.getId().getTags().iterator(); tagIterator.hasNext(); ) {
+                Tag tag = tagIterator.next();
+                writer.write(quote(tag.getKey()) + ": " + quote(tag.getValue()));
+                if (tagIterator.hasNext()) {
+                    writer.write(", ");
+                }
+            }
+            writer.write("}, \"measurements\": {");
+            for (Iterator<Measurement> measurementIterator = meter.measure().iterator();
+                 measurementIterator.hasNext(); ) {
+                Measurement measurement = measurementIterator.next();
+                double value = measurement.getValue();
+                writer.write(quote(measurement.getStatistic().getTagValueRepresentation()) + ": " +
+                             (Double.isFinite(value) ? Double.toString(value) : "null"));
+                if (measurementIterator.hasNext()) {
+                    writer.write(", ");
+                }
+            }
+            writer.write("}}");
+            if (meterIterator.hasNext()) {
+                writer.write(",");
+            }
+        }
+        writer.write("\n  ]\n}\n");
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
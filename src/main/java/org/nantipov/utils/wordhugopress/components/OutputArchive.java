@@ -0,0 +1,232 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.OutputSettings;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams page bundles into one tar or zip archive instead of the content directory, when enabled.
+ * <p>
+ * Paths under the content directory become archive entries. Producers (writers and media transfers) may write
+ * concurrently, every entry is appended as a whole under a lock into one buffered stream, so the archive file
+ * is written sequentially. Content of a post is encoded before taking the lock; media files are delivered into
+ * a spool directory first and then copied into the archive. An entry is written only once; a producer which
+ * could not write its entry gives the name up for the next one.
+ * <p>
+ * A restarted job writes into a new archive {@code <name>.<job execution ID>.<extension>}, both have to be
+ * extracted. Nothing written before is known to the new archive, so all posts of the interrupted chunk are
+ * rendered into it again.
+ */
+@Slf4j
+@Component
+public class OutputArchive implements JobExecutionListener, DisposableBean {
+
+    private final OutputSettings outputSettings;
+    private final Path contentItemDir;
+    private final RestartState restartState;
+    private final Set<String> claimedEntries = ConcurrentHashMap.newKeySet();
+    private final Set<String> entries = ConcurrentHashMap.newKeySet();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Object lock = new Object();
+
+    private ArchiveOutputStream archive;
+    private Path archiveFile;
+    private Path spoolDir;
+
+    public OutputArchive(OutputSettings outputSettings, ConvertSettings convertSettings,
+                         @Value("${app.target.hugo-site-content-items-dir}") Path contentItemDir,
+                         RestartState restartState) {
+        if (outputSettings.getMode() != OutputSettings.Mode.DIRECTORY && convertSettings.isIncremental()) {
+            throw new IllegalStateException("Incremental conversion updates the content directory, " +
+                                            "it can not be combined with output into an archive");
+        }
+        this.outputSettings = outputSettings;
+        this.contentItemDir = contentItemDir;
+        this.restartState = restartState;
+    }
+
+    public boolean isEnabled() {
+        return outputSettings.getMode() != OutputSettings.Mode.DIRECTORY;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        if (!isEnabled()) {
+            return;
+        }
+        archiveFile = outputSettings.getArchive();
+        if (restartState.isRestart()) {
+            String filename = archiveFile.getFileName().toString();
+            int dotIndex = filename.indexOf('.');
+            archiveFile = archiveFile.resolveSibling(
+                    dotIndex > 0
+                    ? filename.substring(0, dotIndex) + "." + jobExecution.getId() + filename.substring(dotIndex)
+                    : filename + "." + jobExecution.getId()
+            );
+        }
+        try {
+            Path parent = archiveFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            spoolDir = Files.createTempDirectory(parent, ".spool");
+            OutputStream out = new BufferedOutputStream(Files.newOutputStream(archiveFile),
+                                                        outputSettings.getArchiveBufferSize());
+            if (outputSettings.getMode() == OutputSettings.Mode.ZIP) {
+                archive = new ZipArchiveOutputStream(out);
+            } else {
+                TarArchiveOutputStream tar = new TarArchiveOutputStream(out);
+                tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+                tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+                archive = tar;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create archive " + archiveFile, e);
+        }
+        claimedEntries.clear();
+        entries.clear();
+        bytes.set(0);
+        log.info("Content is written into archive {}", archiveFile);
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (archive == null) {
+            return;
+        }
+        try {
+            close();
+            log.info("Archive {} is written: {} entries, {} bytes", archiveFile, entries.size(), bytes.get());
+        } catch (IOException e) {
+            log.error("Could not finish archive {}", archiveFile, e);
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        close();
+    }
+
+    /**
+     * Directory for files to be copied into the archive.
+     */
+    public Path getSpoolDir() {
+        return spoolDir;
+    }
+
+    /**
+     * @return {@code true} if the file of the content directory is already in the archive
+     */
+    public boolean contains(Path file) {
+        return entries.contains(entryName(file));
+    }
+
+    /**
+     * Appends the file of the content directory with the given content.
+     */
+    public void write(Path file, CharSequence content) throws IOException {
+        String name = entryName(file);
+        if (!claimedEntries.add(name)) {
+            return;
+        }
+        try {
+            byte[] data = content.toString().getBytes(StandardCharsets.UTF_8);
+            synchronized (lock) {
+                archive.putArchiveEntry(entry(name, data.length));
+                archive.write(data);
+                archive.closeArchiveEntry();
+            }
+            entries.add(name);
+            bytes.addAndGet(data.length);
+        } finally {
+            releaseUnwritten(name);
+        }
+    }
+
+    /**
+     * Appends the file of the content directory with the content of the source file.
+     *
+     * @return size of the file
+     */
+    public long copy(Path file, Path source) throws IOException {
+        String name = entryName(file);
+        if (!claimedEntries.add(name)) {
+            return 0;
+        }
+        try {
+            long size = Files.size(source);
+            synchronized (lock) {
+                archive.putArchiveEntry(entry(name, size));
+                Files.copy(source, archive);
+                archive.closeArchiveEntry();
+            }
+            entries.add(name);
+            bytes.addAndGet(size);
+            return size;
+        } finally {
+            releaseUnwritten(name);
+        }
+    }
+
+    private void releaseUnwritten(String name) {
+        if (!entries.contains(name)) {
+            claimedEntries.remove(name);
+        }
+    }
+
+    private ArchiveEntry entry(String name, long size) {
+        if (outputSettings.getMode() == OutputSettings.Mode.ZIP) {
+            ZipArchiveEntry entry = new ZipArchiveEntry(name);
+            entry.setSize(size);
+            return entry;
+        }
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(size);
+        return entry;
+    }
+
+    private String entryName(Path file) {
+        return contentItemDir.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private void close() throws IOException {
+        synchronized (lock) {
+            if (archive == null) {
+                return;
+            }
+            try {
+                archive.finish();
+                archive.close();
+            } finally {
+                archive = null;
+                if (spoolDir != null) {
+                    MoreFiles.deleteRecursively(spoolDir, RecursiveDeleteOption.ALLOW_INSECURE);
+                    spoolDir = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes output files only when their content differs from the previous run, so unchanged files
+ * keep their modification time.
+ * <p>
+ * Hashes of written files are kept in a manifest in the state directory. Changed files are written
+ * into a temporary file and then moved over the previous version.
+ */
+@Slf4j
+@Component
+public class OutputManifest implements StepExecutionListener {
+
+    private static final String MANIFEST_FILENAME = "output.manifest";
+    private static final String SEPARATOR = "\t";
+
+    private final Path contentItemDir;
+    private final Path manifestFile;
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong changed = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+
+    public OutputManifest(@Value("${app.target.hugo-site-content-items-dir}") Path contentItemDir,
+                          ConvertSettings convertSettings) {
+        this.contentItemDir = contentItemDir;
+        this.manifestFile = convertSettings.getStateDir().resolve(MANIFEST_FILENAME);
+        load();
+    }
+
+    public void writeIfChanged(Path file, CharSequence content) throws IOException {
+        String key = contentItemDir.relativize(file).toString();
+        String hash = Hashing.murmur3_128().hashString(content, StandardCharsets.UTF_8).toString();
+        String previousHash = hashes.put(key, hash);
+        if (hash.equals(previousHash) && Files.exists(file)) {
+            unchanged.incrementAndGet();
+            return;
+        }
+        if (previousHash == null) {
+            created.incrementAndGet();
+        } else {
+            changed.incrementAndGet();
+        }
+        Path tempFile = file.resolveSibling("." + file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                writer.append(content);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            hashes.remove(key);
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        log.info("Output files of step {}: new {}, changed {}, unchanged {}",
+                 stepExecution.getStepName(), created.get(), changed.get(), unchanged.get());
+        stepExecution.getExecutionContext().putLong("output.new", created.get());
+        stepExecution.getExecutionContext().putLong("output.changed", changed.get());
+        stepExecution.getExecutionContext().putLong("output.unchanged", unchanged.get());
+        save();
+        return stepExecution.getExitStatus();
+    }
+
+    private void load() {
+        if (!Files.exists(manifestFile)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+                String[] values = line.split(SEPARATOR, 2);
+                if (values.length == 2) {
+                    hashes.put(values[1], values[0]);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not load output manifest {}, all files will be written", manifestFile, e);
+            hashes.clear();
+        }
+    }
+
+    private synchronized void save() {
+        try {
+            Files.createDirectories(manifestFile.getParent());
+            Path tempFile = Files.createTempFile(manifestFile.getParent(), MANIFEST_FILENAME, ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> entry : hashes.entrySet()) {
+                    writer.write(entry.getValue() + SEPARATOR + entry.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Could not save output manifest {}", manifestFile, e);
+        }
+    }
+}
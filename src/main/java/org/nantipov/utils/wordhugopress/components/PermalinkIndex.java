@@ -0,0 +1,264 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import lombok.extern.slf4j.Slf4j;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Directories of all posts of the database sources by post ID, name ({@code post_name}) and former names.
+ * <p>
+ * When enabled, the index is filled by the pass of {@link SlugService} over the posts before the job starts, which
+ * assigns every post the directory it gets when converted, former names are read from the post metadata. Links
+ * like {@code ?p=123}, {@code /archives/123}, {@code /2020/01/hello-world/} or a link to a renamed post are then
+ * resolved to the directory of the post they point to with a lookup.
+ * <p>
+ * Only {@code ?p=<id>}, {@code /<id>} and {@code /archives/<id>} are taken for post IDs, the path of
+ * {@code wordpressRemoteBaseUrl} is stripped before. Numbers of date archives ({@code /2020/01/}) and of list pages
+ * ({@code /page/2/}) are neither IDs nor names.
+ */
+@Slf4j
+@Component
+public class PermalinkIndex implements JobExecutionListener {
+
+    private static final String META_OLD_SLUG = "_wp_old_slug";
+    private static final String SEGMENT_ARCHIVES = "archives";
+    private static final String SEGMENT_PAGE = "page";
+    private static final CharMatcher DIGITS = CharMatcher.inRange('0', '9');
+    private static final Splitter PATH_SPLITTER = Splitter.on('/').omitEmptyStrings();
+    private static final Splitter QUERY_SPLITTER = Splitter.on('&');
+
+    private final ConvertSettings convertSettings;
+    private final SourcesSettings sourcesSettings;
+    private final SourceDataSources sourceDataSources;
+
+    private volatile Map<SourcesSettings.Source, SourceIndex> indexes = Collections.emptyMap();
+    // filled by the pass of the slug service, on the thread starting the job
+    private Map<SourcesSettings.Source, SourceIndex> assigned = new IdentityHashMap<>();
+
+    public PermalinkIndex(ConvertSettings convertSettings, SourcesSettings sourcesSettings,
+                          SourceDataSources sourceDataSources, SlugService slugService) {
+        this.convertSettings = convertSettings;
+        this.sourcesSettings = sourcesSettings;
+        this.sourceDataSources = sourceDataSources;
+        slugService.addAssignmentListener(this::assigned);
+    }
+
+    /**
+     * Runs after {@link SlugService#beforeJob}, which has passed the posts.
+     */
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        Map<SourcesSettings.Source, SourceIndex> assignedIndexes = assigned;
+        assigned = new IdentityHashMap<>();
+        if (!convertSettings.isPermalinkIndex()) {
+            indexes = Collections.emptyMap();
+            return;
+        }
+        Map<SourcesSettings.Source, SourceIndex> sourceIndexes = new IdentityHashMap<>();
+        sourcesSettings.getSources().forEach((sourceName, source) -> {
+            if (source.getType() == SourcesSettings.SourceType.DATABASE) {
+                SourceIndex index = assignedIndexes.getOrDefault(source, new SourceIndex());
+                index.baseSegments = baseSegments(source);
+                addFormerNames(sourceName, source, index);
+                log.info("Permalinks of source {} are indexed, {} posts", sourceName, index.ids.size());
+                sourceIndexes.put(source, index);
+            }
+        });
+        indexes = sourceIndexes;
+    }
+
+    /**
+     * @return directory of the post the link of the source points to, or {@code null} if the link is not
+     * a permalink of a known post
+     */
+    @Nullable
+    public String resolve(URL url, SourcesSettings.Source source) {
+        SourceIndex index = indexes.get(source);
+        if (index == null) {
+            return null;
+        }
+        if (url.getQuery() != null) {
+            for (String parameter : QUERY_SPLITTER.split(url.getQuery())) {
+                if (parameter.startsWith("p=")) {
+                    String directory = index.byId(parameter.substring(2));
+                    if (directory != null) {
+                        return directory;
+                    }
+                }
+            }
+        }
+        List<String> segments = PATH_SPLITTER.splitToList(url.getPath());
+        if (!index.baseSegments.isEmpty() && segments.size() >= index.baseSegments.size() &&
+            segments.subList(0, index.baseSegments.size()).equals(index.baseSegments)) {
+            segments = segments.subList(index.baseSegments.size(), segments.size());
+        }
+        if (segments.isEmpty()) {
+            return null;
+        }
+        String name = segments.get(segments.size() - 1);
+        if (segments.size() == 1 || segments.size() == 2 && segments.get(0).equals(SEGMENT_ARCHIVES)) {
+            String directory = index.byId(name);
+            if (directory != null) {
+                return directory;
+            }
+        }
+        return isDateArchiveOrListPage(segments) ? null : index.names.get(normalizeName(name));
+    }
+
+    /**
+     * @return {@code true} for paths like {@code /2020/01/} or {@code /category/news/page/2/}
+     */
+    private static boolean isDateArchiveOrListPage(List<String> segments) {
+        if (segments.size() < 2) {
+            return false;
+        }
+        return segments.get(segments.size() - 2).equals(SEGMENT_PAGE) ||
+               segments.stream().allMatch(DIGITS::matchesAllOf);
+    }
+
+    private void assigned(SourcesSettings.Source source, long postId, String directory, @Nullable String postName) {
+        if (!convertSettings.isPermalinkIndex()) {
+            return;
+        }
+        SourceIndex index = assigned.computeIfAbsent(source, key -> new SourceIndex());
+        index.ids.put(postId, directory);
+        if (postName != null && !postName.isEmpty()) {
+            index.names.putIfAbsent(normalizeName(postName), directory);
+        }
+    }
+
+    private void addFormerNames(String sourceName, SourcesSettings.Source source, SourceIndex index) {
+        sourceDataSources.jdbcTemplate(sourceName).query(
+                "SELECT post_id, meta_value FROM " + source.getWordpressTablePrefix() + "_postmeta WHERE meta_key = ?",
+                resultSet -> {
+                    String directory = index.ids.get(resultSet.getLong(1));
+                    String name = resultSet.getString(2);
+                    if (directory != null && name != null && !name.isEmpty()) {
+                        // the current name of a post wins over a former name of another one
+                        index.names.putIfAbsent(normalizeName(name), directory);
+                    }
+                },
+                META_OLD_SLUG
+        );
+    }
+
+    /**
+     * @return path segments of the base URL of the source, e.g. {@code [blog]} for {@code https://host/blog/}
+     */
+    private static List<String> baseSegments(SourcesSettings.Source source) {
+        if (source.getWordpressRemoteBaseUrl() == null) {
+            return Collections.emptyList();
+        }
+        try {
+            String path = URI.create(source.getWordpressRemoteBaseUrl()).getPath();
+            return PATH_SPLITTER.splitToList(Strings.nullToEmpty(path));
+        } catch (IllegalArgumentException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Names of posts with non-ASCII chars are stored percent-encoded, links may have them encoded or not.
+     */
+    private static String normalizeName(String name) {
+        try {
+            return URLDecoder.decode(name, StandardCharsets.UTF_8).toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return name.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static class SourceIndex {
+        private final PostIds ids = new PostIds();
+        private final Map<String, String> names = new HashMap<>();
+        private List<String> baseSegments = Collections.emptyList();
+
+        @Nullable
+        private String byId(String value) {
+            if (value.isEmpty() || value.length() > 18 || !DIGITS.matchesAllOf(value)) {
+                return null;
+            }
+            return ids.get(Long.parseLong(value));
+        }
+    }
+
+    /**
+     * Open addressing map of post IDs to directories, without boxing the IDs.
+     */
+    private static class PostIds {
+        private static final long EMPTY = -1;
+
+        private long[] keys = newKeys(1024);
+        private String[] values = new String[1024];
+        private int size;
+
+        private void put(long id, String directory) {
+            if (size * 2 >= keys.length) {
+                grow();
+            }
+            int slot = slot(keys, id);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = id;
+                size++;
+            }
+            values[slot] = directory;
+        }
+
+        @Nullable
+        private String get(long id) {
+            return id < 0 ? null : values[slot(keys, id)];
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            String[] oldValues = values;
+            keys = newKeys(oldKeys.length * 2);
+            values = new String[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = slot(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static int slot(long[] keys, long id) {
+            int mask = keys.length - 1;
+            int slot = Long.hashCode(id * 0x9E3779B97F4A7C15L) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+    }
+}
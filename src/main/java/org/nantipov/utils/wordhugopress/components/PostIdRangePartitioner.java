@@ -0,0 +1,72 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Splits posts into partitions per source and then by {@code ID} ranges of that source.
+ * <p>
+ * Every partition gets the source name, the exclusive lower {@code ID} bound (which is then moved forward
+ * as posts are read, see {@link #KEY_LAST_ID}) and the inclusive upper {@code ID} bound.
+ */
+@Slf4j
+@Component
+public class PostIdRangePartitioner implements Partitioner {
+
+    public static final String KEY_SOURCE_NAME = "sourceName";
+    public static final String KEY_LAST_ID = "lastId";
+    public static final String KEY_MAX_ID = "maxId";
+
+    private final SourcesSettings sourcesSettings;
+    private final SourceDataSources sourceDataSources;
+
+    public PostIdRangePartitioner(SourcesSettings sourcesSettings, SourceDataSources sourceDataSources) {
+        this.sourcesSettings = sourcesSettings;
+        this.sourceDataSources = sourceDataSources;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+        sourcesSettings.getSources().forEach((sourceName, source) -> {
+            if (source.getType() != SourcesSettings.SourceType.DATABASE) {
+                // an export file is read from the start anyway, it is not split
+                ExecutionContext context = new ExecutionContext();
+                context.putString(KEY_SOURCE_NAME, sourceName);
+                context.putLong(KEY_LAST_ID, -1);
+                context.putLong(KEY_MAX_ID, Long.MAX_VALUE);
+                partitions.put("source-" + sourceName + "-0", context);
+                return;
+            }
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(sourceDataSources.get(sourceName));
+            long[] bounds = jdbcTemplate.queryForObject(
+                    "SELECT MIN(ID), MAX(ID) FROM " + source.getWordpressTablePrefix() + "_posts " +
+                    "WHERE post_type = 'post'",
+                    (rs, rowNum) -> rs.getObject(1) == null ? null : new long[]{rs.getLong(1), rs.getLong(2)}
+            );
+            if (bounds == null) {
+                log.info("Source {} has no posts, skipping", sourceName);
+                return;
+            }
+            long minId = bounds[0];
+            long maxId = bounds[1];
+            long rangeSize = Math.max(1, (maxId - minId) / Math.max(1, gridSize) + 1);
+            int partitionNumber = 0;
+            for (long from = minId; from <= maxId; from += rangeSize) {
+                ExecutionContext context = new ExecutionContext();
+                context.putString(KEY_SOURCE_NAME, sourceName);
+                context.putLong(KEY_LAST_ID, from - 1);
+                context.putLong(KEY_MAX_ID, Math.min(maxId, from + rangeSize - 1));
+                partitions.put("source-" + sourceName + "-" + partitionNumber++, context);
+            }
+        });
+        return partitions;
+    }
+}
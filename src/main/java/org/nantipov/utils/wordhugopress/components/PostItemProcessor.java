@@ -1,21 +1,23 @@
 package org.nantipov.utils.wordhugopress.components;
 
-import com.google.common.base.CharMatcher;
 import com.google.common.base.Charsets;
-import com.google.common.base.Strings;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import net.gcardone.junidecode.Junidecode;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 import org.jsoup.nodes.TextNode;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
 import org.nantipov.utils.wordhugopress.config.SourcesSettings;
 import org.nantipov.utils.wordhugopress.domain.Post;
 import org.nantipov.utils.wordhugopress.domain.Reference;
 import org.nantipov.utils.wordhugopress.domain.ResourceTransferRequest;
+import org.nantipov.utils.wordhugopress.tools.AttachmentMetadataParser;
+import org.nantipov.utils.wordhugopress.tools.StreamingMarkdownConverter;
 import org.nantipov.utils.wordhugopress.tools.Utils;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.stereotype.Component;
@@ -25,14 +27,11 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLDecoder;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
@@ -41,19 +40,43 @@ import static com.google.common.base.Strings.nullToEmpty;
 @Component
 @Slf4j
 public class PostItemProcessor implements ItemProcessor<Post, Post> {
-    private static final Pattern THUMBNAIL_FILE_PATTERN = Pattern.compile("s:4:\"file\";s:\\d+:\"([\\d\\w-_./]+)\"");
     private static final String WORDPRESS_CONTENT_PATH = "wp-content/uploads/";
 
     private final SourcesSettings sourcesSettings;
+    private final ConvertSettings convertSettings;
+    private final SourceUrlResolver sourceUrlResolver;
+    private final UploadsIndex uploadsIndex;
+    private final SlugService slugService;
+    private final PermalinkIndex permalinkIndex;
+    private final Timer convertTimer;
+    private final Counter postLinksCounter;
+    private final Counter fileLinksCounter;
 
-    public PostItemProcessor(SourcesSettings sourcesSettings) {
+    public PostItemProcessor(SourcesSettings sourcesSettings, ConvertSettings convertSettings,
+                             SourceUrlResolver sourceUrlResolver, UploadsIndex uploadsIndex,
+                             SlugService slugService, PermalinkIndex permalinkIndex, MeterRegistry meterRegistry) {
         this.sourcesSettings = sourcesSettings;
+        this.convertSettings = convertSettings;
+        this.sourceUrlResolver = sourceUrlResolver;
+        this.uploadsIndex = uploadsIndex;
+        this.slugService = slugService;
+        this.permalinkIndex = permalinkIndex;
+        this.convertTimer = Timer.builder("wordhugopress.convert")
+                                 .description("HTML to Markdown conversion of post content")
+                                 .tag("converter", convertSettings.getContentConverter().name().toLowerCase())
+                                 .register(meterRegistry);
+        this.postLinksCounter = Counter.builder("wordhugopress.links.rewritten")
+                                       .tag("target", "post")
+                                       .register(meterRegistry);
+        this.fileLinksCounter = Counter.builder("wordhugopress.links.rewritten")
+                                       .tag("target", "file")
+                                       .register(meterRegistry);
     }
 
     @Override
     public Post process(Post post) {
         post.setPostDirectoryName(
-                getPostDirectoryName(post.getTitle(), sourcesSettings.getSources().get(post.getSourceName()))
+                slugService.postDirectoryName(post, sourcesSettings.getSources().get(post.getSourceName()))
         );
         post.setResourceTransferRequests(new ArrayList<>());
         addCoverFile(post);
@@ -80,10 +103,23 @@ public class PostItemProcessor implements ItemProcessor<Post, Post> {
     }
 
     private void processContent(Post post) {
+        convertTimer.record(() -> post.setProcessedContent(convertContent(post)));
+    }
+
+    private String convertContent(Post post) {
+        if (convertSettings.getContentConverter() == ConvertSettings.ContentConverter.STREAMING) {
+            Optional<String> markdown = StreamingMarkdownConverter.convert(
+                    post.getContent(), reference -> adjustReference(reference, post)
+            );
+            if (markdown.isPresent()) {
+                return markdown.get();
+            }
+            log.debug("HTML of post {} is not well-formed, it is converted from its document", post.getId());
+        }
         StringBuilder contentBuilder = new StringBuilder();
         Document document = Jsoup.parse(post.getContent());
         document.childNodes().forEach(node -> processContentNode(node, contentBuilder, post));
-        post.setProcessedContent(contentBuilder.toString());
+        return contentBuilder.toString();
     }
 
     private void processContentNode(Node node, StringBuilder contentBuilder, Post post) {
@@ -116,10 +152,7 @@ public class PostItemProcessor implements ItemProcessor<Post, Post> {
             case "a":
                 String href = nullToEmpty(element.attr("href"));
                 String text = element.text();
-                Reference referenceAnchor = adjustReference(new Reference(href, text, null));
-                if (referenceAnchor.getResourceTransferRequest() != null) {
-                    post.getResourceTransferRequests().add(referenceAnchor.getResourceTransferRequest());
-                }
+                Reference referenceAnchor = adjustReference(new Reference(href, text, null), post);
                 Element firstInnerElement = element.children().first();
                 if (firstInnerElement != null && firstInnerElement.tagName().toLowerCase().equals("img")) {
                     contentBuilder.append('[');
@@ -139,10 +172,7 @@ public class PostItemProcessor implements ItemProcessor<Post, Post> {
             case "img":
                 String src = element.attr("src");
                 String alt = element.attr("alt");
-                Reference referenceImg = adjustReference(new Reference(src, alt, null));
-                if (referenceImg.getResourceTransferRequest() != null) {
-                    post.getResourceTransferRequests().add(referenceImg.getResourceTransferRequest());
-                }
+                Reference referenceImg = adjustReference(new Reference(src, alt, null), post);
                 contentBuilder.append(
                         String.format("![%s](%s)",
                                       nullToEmpty(referenceImg.getText()),
@@ -169,16 +199,17 @@ public class PostItemProcessor implements ItemProcessor<Post, Post> {
         }
     }
 
+    private Reference adjustReference(Reference reference, Post post) {
+        Reference adjustedReference = adjustReference(reference);
+        if (adjustedReference.getResourceTransferRequest() != null) {
+            post.getResourceTransferRequests().add(adjustedReference.getResourceTransferRequest());
+        }
+        return adjustedReference;
+    }
+
     private Reference adjustReference(Reference reference) {
-        return sourcesSettings.getSources()
-                              .values()
-                              .stream()
-                              .filter(source -> reference.getResourceLocation()
-                                                         .startsWith(source.getWordpressRemoteBaseUrl())
-                              )
-                              .findAny()
-                              .map(source -> adjustInternalReference(reference, source))
-                              .orElse(reference);
+        SourcesSettings.Source source = sourceUrlResolver.resolve(reference.getResourceLocation());
+        return source != null ? adjustInternalReference(reference, source) : reference;
     }
 
     private Reference adjustInternalReference(Reference reference, SourcesSettings.Source source) {
@@ -188,15 +219,20 @@ public class PostItemProcessor implements ItemProcessor<Post, Post> {
                 (url.getPath().endsWith("/") || !url.getPath().contains(WORDPRESS_CONTENT_PATH))) {
                 // link to the post
                 String postName = URLDecoder.decode(url.getPath(), Charsets.UTF_8.name());
+                String postDirectoryName = permalinkIndex.resolve(url, source);
+                postLinksCounter.increment();
                 return new Reference(
-                        "../" + getPostDirectoryName(postName, source),
+                        "../" + (postDirectoryName != null ? postDirectoryName : slugService.slug(postName, source)),
                         Objects.toString(reference.getText(), postName),
                         null
                 );
             } else {
                 // link to the file
                 return resourceTransferRequest(reference.getResourceLocation(), source)
-                        .map(req -> new Reference(req.getLocalFilename(), reference.getText(), req))
+                        .map(req -> {
+                            fileLinksCounter.increment();
+                            return new Reference(req.getLocalFilename(), reference.getText(), req);
+                        })
                         .orElse(reference);
             }
         } catch (MalformedURLException | UnsupportedEncodingException e) {
@@ -217,36 +253,19 @@ public class PostItemProcessor implements ItemProcessor<Post, Post> {
         }
     }
 
+    /**
+     * @return path relative to {@code wp-content/uploads} of the smallest image variant at least
+     * {@code coverWidth} wide
+     */
     private Optional<String> getThumbnailFilename(String thumbnailRawData) {
-        if (!isNullOrEmpty(thumbnailRawData)) {
-            Matcher matcher = THUMBNAIL_FILE_PATTERN.matcher(thumbnailRawData);
-            String shortestFilename = null;
-            while (matcher.find()) {
-                String group = matcher.group(1);
-                if (shortestFilename == null || shortestFilename.length() > group.length()) {
-                    shortestFilename = group;
-                }
-            }
-            return Optional.ofNullable(shortestFilename);
-        }
-        return Optional.empty();
+        return Optional.ofNullable(AttachmentMetadataParser.parse(thumbnailRawData))
+                       .flatMap(metadata -> metadata.bestFit(convertSettings.getCoverWidth()));
     }
 
     private Optional<ResourceTransferRequest> resourceTransferRequest(String resourceLocation,
                                                                       SourcesSettings.Source postSource) {
-        return ImmutableList.<SourcesSettings.Source>builder()
-                .addAll(
-                        sourcesSettings.getSources().values()
-                )
-                .add(postSource)
-                .build()
-                .stream()
-                .filter(source ->
-                                resourceLocation.startsWith(source.getWordpressRemoteBaseUrl()) ||
-                                source.equals(postSource)
-                )
-                .findFirst()
-                .flatMap(source -> resourceTransferRequestFromSource(resourceLocation, source));
+        SourcesSettings.Source source = sourceUrlResolver.resolve(resourceLocation);
+        return resourceTransferRequestFromSource(resourceLocation, source != null ? source : postSource);
     }
 
     private Optional<ResourceTransferRequest> resourceTransferRequestFromSource(String resourceLocation,
@@ -262,6 +281,7 @@ public class PostItemProcessor implements ItemProcessor<Post, Post> {
                         .map(SourcesSettings.Source::getWordpressHome)
                         .flatMap(wordpressHome ->
                                          checkPathsExistence(
+                                                 resourceSource,
                                                  getPathFromAlternativeLocation(resourcePath, resourceSource),
                                                  getPathFromAlternativeLocation(WORDPRESS_CONTENT_PATH + resourcePath,
                                                                                 resourceSource)
@@ -270,18 +290,18 @@ public class PostItemProcessor implements ItemProcessor<Post, Post> {
                         .map(path ->
                                      new ResourceTransferRequest(
                                              path.toUri(),
-                                             adjustFilename(path.getFileName().toString(), resourceSource)
+                                             adjustFilename(path.getFileName().toString(), resourceSource),
+                                             resourceSource.getLocalCopyMode()
                                      )
                         ),
                 Optional.ofNullable(resourceSource)
-                        .map(SourcesSettings.Source::getWordpressRemoteBaseUrl)
-                        .map(Strings::nullToEmpty)
-                        .filter(resourceLocation::startsWith)
-                        .map(baseUrl ->
+                        .filter(source -> sourceUrlResolver.belongsTo(resourceLocation, source))
+                        .map(source ->
                                      new ResourceTransferRequest(
                                              resourceURI,
                                              adjustFilename(Paths.get(resourcePath).getFileName().toString(),
-                                                            resourceSource)
+                                                            resourceSource),
+                                             resourceSource.getLocalCopyMode()
                                      )
                         )
         );
@@ -299,9 +319,9 @@ public class PostItemProcessor implements ItemProcessor<Post, Post> {
         return path;
     }
 
-    private Optional<Path> checkPathsExistence(Path... paths) {
+    private Optional<Path> checkPathsExistence(SourcesSettings.Source source, Path... paths) {
         return Stream.of(paths)
-                     .filter(Files::exists)
+                     .filter(path -> uploadsIndex.exists(source, path))
                      .findFirst();
     }
 
@@ -313,17 +333,4 @@ public class PostItemProcessor implements ItemProcessor<Post, Post> {
         }
         return filename;
     }
-
-    private String getPostDirectoryName(String title, SourcesSettings.Source source) {
-        if (source != null) {
-            title += nullToEmpty(source.getTargetResourceSuffix());
-        }
-        String output = Junidecode.unidecode(title.trim());
-        output = CharMatcher.whitespace().replaceFrom(output, '-');
-        output = CharMatcher.forPredicate(Character::isLetter)
-                            .or(CharMatcher.forPredicate(Character::isDigit))
-                            .or(CharMatcher.is('-'))
-                            .retainFrom(output);
-        return output.toLowerCase();
-    }
 }
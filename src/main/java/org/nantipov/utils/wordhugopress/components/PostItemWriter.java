@@ -1,9 +1,8 @@
 package org.nantipov.utils.wordhugopress.components;
 
-import com.google.common.collect.ImmutableMap;
-import freemarker.template.Configuration;
-import freemarker.template.Template;
-import freemarker.template.TemplateException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.nantipov.utils.wordhugopress.domain.Post;
 import org.nantipov.utils.wordhugopress.domain.ResourceTransferRequest;
@@ -12,25 +11,53 @@ import org.springframework.batch.item.ItemWriter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.util.Map;
 
 @Slf4j
 @Component
 public class PostItemWriter implements ItemWriter<Post> {
 
+    private static final int INITIAL_BUFFER_CAPACITY = 16 * 1024;
+    private static final int MAX_RETAINED_BUFFER_CAPACITY = 1024 * 1024;
+
     private final Path contentItemDir;
-    private final Template template;
+    private final PostRenderer renderer;
+    private final MediaTransferEngine mediaTransferEngine;
+    private final IncrementalState incrementalState;
+    private final OutputManifest outputManifest;
+    private final RestartState restartState;
+    private final OutputArchive outputArchive;
+    private final Timer renderTimer;
+    private final Timer outputTimer;
+    private final Counter postsCounter;
+    private final ThreadLocal<StringWriter> renderBuffers =
+            ThreadLocal.withInitial(() -> new StringWriter(INITIAL_BUFFER_CAPACITY));
 
     public PostItemWriter(@Value("${app.target.hugo-site-content-items-dir}") Path contentItemDir,
-                          Configuration freemarkerConfiguration) throws IOException {
+                          PostRenderer renderer,
+                          MediaTransferEngine mediaTransferEngine,
+                          IncrementalState incrementalState,
+                          OutputManifest outputManifest,
+                          RestartState restartState,
+                          OutputArchive outputArchive,
+                          MeterRegistry meterRegistry) {
         this.contentItemDir = contentItemDir;
-        this.template = freemarkerConfiguration.getTemplate("empty-post.ftl");
+        this.renderer = renderer;
+        this.mediaTransferEngine = mediaTransferEngine;
+        this.incrementalState = incrementalState;
+        this.outputManifest = outputManifest;
+        this.restartState = restartState;
+        this.outputArchive = outputArchive;
+        this.renderTimer = Timer.builder("wordhugopress.render")
+                                .description("Rendering of posts")
+                                .register(meterRegistry);
+        this.outputTimer = Timer.builder("wordhugopress.output")
+                                .description("Writing of rendered posts")
+                                .register(meterRegistry);
+        this.postsCounter = Counter.builder("wordhugopress.posts.written").register(meterRegistry);
     }
 
     @Override
@@ -40,30 +67,46 @@ public class PostItemWriter implements ItemWriter<Post> {
         }
     }
 
-    private void writePost(Post post) throws IOException, TemplateException {
-        Path dir = Files.createDirectories(contentItemDir.resolve(post.getPostDirectoryName()));
+    private void writePost(Post post) throws IOException {
+        Path dir = contentItemDir.resolve(post.getPostDirectoryName());
+        if (!outputArchive.isEnabled()) {
+            Files.createDirectories(dir);
+        }
         Path file = dir.resolve("index.md");
-        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
-            Map<String, Object> model = ImmutableMap.of("post", post);
-            template.process(model, writer);
+        // a restarted job writes into a new archive, files in the content directory are not part of it
+        if (!outputArchive.isEnabled() && restartState.isWrittenBefore(file)) {
+            log.debug("Post {} is already written before restart", file);
+        } else {
+            StringWriter buffer = renderBuffer();
+            Timer.Sample sample = Timer.start();
+            renderer.render(post, buffer);
+            sample.stop(renderTimer);
+            sample = Timer.start();
+            if (outputArchive.isEnabled()) {
+                outputArchive.write(file, buffer.getBuffer());
+            } else {
+                outputManifest.writeIfChanged(file, buffer.getBuffer());
+            }
+            sample.stop(outputTimer);
+            postsCounter.increment();
         }
         if (post.getResourceTransferRequests() != null) {
             for (ResourceTransferRequest request : post.getResourceTransferRequests()) {
-                putLocalFile(request, dir);
+                mediaTransferEngine.submit(request, dir);
             }
         }
+        incrementalState.written(post);
     }
 
-    private void putLocalFile(ResourceTransferRequest resourceTransferRequest, Path localDir) {
-        Path localFile = localDir.resolve(resourceTransferRequest.getLocalFilename());
-        if (Files.exists(localFile)) {
-            return;
-        }
-        try {
-            Files.copy(resourceTransferRequest.getFrom().toURL().openStream(), localFile,
-                       StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-            log.error("Could not deliver request {}", resourceTransferRequest, e);
+    private StringWriter renderBuffer() {
+        StringWriter buffer = renderBuffers.get();
+        if (buffer.getBuffer().capacity() > MAX_RETAINED_BUFFER_CAPACITY) {
+            // do not keep huge posts in memory
+            buffer = new StringWriter(INITIAL_BUFFER_CAPACITY);
+            renderBuffers.set(buffer);
+        } else {
+            buffer.getBuffer().setLength(0);
         }
+        return buffer;
     }
 }
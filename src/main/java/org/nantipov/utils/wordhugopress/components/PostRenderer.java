@@ -0,0 +1,14 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import org.nantipov.utils.wordhugopress.domain.Post;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Renders a converted post into the content of its Hugo page.
+ */
+public interface PostRenderer {
+
+    void render(Post post, Writer out) throws IOException;
+}
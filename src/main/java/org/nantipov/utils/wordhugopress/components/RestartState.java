@@ -0,0 +1,68 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Objects;
+
+/**
+ * Tells whether an output file was already written by a previous, failed execution of the same job instance.
+ * <p>
+ * A restart resumes after the last committed chunk, but files of the chunk that was in progress may already be
+ * written; such files are not rendered again.
+ */
+@Slf4j
+@Component
+public class RestartState implements JobExecutionListener {
+
+    private final JobExplorer jobExplorer;
+
+    private volatile Instant instanceStartedAt = null;
+
+    public RestartState(JobExplorer jobExplorer) {
+        this.jobExplorer = jobExplorer;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        instanceStartedAt = jobExplorer.getJobExecutions(jobExecution.getJobInstance())
+                                       .stream()
+                                       .filter(execution -> !Objects.equals(execution.getId(), jobExecution.getId()))
+                                       .map(JobExecution::getCreateTime)
+                                       .filter(Objects::nonNull)
+                                       .min(LocalDateTime::compareTo)
+                                       .map(createTime -> createTime.atZone(ZoneId.systemDefault()).toInstant())
+                                       .orElse(null);
+        if (instanceStartedAt != null) {
+            log.info("Job is restarted, files written since {} are kept", instanceStartedAt);
+        }
+    }
+
+    public boolean isRestart() {
+        return instanceStartedAt != null;
+    }
+
+    /**
+     * @return {@code true} if the job is restarted and the file was written since the first execution started
+     */
+    public boolean isWrittenBefore(Path file) {
+        Instant startedAt = instanceStartedAt;
+        if (startedAt == null) {
+            return false;
+        }
+        try {
+            return !Files.getLastModifiedTime(file).toInstant().isBefore(startedAt);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.CharMatcher;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import lombok.extern.slf4j.Slf4j;
+import net.gcardone.junidecode.Junidecode;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.google.common.base.Strings.nullToEmpty;
+
+/**
+ * Turns titles and permalinks into slugs and assigns post directories.
+ * <p>
+ * Slugs are cached, as the same titles and links are met many times. Directories are registered for all
+ * sources together: when the slug of a post is already taken by another post, the post gets
+ * {@code <slug>-<ID>} instead of overwriting the other one. Assignments are saved in the state directory,
+ * so a post keeps its directory in the next runs whatever order posts are converted in.
+ * <p>
+ * Posts of the database sources are assigned their directories before the job starts, in order of source name
+ * and post {@code ID}, so that of the new posts with the same slug the first one in this order gets it, whichever
+ * worker converts it first. Posts of export files are assigned in the order they are read. This pass also drops
+ * the directories of deleted posts from the registry, a directory of a deleted post is free for a new one, and
+ * hands every assignment to the {@link AssignmentListener}s.
+ */
+@Slf4j
+@Component
+public class SlugService implements JobExecutionListener {
+
+    private static final String REGISTRY_FILENAME = "slugs";
+    private static final String SEPARATOR = "\t";
+
+    private static final CharMatcher WHITESPACE = CharMatcher.whitespace().precomputed();
+    private static final CharMatcher SLUG_CHARACTERS = CharMatcher.forPredicate(Character::isLetter)
+                                                                  .or(CharMatcher.forPredicate(Character::isDigit))
+                                                                  .or(CharMatcher.is('-'))
+                                                                  .precomputed();
+
+    private final SourcesSettings sourcesSettings;
+    private final SourceDataSources sourceDataSources;
+    private final Path registryFile;
+    private final LoadingCache<String, String> slugs;
+    private final Map<String, String> ownersBySlug = new ConcurrentHashMap<>();
+    private final Map<String, String> slugsByOwner = new ConcurrentHashMap<>();
+    private final List<AssignmentListener> assignmentListeners = new CopyOnWriteArrayList<>();
+
+    public SlugService(ConvertSettings convertSettings, SourcesSettings sourcesSettings,
+                       SourceDataSources sourceDataSources) {
+        this.sourcesSettings = sourcesSettings;
+        this.sourceDataSources = sourceDataSources;
+        this.registryFile = convertSettings.getStateDir().resolve(REGISTRY_FILENAME);
+        this.slugs = CacheBuilder.newBuilder()
+                                 .maximumSize(convertSettings.getSlugCacheSize())
+                                 .build(CacheLoader.from(SlugService::slugify));
+    }
+
+    /**
+     * Adds a listener of the directories assigned to posts of the database sources before the job starts.
+     */
+    public void addAssignmentListener(AssignmentListener listener) {
+        assignmentListeners.add(listener);
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        load();
+        Map<String, SourcesSettings.Source> databaseSources = new TreeMap<>();
+        sourcesSettings.getSources().forEach((sourceName, source) -> {
+            if (source.getType() == SourcesSettings.SourceType.DATABASE) {
+                databaseSources.put(sourceName, source);
+            }
+        });
+        Scan scan = new Scan(databaseSources.keySet());
+        databaseSources.forEach((sourceName, source) -> assign(sourceName, source, scan));
+        scan.complete = true;
+        slugsByOwner.forEach((owner, directory) -> {
+            if (scan.isDeleted(owner)) {
+                slugsByOwner.remove(owner, directory);
+                ownersBySlug.remove(directory, owner);
+            }
+        });
+    }
+
+    private void load() {
+        ownersBySlug.clear();
+        slugsByOwner.clear();
+        if (!Files.exists(registryFile)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(registryFile, StandardCharsets.UTF_8)) {
+                String[] values = line.split(SEPARATOR, 2);
+                if (values.length == 2) {
+                    ownersBySlug.put(values[1], values[0]);
+                    slugsByOwner.put(values[0], values[1]);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not load slugs {}, directories are assigned again", registryFile, e);
+        }
+    }
+
+    private void assign(String sourceName, SourcesSettings.Source source, Scan scan) {
+        JdbcTemplate jdbcTemplate = sourceDataSources.jdbcTemplate(sourceName);
+        Post post = new Post();
+        post.setSourceName(sourceName);
+        scan.sourceName = sourceName;
+        jdbcTemplate.query(
+                "SELECT ID, post_title, post_name FROM " + source.getWordpressTablePrefix() + "_posts " +
+                "WHERE post_type = 'post' ORDER BY ID",
+                resultSet -> {
+                    post.setId(resultSet.getLong(1));
+                    post.setTitle(resultSet.getString(2));
+                    scan.seen(post.getId());
+                    String directory = postDirectoryName(post, source, scan);
+                    for (AssignmentListener listener : assignmentListeners) {
+                        listener.assigned(source, post.getId(), directory, resultSet.getString(3));
+                    }
+                }
+        );
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        try {
+            Files.createDirectories(registryFile.getParent());
+            Path tempFile = Files.createTempFile(registryFile.getParent(), REGISTRY_FILENAME, ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> entry : slugsByOwner.entrySet()) {
+                    writer.write(entry.getKey() + SEPARATOR + entry.getValue());
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, registryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Could not save slugs {}", registryFile, e);
+        }
+    }
+
+    /**
+     * Slug of the text with the resource suffix of the source.
+     */
+    public String slug(String text, SourcesSettings.Source source) {
+        String suffix = source != null ? nullToEmpty(source.getTargetResourceSuffix()) : "";
+        return slugs.getUnchecked(text + suffix);
+    }
+
+    /**
+     * Directory of the post, unique among all posts of all sources.
+     */
+    public String postDirectoryName(Post post, SourcesSettings.Source source) {
+        return postDirectoryName(post, source, null);
+    }
+
+    private String postDirectoryName(Post post, SourcesSettings.Source source, @Nullable Scan scan) {
+        String slug = slug(nullToEmpty(post.getTitle()), source);
+        String id = Long.toString(post.getId());
+        // an empty slug falls back to the ID, then to <ID>-<n>
+        String directory = slug.isEmpty() ? id : slug;
+        String suffixed = slug.isEmpty() ? id : slug + "-" + id;
+        String owner = post.getSourceName() + "/" + id;
+        String assigned = slugsByOwner.get(owner);
+        if (assigned != null) {
+            if (assigned.equals(directory) || assigned.equals(suffixed) || isNumbered(assigned, suffixed)) {
+                return assigned;
+            }
+            // title has changed
+            ownersBySlug.remove(assigned, owner);
+        }
+        String candidate = directory;
+        for (int attempt = 1; ; attempt++) {
+            String current = ownersBySlug.putIfAbsent(candidate, owner);
+            if (current == null || current.equals(owner)) {
+                break;
+            }
+            if (scan != null && scan.isDeleted(current) && ownersBySlug.replace(candidate, current, owner)) {
+                slugsByOwner.remove(current, candidate);
+                log.info("Directory {} of deleted post {} is assigned to post {}", candidate, current, owner);
+                break;
+            }
+            candidate = slug.isEmpty() ? suffixed + "-" + (attempt + 1) : suffixed + (attempt > 1 ? "-" + attempt : "");
+            if (attempt == 1) {
+                log.warn("Post {} has the same directory {} as post {}, it is written into {}",
+                         owner, directory, current, candidate);
+            }
+        }
+        slugsByOwner.put(owner, candidate);
+        return candidate;
+    }
+
+    /**
+     * @return {@code true} for {@code <prefix>-<n>}
+     */
+    private static boolean isNumbered(String directory, String prefix) {
+        return directory.length() > prefix.length() + 1 &&
+               directory.startsWith(prefix + "-") &&
+               CharMatcher.inRange('0', '9').matchesAllOf(directory.substring(prefix.length() + 1));
+    }
+
+    @VisibleForTesting
+    static String slugify(String text) {
+        String output = Junidecode.unidecode(text.trim());
+        output = WHITESPACE.replaceFrom(output, '-');
+        output = SLUG_CHARACTERS.retainFrom(output);
+        return output.toLowerCase();
+    }
+
+    /**
+     * Receives the directory assigned to a post of a database source before the job starts.
+     */
+    public interface AssignmentListener {
+        void assigned(SourcesSettings.Source source, long postId, String directory, @Nullable String postName);
+    }
+
+    /**
+     * Posts of the database sources met by the pass before the job, which goes in order of source name and ID.
+     */
+    private static class Scan {
+        private final Set<String> sourceNames;
+        private final Map<String, BitSet> ids = new HashMap<>();
+        private String sourceName;
+        private long id;
+        private boolean complete;
+
+        private Scan(Set<String> sourceNames) {
+            this.sourceNames = sourceNames;
+        }
+
+        private void seen(long postId) {
+            id = postId;
+            if (postId >= 0 && postId <= Integer.MAX_VALUE) {
+                ids.computeIfAbsent(sourceName, name -> new BitSet()).set((int) postId);
+            }
+        }
+
+        /**
+         * @return {@code true} if the owner is a post of a database source which the pass is already beyond
+         * without having met it
+         */
+        private boolean isDeleted(String owner) {
+            int separator = owner.lastIndexOf('/');
+            String ownerSourceName = owner.substring(0, Math.max(separator, 0));
+            if (!sourceNames.contains(ownerSourceName)) {
+                return false;
+            }
+            long ownerId;
+            try {
+                ownerId = Long.parseLong(owner.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (ownerId < 0 || ownerId > Integer.MAX_VALUE) {
+                return false;
+            }
+            if (!complete) {
+                int order = ownerSourceName.compareTo(sourceName);
+                if (order > 0 || order == 0 && ownerId >= id) {
+                    return false;
+                }
+            }
+            BitSet sourceIds = ids.get(ownerSourceName);
+            return sourceIds == null || !sourceIds.get((int) ownerId);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.sql.DataSource;
+
+/**
+ * Keeps one connection pool per source, shared by all readers and partitions of that source.
+ * <p>
+ * Pools and fetching of rows are set up by the {@code connection} settings of the source. By default MySQL
+ * result sets are streamed, so a reader never holds more than the current row of a large query in memory.
+ */
+@Component
+public class SourceDataSources implements DisposableBean {
+
+    private static final int FETCH_SIZE_NOT_SET = -1;
+    private static final int FETCH_SIZE_MYSQL_STREAMING = Integer.MIN_VALUE;
+
+    private final SourcesSettings sourcesSettings;
+    private final Map<String, HikariDataSource> dataSources = new ConcurrentHashMap<>();
+
+    public SourceDataSources(SourcesSettings sourcesSettings) {
+        this.sourcesSettings = sourcesSettings;
+    }
+
+    public DataSource get(String sourceName) {
+        return dataSources.computeIfAbsent(sourceName, this::dataSource);
+    }
+
+    /**
+     * Template with the fetch size of the source.
+     */
+    public JdbcTemplate jdbcTemplate(String sourceName) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(get(sourceName));
+        jdbcTemplate.setFetchSize(getFetchSize(sourceName));
+        return jdbcTemplate;
+    }
+
+    /**
+     * @return fetch size for statements of the source, {@code -1} for the driver default
+     */
+    public int getFetchSize(String sourceName) {
+        SourcesSettings.Source source = source(sourceName);
+        switch (fetchMode(source)) {
+            case STREAMING:
+                if (isMySql(source)) {
+                    return FETCH_SIZE_MYSQL_STREAMING;
+                }
+                return source.getConnection().getFetchSize();
+            case CURSOR:
+                return source.getConnection().getFetchSize();
+            default:
+                return FETCH_SIZE_NOT_SET;
+        }
+    }
+
+    /**
+     * @return {@code true} if rows are streamed over the connection, so the cursor position can not be asked for
+     */
+    public boolean isStreaming(String sourceName) {
+        return getFetchSize(sourceName) == FETCH_SIZE_MYSQL_STREAMING;
+    }
+
+    private HikariDataSource dataSource(String sourceName) {
+        SourcesSettings.Source source = source(sourceName);
+        SourcesSettings.ConnectionSettings connection = source.getConnection();
+        HikariDataSource dataSource = source.getDatabase()
+                                            .initializeDataSourceBuilder()
+                                            .type(HikariDataSource.class)
+                                            .build();
+        dataSource.setPoolName("source-" + sourceName);
+        dataSource.setMaximumPoolSize(connection.getMaximumPoolSize());
+        dataSource.setMinimumIdle(Math.min(connection.getMinimumIdle(), connection.getMaximumPoolSize()));
+        dataSource.setReadOnly(connection.isReadOnly());
+        dataSource.setConnectionTimeout(connection.getConnectionTimeout().toMillis());
+        if (isMySql(source)) {
+            if (fetchMode(source) == SourcesSettings.FetchMode.CURSOR) {
+                dataSource.addDataSourceProperty("useCursorFetch", "true");
+            }
+            if (connection.getSocketTimeout() != null) {
+                dataSource.addDataSourceProperty("socketTimeout", connection.getSocketTimeout().toMillis());
+            }
+            dataSource.addDataSourceProperty("netTimeoutForStreamingResults",
+                                             connection.getStreamingNetTimeout().getSeconds());
+            if (connection.isCompression()) {
+                dataSource.addDataSourceProperty("useCompression", "true");
+            }
+        }
+        connection.getProperties().forEach(dataSource::addDataSourceProperty);
+        return dataSource;
+    }
+
+    private SourcesSettings.Source source(String sourceName) {
+        SourcesSettings.Source source = sourcesSettings.getSources().get(sourceName);
+        if (source == null) {
+            throw new IllegalArgumentException("Unknown source " + sourceName);
+        }
+        return source;
+    }
+
+    private static SourcesSettings.FetchMode fetchMode(SourcesSettings.Source source) {
+        SourcesSettings.FetchMode fetchMode = source.getConnection().getFetchMode();
+        if (fetchMode == SourcesSettings.FetchMode.AUTO) {
+            return isMySql(source) ? SourcesSettings.FetchMode.STREAMING : SourcesSettings.FetchMode.CURSOR;
+        }
+        return fetchMode;
+    }
+
+    private static boolean isMySql(SourcesSettings.Source source) {
+        String url = source.getDatabase().getUrl();
+        return url != null && url.startsWith("jdbc:mysql:");
+    }
+
+    @Override
+    public void destroy() {
+        dataSources.values().forEach(HikariDataSource::close);
+        dataSources.clear();
+    }
+}
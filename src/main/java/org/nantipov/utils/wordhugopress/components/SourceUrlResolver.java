@@ -0,0 +1,134 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.base.Ascii;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Maps a URL to the source whose {@code wordpressRemoteBaseUrl} it starts with.
+ * <p>
+ * Base URLs are kept in a prefix tree built once at startup. Scheme ({@code http} or {@code https}) and a leading
+ * {@code www.} are ignored and the host is compared case-insensitively, the longest base URL wins.
+ * Lookups walk the tree over the characters of the URL and do not allocate, the tree is never modified after
+ * construction, so the resolver is safe to share between threads.
+ */
+@Component
+public class SourceUrlResolver {
+
+    private final Node root = new Node();
+
+    public SourceUrlResolver(SourcesSettings sourcesSettings) {
+        sourcesSettings.getSources().values().forEach(this::add);
+    }
+
+    /**
+     * @return the source with the longest base URL the location starts with, or {@code null}
+     */
+    @Nullable
+    public SourcesSettings.Source resolve(String location) {
+        return walk(location, null);
+    }
+
+    /**
+     * @return {@code true} if the location starts with the base URL of the source
+     */
+    public boolean belongsTo(String location, SourcesSettings.Source source) {
+        return walk(location, source) != null;
+    }
+
+    private void add(SourcesSettings.Source source) {
+        String baseUrl = source.getWordpressRemoteBaseUrl();
+        if (isNullOrEmpty(baseUrl)) {
+            return;
+        }
+        int start = start(baseUrl);
+        if (start == baseUrl.length()) {
+            return;
+        }
+        Node node = root;
+        boolean host = true;
+        for (int i = start; i < baseUrl.length(); i++) {
+            char c = baseUrl.charAt(i);
+            host = host && c != '/';
+            node = node.childOrCreate(host ? Ascii.toLowerCase(c) : c);
+        }
+        if (node.source == null) {
+            node.source = source;
+        }
+    }
+
+    @Nullable
+    private SourcesSettings.Source walk(String location, @Nullable SourcesSettings.Source wanted) {
+        if (location == null) {
+            return null;
+        }
+        SourcesSettings.Source match = null;
+        Node node = root;
+        boolean host = true;
+        for (int i = start(location); i < location.length(); i++) {
+            char c = location.charAt(i);
+            host = host && c != '/';
+            node = node.child(host ? Ascii.toLowerCase(c) : c);
+            if (node == null) {
+                break;
+            }
+            if (node.source != null) {
+                if (wanted == null) {
+                    match = node.source;
+                } else if (node.source == wanted) {
+                    return wanted;
+                }
+            }
+        }
+        return wanted == null ? match : null;
+    }
+
+    private static int start(String url) {
+        int start = 0;
+        if (url.regionMatches(true, 0, "http://", 0, 7)) {
+            start = 7;
+        } else if (url.regionMatches(true, 0, "https://", 0, 8)) {
+            start = 8;
+        }
+        if (url.regionMatches(true, start, "www.", 0, 4)) {
+            start += 4;
+        }
+        return start;
+    }
+
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private SourcesSettings.Source source;
+
+        @Nullable
+        private Node child(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index < 0 ? null : children[index];
+        }
+
+        private Node childOrCreate(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            newKeys[insertAt] = key;
+            newChildren[insertAt] = new Node();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insertAt];
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ListMultimap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.nantipov.utils.wordhugopress.domain.Watermark;
+import org.nantipov.utils.wordhugopress.tools.SqlDumpScanner;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads posts from the {@code INSERT} statements of a {@code mysqldump} of the WordPress database, without
+ * importing it.
+ * <p>
+ * The dump is read in up to three passes: the first one collects users, terms, term relationships, thumbnail
+ * references and {@code ID}s of the selected posts, skipping their content; the second one metadata of the
+ * thumbnails (skipped when no post has a thumbnail); the last one reads the selected posts. Memory depends on
+ * the number of posts, terms and thumbnails, the content of only one post is held at a time.
+ * <p>
+ * On restart the dump is read again and the posts read before are skipped.
+ */
+@Slf4j
+public class SqlDumpPostItemReader extends AbstractItemCountingItemStreamItemReader<Post> {
+
+    private static final Table POSTS = new Table(
+            "_posts",
+            ImmutableList.of("ID", "post_author", "post_date", "post_content", "post_title", "post_status",
+                             "post_modified", "post_type"),
+            ImmutableList.of("ID", "post_author", "post_date", "post_date_gmt", "post_content", "post_title",
+                             "post_excerpt", "post_status", "comment_status", "ping_status", "post_password",
+                             "post_name", "to_ping", "pinged", "post_modified", "post_modified_gmt",
+                             "post_content_filtered", "post_parent", "guid", "menu_order", "post_type",
+                             "post_mime_type", "comment_count")
+    );
+    private static final int POST_ID = 0;
+    private static final int POST_AUTHOR = 1;
+    private static final int POST_DATE = 2;
+    private static final int POST_CONTENT = 3;
+    private static final int POST_TITLE = 4;
+    private static final int POST_STATUS = 5;
+    private static final int POST_MODIFIED = 6;
+    private static final int POST_TYPE = 7;
+    private static final Set<Integer> POST_INDEX_FIELDS = ImmutableSet.of(POST_ID, POST_MODIFIED, POST_TYPE);
+
+    private static final Table USERS = new Table(
+            "_users",
+            ImmutableList.of("ID", "display_name"),
+            ImmutableList.of("ID", "user_login", "user_pass", "user_nicename", "user_email", "user_url",
+                             "user_registered", "user_activation_key", "user_status", "display_name")
+    );
+    private static final Table TERMS = new Table(
+            "_terms",
+            ImmutableList.of("term_id", "name"),
+            ImmutableList.of("term_id", "name", "slug", "term_group")
+    );
+    private static final Table TERM_TAXONOMY = new Table(
+            "_term_taxonomy",
+            ImmutableList.of("term_taxonomy_id", "term_id", "taxonomy"),
+            ImmutableList.of("term_taxonomy_id", "term_id", "taxonomy", "description", "parent", "count")
+    );
+    private static final Table TERM_RELATIONSHIPS = new Table(
+            "_term_relationships",
+            ImmutableList.of("object_id", "term_taxonomy_id"),
+            ImmutableList.of("object_id", "term_taxonomy_id", "term_order")
+    );
+    private static final Table POSTMETA = new Table(
+            "_postmeta",
+            ImmutableList.of("post_id", "meta_key", "meta_value"),
+            ImmutableList.of("meta_id", "post_id", "meta_key", "meta_value")
+    );
+    private static final int META_POST_ID = 0;
+    private static final int META_KEY = 1;
+    private static final int META_VALUE = 2;
+
+    private final Path exportFile;
+    private final String tablePrefix;
+    private final String sourceName;
+    private final long afterId;
+    private final long maxId;
+    private final Watermark watermark;
+    private final Counter rows;
+    private final Set<String> postsTable;
+
+    private final Map<Long, String> users = new HashMap<>();
+    private final Map<Long, String> terms = new HashMap<>();
+    private final Map<Long, TermTaxonomy> termTaxonomies = new HashMap<>();
+    private final ListMultimap<Long, Long> termRelationships = ArrayListMultimap.create();
+    private final Set<Long> postIds = new HashSet<>();
+    private final Map<Long, Long> thumbnailIds = new HashMap<>();
+    private final Map<Long, String> thumbnails = new HashMap<>();
+    private SqlDumpScanner scanner;
+    // columns of the last read statement and their fields
+    private List<String> lastColumns;
+    private Table lastTable;
+    private int[] lastFieldsByColumn;
+
+    public SqlDumpPostItemReader(Path exportFile, String tablePrefix, String sourceName, long afterId, long maxId,
+                                 @Nullable Watermark watermark, MeterRegistry meterRegistry) {
+        this.exportFile = exportFile;
+        this.tablePrefix = tablePrefix;
+        this.sourceName = sourceName;
+        this.afterId = afterId;
+        this.maxId = maxId;
+        this.watermark = watermark;
+        this.rows = Counter.builder("wordhugopress.read.rows")
+                           .tag("source", sourceName)
+                           .tag("query", "sql-dump")
+                           .register(meterRegistry);
+        this.postsTable = ImmutableSet.of(tablePrefix + POSTS.suffix);
+        setName("sqlDump");
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        users.clear();
+        terms.clear();
+        termTaxonomies.clear();
+        termRelationships.clear();
+        postIds.clear();
+        thumbnailIds.clear();
+        thumbnails.clear();
+        index();
+        if (!thumbnailIds.isEmpty()) {
+            indexThumbnails();
+        }
+        log.info("Dump of source {} is indexed: {} posts, {} users, {} terms, {} thumbnails",
+                 sourceName, postIds.size(), users.size(), terms.size(), thumbnails.size());
+        scanner = scanner();
+    }
+
+    @Override
+    protected Post doRead() throws Exception {
+        while (scanner.nextRow(postsTable) != null) {
+            String[] values = readRow(POSTS, (field, row) -> {
+                // content of posts which are not selected is skipped
+                return field == POST_ID || row[POST_ID] == null || postIds.contains(parseId(row[POST_ID]));
+            });
+            if (values[POST_ID] != null && postIds.contains(parseId(values[POST_ID]))) {
+                rows.increment();
+                return post(values);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        if (scanner != null) {
+            scanner.close();
+            scanner = null;
+        }
+    }
+
+    private void index() throws IOException {
+        String posts = tablePrefix + POSTS.suffix;
+        String postmeta = tablePrefix + POSTMETA.suffix;
+        Set<String> tables = ImmutableSet.of(posts, postmeta, tablePrefix + USERS.suffix,
+                                             tablePrefix + TERMS.suffix, tablePrefix + TERM_TAXONOMY.suffix,
+                                             tablePrefix + TERM_RELATIONSHIPS.suffix);
+        try (SqlDumpScanner indexScanner = scanner()) {
+            this.scanner = indexScanner;
+            String table;
+            while ((table = indexScanner.nextRow(tables)) != null) {
+                if (table.equals(posts)) {
+                    indexPost(readRow(POSTS, (field, row) -> POST_INDEX_FIELDS.contains(field)));
+                } else if (table.equals(postmeta)) {
+                    String[] values = readRow(POSTMETA, (field, row) -> {
+                        return field != META_VALUE || ExportFiles.META_THUMBNAIL_ID.equals(row[META_KEY]);
+                    });
+                    if (ExportFiles.META_THUMBNAIL_ID.equals(values[META_KEY]) && values[META_VALUE] != null) {
+                        thumbnailIds.put(parseId(values[META_POST_ID]), parseId(values[META_VALUE]));
+                    }
+                } else if (table.equals(tablePrefix + USERS.suffix)) {
+                    String[] values = readRow(USERS, (field, row) -> true);
+                    users.put(parseId(values[0]), values[1]);
+                } else if (table.equals(tablePrefix + TERMS.suffix)) {
+                    String[] values = readRow(TERMS, (field, row) -> true);
+                    terms.put(parseId(values[0]), values[1]);
+                } else if (table.equals(tablePrefix + TERM_TAXONOMY.suffix)) {
+                    String[] values = readRow(TERM_TAXONOMY, (field, row) -> true);
+                    termTaxonomies.put(parseId(values[0]), new TermTaxonomy(values[2], parseId(values[1])));
+                } else {
+                    String[] values = readRow(TERM_RELATIONSHIPS, (field, row) -> true);
+                    termRelationships.put(parseId(values[0]), parseId(values[1]));
+                }
+            }
+        } finally {
+            this.scanner = null;
+        }
+        thumbnailIds.keySet().retainAll(postIds);
+    }
+
+    private void indexPost(String[] values) {
+        if (!ExportFiles.POST_TYPE_POST.equals(values[POST_TYPE]) || values[POST_ID] == null) {
+            return;
+        }
+        Post post = new Post();
+        post.setId(parseId(values[POST_ID]));
+        post.setModifiedAt(ExportFiles.timestamp(values[POST_MODIFIED]));
+        if (ExportFiles.isSelected(post, afterId, maxId, watermark)) {
+            postIds.add(post.getId());
+        }
+    }
+
+    private void indexThumbnails() throws IOException {
+        Set<Long> attachmentIds = new HashSet<>(thumbnailIds.values());
+        Set<String> tables = ImmutableSet.of(tablePrefix + POSTMETA.suffix);
+        try (SqlDumpScanner indexScanner = scanner()) {
+            this.scanner = indexScanner;
+            while (indexScanner.nextRow(tables) != null) {
+                String[] values = readRow(POSTMETA, (field, row) -> {
+                    if (field != META_VALUE) {
+                        return true;
+                    }
+                    return ExportFiles.META_ATTACHMENT_METADATA.equals(row[META_KEY]) &&
+                           row[META_POST_ID] != null && attachmentIds.contains(parseId(row[META_POST_ID]));
+                });
+                if (values[META_VALUE] != null) {
+                    thumbnails.put(parseId(values[META_POST_ID]), values[META_VALUE]);
+                }
+            }
+        } finally {
+            this.scanner = null;
+        }
+    }
+
+    private Post post(String[] values) {
+        Post post = new Post();
+        post.setId(parseId(values[POST_ID]));
+        post.setSourceName(sourceName);
+        post.setAuthor(users.get(parseId(values[POST_AUTHOR])));
+        post.setCreatedAt(ExportFiles.timestamp(values[POST_DATE]));
+        post.setModifiedAt(ExportFiles.timestamp(values[POST_MODIFIED]));
+        post.setTitle(Strings.nullToEmpty(values[POST_TITLE]));
+        post.setContent(Strings.nullToEmpty(values[POST_CONTENT]));
+        post.setDraft(ExportFiles.isDraft(values[POST_STATUS]));
+        Long thumbnailId = thumbnailIds.get(post.getId());
+        post.setThumbnailRawData(thumbnailId != null ? thumbnails.get(thumbnailId) : null);
+        ImmutableSetMultimap.Builder<String, String> taxonomy = ImmutableSetMultimap.builder();
+        for (Long termTaxonomyId : termRelationships.get(post.getId())) {
+            TermTaxonomy termTaxonomy = termTaxonomies.get(termTaxonomyId);
+            String term = termTaxonomy != null ? terms.get(termTaxonomy.termId) : null;
+            if (term != null && termTaxonomy.taxonomy != null) {
+                taxonomy.put(termTaxonomy.taxonomy, term);
+            }
+        }
+        post.setTaxonomy(taxonomy.build());
+        return post;
+    }
+
+    /**
+     * Reads the fields of the table from the current row.
+     *
+     * @param filter tells whether a field should be read, given the fields read before it, a skipped field is
+     *               {@code null}
+     */
+    private String[] readRow(Table table, FieldFilter filter) throws IOException {
+        List<String> columns = scanner.columns();
+        if (table != lastTable || columns != lastColumns) {
+            lastFieldsByColumn = columns != null ? Table.fieldsByColumn(table.fields, columns)
+                                                 : table.defaultFieldsByColumn;
+            lastTable = table;
+            lastColumns = columns;
+        }
+        int[] fieldsByColumn = lastFieldsByColumn;
+        String[] values = new String[table.fields.size()];
+        int column = 0;
+        while (scanner.hasNextValue()) {
+            int field = column < fieldsByColumn.length ? fieldsByColumn[column] : -1;
+            boolean keep = field >= 0 && filter.keep(field, values);
+            String value = scanner.nextValue(keep);
+            if (keep) {
+                values[field] = value;
+            }
+            column++;
+        }
+        return values;
+    }
+
+    private SqlDumpScanner scanner() throws IOException {
+        return new SqlDumpScanner(new InputStreamReader(ExportFiles.open(exportFile), StandardCharsets.UTF_8));
+    }
+
+    private static long parseId(@Nullable String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private interface FieldFilter {
+        boolean keep(int field, String[] row);
+    }
+
+    private static class Table {
+        private final String suffix;
+        private final List<String> fields;
+        private final int[] defaultFieldsByColumn;
+
+        private Table(String suffix, List<String> fields, List<String> defaultColumns) {
+            this.suffix = suffix;
+            this.fields = fields;
+            this.defaultFieldsByColumn = fieldsByColumn(fields, defaultColumns);
+        }
+
+        /**
+         * @return index of the field for every column, {@code -1} for the columns which are not read
+         */
+        private static int[] fieldsByColumn(List<String> fields, List<String> columns) {
+            int[] fieldsByColumn = new int[columns.size()];
+            for (int column = 0; column < columns.size(); column++) {
+                fieldsByColumn[column] = -1;
+                for (int field = 0; field < fields.size(); field++) {
+                    if (fields.get(field).equalsIgnoreCase(columns.get(column))) {
+                        fieldsByColumn[column] = field;
+                    }
+                }
+            }
+            return fieldsByColumn;
+        }
+    }
+
+    private static class TermTaxonomy {
+        private final String taxonomy;
+        private final long termId;
+
+        private TermTaxonomy(String taxonomy, long termId) {
+            this.taxonomy = taxonomy;
+            this.termId = termId;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.nantipov.utils.wordhugopress.domain.Watermark;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.lang.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Reads posts page by page with {@code ID} keyset pagination and loads taxonomy and thumbnails
+ * of every page with one extra query each, instead of joining everything into one wide result set.
+ */
+public class StagedPostItemReader implements ItemReader<Post> {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final RowMapper<Post> postRowMapper;
+    private final int pageSize;
+    private final long maxId;
+    private final Watermark watermark;
+    private final String sqlPosts;
+    private final String sqlTaxonomy;
+    private final String sqlThumbnails;
+    private final QueryMeters postsMeters;
+    private final QueryMeters taxonomyMeters;
+    private final QueryMeters thumbnailsMeters;
+
+    private long lastId;
+    private Iterator<Post> page = null;
+    private boolean isExhausted = false;
+
+    public StagedPostItemReader(JdbcTemplate jdbcTemplate, String tablePrefix, RowMapper<Post> postRowMapper,
+                                int pageSize, long afterId, long maxId, @Nullable Watermark watermark,
+                                MeterRegistry meterRegistry, String sourceName) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.postRowMapper = postRowMapper;
+        this.pageSize = pageSize;
+        this.lastId = afterId;
+        this.maxId = maxId;
+        this.watermark = watermark;
+        this.sqlPosts = getSQLQueryPosts(tablePrefix, watermark != null);
+        this.sqlTaxonomy = getSQLQueryTaxonomy(tablePrefix);
+        this.sqlThumbnails = getSQLQueryThumbnails(tablePrefix);
+        this.postsMeters = new QueryMeters(meterRegistry, sourceName, "posts");
+        this.taxonomyMeters = new QueryMeters(meterRegistry, sourceName, "taxonomy");
+        this.thumbnailsMeters = new QueryMeters(meterRegistry, sourceName, "thumbnails");
+    }
+
+    @Override
+    public Post read() {
+        while (page == null || !page.hasNext()) {
+            if (isExhausted) {
+                return null;
+            }
+            page = readPage().iterator();
+        }
+        return page.next();
+    }
+
+    private List<Post> readPage() {
+        Timer.Sample sample = Timer.start();
+        List<Post> posts = jdbcTemplate.query(
+                sqlPosts,
+                new MapSqlParameterSource()
+                        .addValue("lastId", lastId)
+                        .addValue("maxId", maxId)
+                        .addValue("modifiedAt", watermark != null ? watermark.getModifiedAt() : null)
+                        .addValue("id", watermark != null ? watermark.getId() : null)
+                        .addValue("pageSize", pageSize),
+                postRowMapper
+        );
+        postsMeters.record(sample, posts.size());
+        if (posts.size() < pageSize) {
+            isExhausted = true;
+        }
+        if (posts.isEmpty()) {
+            return posts;
+        }
+        lastId = posts.get(posts.size() - 1).getId();
+
+        Map<Long, Post> postsById = posts.stream().collect(Collectors.toMap(Post::getId, Function.identity()));
+        MapSqlParameterSource idsParameters = new MapSqlParameterSource("ids", postsById.keySet());
+
+        Map<Long, ImmutableSetMultimap.Builder<String, String>> taxonomies = new HashMap<>();
+        AtomicInteger rows = new AtomicInteger();
+        sample = Timer.start();
+        jdbcTemplate.query(sqlTaxonomy, idsParameters, rs -> {
+            rows.incrementAndGet();
+            String taxonomy = rs.getString("taxonomy");
+            String termValue = rs.getString("term_value");
+            if (taxonomy != null && termValue != null) {
+                taxonomies.computeIfAbsent(rs.getLong("post_id"), id -> ImmutableSetMultimap.builder())
+                          .put(taxonomy, termValue);
+            }
+        });
+        taxonomyMeters.record(sample, rows.getAndSet(0));
+        sample = Timer.start();
+        jdbcTemplate.query(sqlThumbnails, idsParameters, rs -> {
+            rows.incrementAndGet();
+            Post post = postsById.get(rs.getLong("post_id"));
+            if (post != null && post.getThumbnailRawData() == null) {
+                post.setThumbnailRawData(rs.getString("thumbnail_data"));
+            }
+        });
+        thumbnailsMeters.record(sample, rows.get());
+
+        for (Post post : posts) {
+            ImmutableSetMultimap.Builder<String, String> taxonomy = taxonomies.get(post.getId());
+            post.setTaxonomy(taxonomy != null ? taxonomy.build() : ImmutableMultimap.of());
+        }
+        return posts;
+    }
+
+    private static String getSQLQueryPosts(String tablePrefix, boolean isAfterWatermark) {
+        return "SELECT\n" +
+               "    p.post_date, p.ID, p.post_modified, p.post_title, p.post_content, p.post_status,\n" +
+               "    u.display_name user_displayname\n" +
+               "FROM\n" +
+               "    " + tablePrefix + "_posts p\n" +
+               "    JOIN " + tablePrefix + "_users u ON (u.ID = p.post_author)\n" +
+               "WHERE\n" +
+               "    p.post_type = 'post'\n" +
+               "    AND p.ID > :lastId AND p.ID <= :maxId\n" +
+               (isAfterWatermark
+                ? "    AND (p.post_modified > :modifiedAt OR p.post_modified = :modifiedAt AND p.ID > :id)\n"
+                : "") +
+               "ORDER BY p.ID\n" +
+               "LIMIT :pageSize";
+    }
+
+    private static String getSQLQueryTaxonomy(String tablePrefix) {
+        return "SELECT tr.object_id post_id, termtax.taxonomy, term.name term_value\n" +
+               "FROM\n" +
+               "    " + tablePrefix + "_term_relationships tr\n" +
+               "    JOIN " + tablePrefix + "_term_taxonomy termtax " +
+               "ON (termtax.term_taxonomy_id = tr.term_taxonomy_id)\n" +
+               "    JOIN " + tablePrefix + "_terms term ON (term.term_id = termtax.term_id)\n" +
+               "WHERE\n" +
+               "    tr.object_id IN (:ids)";
+    }
+
+    private static String getSQLQueryThumbnails(String tablePrefix) {
+        return "SELECT pm1.post_id, pm2.meta_value thumbnail_data\n" +
+               "FROM\n" +
+               "    " + tablePrefix + "_postmeta pm1\n" +
+               "    JOIN " + tablePrefix + "_postmeta pm2 ON (pm2.post_id = pm1.meta_value)\n" +
+               "WHERE\n" +
+               "    pm1.meta_key = '_thumbnail_id'\n" +
+               "    AND pm2.meta_key = '_wp_attachment_metadata'\n" +
+               "    AND pm1.post_id IN (:ids)";
+    }
+
+    private static class QueryMeters {
+        private final Timer timer;
+        private final Counter rows;
+
+        private QueryMeters(MeterRegistry meterRegistry, String sourceName, String query) {
+            this.timer = Timer.builder("wordhugopress.read.query")
+                              .tag("source", sourceName)
+                              .tag("query", query)
+                              .register(meterRegistry);
+            this.rows = Counter.builder("wordhugopress.read.rows")
+                               .tag("source", sourceName)
+                               .tag("query", query)
+                               .register(meterRegistry);
+        }
+
+        private void record(Timer.Sample sample, int rowCount) {
+            sample.stop(timer);
+            rows.increment(rowCount);
+        }
+    }
+}
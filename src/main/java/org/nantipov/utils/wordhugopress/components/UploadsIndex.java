@@ -0,0 +1,197 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Index of the files in {@code wp-content/uploads} of every source with a {@code wordpressHome}.
+ * <p>
+ * When enabled, the uploads trees are walked in parallel before the job starts (or the index saved by
+ * a previous run is loaded), and existence of media files is answered from memory instead of asking the
+ * file system, which is slow on network mounts. Paths outside of the uploads tree are still checked on
+ * the file system.
+ */
+@Slf4j
+@Component
+public class UploadsIndex implements JobExecutionListener {
+
+    private static final String UPLOADS_PATH = "wp-content/uploads";
+    private static final String INDEX_FILE_SUFFIX = ".uploads";
+    private static final String SEPARATOR = "\t";
+
+    private final ConvertSettings convertSettings;
+    private final SourcesSettings sourcesSettings;
+
+    private volatile Map<SourcesSettings.Source, SourceIndex> indexes = Collections.emptyMap();
+
+    public UploadsIndex(ConvertSettings convertSettings, SourcesSettings sourcesSettings) {
+        this.convertSettings = convertSettings;
+        this.sourcesSettings = sourcesSettings;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        if (!convertSettings.isUploadsIndex()) {
+            return;
+        }
+        Map<SourcesSettings.Source, SourceIndex> sourceIndexes = new IdentityHashMap<>();
+        sourcesSettings.getSources().forEach((sourceName, source) -> {
+            if (source.getWordpressHome() != null) {
+                Path uploadsDir = source.getWordpressHome().resolve(UPLOADS_PATH).normalize();
+                Map<String, Long> sizes = index(sourceName, uploadsDir);
+                if (sizes != null) {
+                    sourceIndexes.put(source, new SourceIndex(uploadsDir, sizes));
+                }
+            }
+        });
+        indexes = sourceIndexes;
+    }
+
+    /**
+     * Checks whether the file of the source exists, using the index if the file is in the uploads tree.
+     */
+    public boolean exists(SourcesSettings.Source source, Path path) {
+        SourceIndex sourceIndex = indexes.get(source);
+        if (sourceIndex == null) {
+            return Files.exists(path);
+        }
+        Path normalizedPath = path.normalize();
+        if (!normalizedPath.startsWith(sourceIndex.uploadsDir)) {
+            return Files.exists(path);
+        }
+        return sourceIndex.sizes.containsKey(key(sourceIndex.uploadsDir, normalizedPath));
+    }
+
+    private Map<String, Long> index(String sourceName, Path uploadsDir) {
+        Path indexFile = convertSettings.getStateDir().resolve(sourceName + INDEX_FILE_SUFFIX);
+        if (!convertSettings.isUploadsIndexRescan() && Files.exists(indexFile)) {
+            try {
+                Map<String, Long> sizes = load(indexFile);
+                log.info("Uploads index of source {} is loaded, {} files", sourceName, sizes.size());
+                return sizes;
+            } catch (IOException | NumberFormatException e) {
+                log.warn("Could not load uploads index {}, uploads of source {} will be scanned",
+                         indexFile, sourceName, e);
+            }
+        }
+        Map<String, Long> sizes;
+        try {
+            sizes = scan(uploadsDir);
+        } catch (UncheckedIOException e) {
+            log.warn("Could not scan uploads of source {}, files will be checked one by one", sourceName, e);
+            return null;
+        }
+        log.info("Uploads of source {} are scanned, {} files", sourceName, sizes.size());
+        save(indexFile, sizes);
+        return sizes;
+    }
+
+    private Map<String, Long> scan(Path uploadsDir) {
+        Map<String, Long> sizes = new ConcurrentHashMap<>();
+        if (!Files.isDirectory(uploadsDir)) {
+            return sizes;
+        }
+        ForkJoinPool pool = new ForkJoinPool(convertSettings.getUploadsScanThreads());
+        try {
+            pool.invoke(new ScanAction(uploadsDir, uploadsDir, sizes));
+        } finally {
+            pool.shutdown();
+        }
+        return sizes;
+    }
+
+    private static Map<String, Long> load(Path indexFile) throws IOException {
+        Map<String, Long> sizes = new HashMap<>();
+        for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+            String[] values = line.split(SEPARATOR, 2);
+            if (values.length == 2) {
+                sizes.put(values[1], Long.parseLong(values[0]));
+            }
+        }
+        return sizes;
+    }
+
+    private static void save(Path indexFile, Map<String, Long> sizes) {
+        try {
+            Files.createDirectories(indexFile.getParent());
+            Path tempFile = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+                    writer.write(entry.getValue() + SEPARATOR + entry.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Could not save uploads index {}", indexFile, e);
+        }
+    }
+
+    private static String key(Path uploadsDir, Path path) {
+        return uploadsDir.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static class SourceIndex {
+        private final Path uploadsDir;
+        private final Map<String, Long> sizes;
+
+        private SourceIndex(Path uploadsDir, Map<String, Long> sizes) {
+            this.uploadsDir = uploadsDir;
+            this.sizes = sizes;
+        }
+    }
+
+    private static class ScanAction extends RecursiveAction {
+        private final Path uploadsDir;
+        private final Path directory;
+        private final Map<String, Long> sizes;
+
+        private ScanAction(Path uploadsDir, Path directory, Map<String, Long> sizes) {
+            this.uploadsDir = uploadsDir;
+            this.directory = directory;
+            this.sizes = sizes;
+        }
+
+        @Override
+        protected void compute() {
+            List<ScanAction> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    if (attributes.isDirectory()) {
+                        subdirectories.add(new ScanAction(uploadsDir, entry, sizes));
+                    } else {
+                        sizes.put(key(uploadsDir, entry), attributes.size());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not scan " + directory, e);
+            }
+            invokeAll(subdirectories);
+        }
+    }
+}
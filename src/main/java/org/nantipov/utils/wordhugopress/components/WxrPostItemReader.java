@@ -0,0 +1,336 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSetMultimap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.nantipov.utils.wordhugopress.domain.Watermark;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads posts from a WordPress export (WXR) file with StAX, without a database.
+ * <p>
+ * Only one item of the export is held in memory at a time. The file is read in up to three passes: the first one
+ * collects display names of authors and attachments used as post thumbnails, the second one metadata of those
+ * attachments (skipped when no post has a thumbnail), the last one reads the posts. Memory depends on the number
+ * of authors and thumbnails, not on the size of the export.
+ * <p>
+ * On restart the export is read again and the posts read before are skipped.
+ */
+@Slf4j
+public class WxrPostItemReader extends AbstractItemCountingItemStreamItemReader<Post> {
+
+    private static final String NAMESPACE_WP = "http://wordpress.org/export/";
+    private static final String NAMESPACE_DC = "http://purl.org/dc/elements/1.1/";
+    private static final String NAMESPACE_CONTENT = "http://purl.org/rss/1.0/modules/content/";
+    private static final String TOTAL_ENTITY_SIZE_LIMIT =
+            "http://www.oracle.com/xml/jaxp/properties/totalEntitySizeLimit";
+
+    private final Path exportFile;
+    private final String sourceName;
+    private final long afterId;
+    private final long maxId;
+    private final Watermark watermark;
+    private final Counter rows;
+    private final XMLInputFactory xmlInputFactory;
+
+    private final Map<String, String> authors = new HashMap<>();
+    private final Set<Long> thumbnailIds = new HashSet<>();
+    private final Map<Long, String> thumbnails = new HashMap<>();
+    private InputStream input;
+    private XMLStreamReader xml;
+
+    public WxrPostItemReader(Path exportFile, String sourceName, long afterId, long maxId,
+                             @Nullable Watermark watermark, MeterRegistry meterRegistry) {
+        this.exportFile = exportFile;
+        this.sourceName = sourceName;
+        this.afterId = afterId;
+        this.maxId = maxId;
+        this.watermark = watermark;
+        this.rows = Counter.builder("wordhugopress.read.rows")
+                           .tag("source", sourceName)
+                           .tag("query", "wxr")
+                           .register(meterRegistry);
+        this.xmlInputFactory = XMLInputFactory.newFactory();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try {
+            // large exports exceed the default limit of the JDK parser on the accumulated size of entities
+            xmlInputFactory.setProperty(TOTAL_ENTITY_SIZE_LIMIT, 0);
+        } catch (IllegalArgumentException e) {
+            // not the JDK parser
+        }
+        setName("wxr");
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        authors.clear();
+        thumbnailIds.clear();
+        thumbnails.clear();
+        scan(Pass.INDEX);
+        if (!thumbnailIds.isEmpty()) {
+            scan(Pass.THUMBNAILS);
+        }
+        log.info("Export of source {} is indexed: {} authors, {} thumbnails",
+                 sourceName, authors.size(), thumbnails.size());
+        input = ExportFiles.open(exportFile);
+        xml = xmlInputFactory.createXMLStreamReader(input);
+    }
+
+    @Override
+    protected Post doRead() throws Exception {
+        Item item;
+        while ((item = nextItem(xml, Pass.POSTS)) != null) {
+            if (ExportFiles.POST_TYPE_POST.equals(item.postType)) {
+                Post post = post(item);
+                if (ExportFiles.isSelected(post, afterId, maxId, watermark)) {
+                    rows.increment();
+                    return post;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        try {
+            if (xml != null) {
+                xml.close();
+            }
+        } finally {
+            xml = null;
+            if (input != null) {
+                input.close();
+                input = null;
+            }
+        }
+    }
+
+    private void scan(Pass pass) throws IOException, XMLStreamException {
+        try (InputStream in = ExportFiles.open(exportFile)) {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+            try {
+                Item item;
+                while ((item = nextItem(reader, pass)) != null) {
+                    if (pass == Pass.INDEX && item.thumbnailId != null &&
+                        ExportFiles.POST_TYPE_POST.equals(item.postType)) {
+                        thumbnailIds.add(item.thumbnailId);
+                    } else if (pass == Pass.THUMBNAILS && item.attachmentMetadata != null &&
+                               thumbnailIds.contains(item.id)) {
+                        thumbnails.put(item.id, item.attachmentMetadata);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private Post post(Item item) {
+        Post post = new Post();
+        post.setId(item.id);
+        post.setSourceName(sourceName);
+        post.setAuthor(authors.getOrDefault(item.creator, item.creator));
+        post.setCreatedAt(ExportFiles.timestamp(item.date));
+        Timestamp modifiedAt = ExportFiles.timestamp(item.modified);
+        post.setModifiedAt(modifiedAt != null ? modifiedAt : post.getCreatedAt());
+        post.setTitle(Strings.nullToEmpty(item.title));
+        post.setContent(Strings.nullToEmpty(item.content));
+        post.setDraft(ExportFiles.isDraft(item.status));
+        post.setThumbnailRawData(item.thumbnailId != null ? thumbnails.get(item.thumbnailId) : null);
+        post.setTaxonomy(item.taxonomy.build());
+        return post;
+    }
+
+    /**
+     * Moves to the next {@code item} of the channel and reads it, authors met on the way are collected in the
+     * {@code INDEX} pass.
+     *
+     * @return the item or {@code null} at the end of the export
+     */
+    @Nullable
+    private Item nextItem(XMLStreamReader reader, Pass pass) throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String name = name(reader);
+            if (name.equals(":item")) {
+                return item(reader, pass);
+            }
+            if (name.equals("wp:author") && pass == Pass.INDEX) {
+                author(reader);
+            }
+        }
+        return null;
+    }
+
+    private void author(XMLStreamReader reader) throws XMLStreamException {
+        String login = null;
+        String displayName = null;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (name(reader)) {
+                case "wp:author_login":
+                    login = reader.getElementText();
+                    break;
+                case "wp:author_display_name":
+                    displayName = reader.getElementText();
+                    break;
+                default:
+                    skip(reader);
+                    break;
+            }
+        }
+        if (login != null && !Strings.isNullOrEmpty(displayName)) {
+            authors.put(login, displayName);
+        }
+    }
+
+    private Item item(XMLStreamReader reader, Pass pass) throws XMLStreamException {
+        Item item = new Item();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (name(reader)) {
+                case ":title":
+                    item.title = reader.getElementText();
+                    break;
+                case "dc:creator":
+                    item.creator = reader.getElementText();
+                    break;
+                case "content:encoded":
+                    if (pass == Pass.POSTS) {
+                        item.content = reader.getElementText();
+                    } else {
+                        skip(reader);
+                    }
+                    break;
+                case "wp:post_id":
+                    item.id = Long.parseLong(reader.getElementText().trim());
+                    break;
+                case "wp:post_date":
+                    item.date = reader.getElementText();
+                    break;
+                case "wp:post_modified":
+                    item.modified = reader.getElementText();
+                    break;
+                case "wp:status":
+                    item.status = reader.getElementText();
+                    break;
+                case "wp:post_type":
+                    item.postType = reader.getElementText();
+                    break;
+                case ":category":
+                    String domain = reader.getAttributeValue(null, "domain");
+                    String term = reader.getElementText();
+                    if (pass == Pass.POSTS && domain != null && !term.isEmpty()) {
+                        item.taxonomy.put(domain, term);
+                    }
+                    break;
+                case "wp:postmeta":
+                    postMeta(reader, item, pass);
+                    break;
+                default:
+                    skip(reader);
+                    break;
+            }
+        }
+        return item;
+    }
+
+    private void postMeta(XMLStreamReader reader, Item item, Pass pass) throws XMLStreamException {
+        String key = null;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = name(reader);
+            if (name.equals("wp:meta_key")) {
+                key = reader.getElementText();
+            } else if (name.equals("wp:meta_value") && ExportFiles.META_THUMBNAIL_ID.equals(key)) {
+                try {
+                    item.thumbnailId = Long.parseLong(reader.getElementText().trim());
+                } catch (NumberFormatException e) {
+                    // no thumbnail
+                }
+            } else if (name.equals("wp:meta_value") && ExportFiles.META_ATTACHMENT_METADATA.equals(key) &&
+                       pass == Pass.THUMBNAILS) {
+                item.attachmentMetadata = reader.getElementText();
+            } else {
+                skip(reader);
+            }
+        }
+    }
+
+    /**
+     * @return local name of the current element prefixed with {@code wp}, {@code dc} or {@code content}
+     * by its namespace, e.g. {@code wp:post_id} or {@code :title} for no namespace
+     */
+    private static String name(XMLStreamReader reader) {
+        String namespace = Strings.nullToEmpty(reader.getNamespaceURI());
+        String prefix;
+        if (namespace.isEmpty()) {
+            prefix = "";
+        } else if (namespace.startsWith(NAMESPACE_WP)) {
+            prefix = "wp";
+        } else if (namespace.equals(NAMESPACE_DC)) {
+            prefix = "dc";
+        } else if (namespace.equals(NAMESPACE_CONTENT)) {
+            prefix = "content";
+        } else {
+            prefix = namespace;
+        }
+        return prefix + ":" + reader.getLocalName();
+    }
+
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private enum Pass {
+        /**
+         * Authors and thumbnails of posts, content is skipped.
+         */
+        INDEX,
+        /**
+         * Metadata of attachments, content is skipped.
+         */
+        THUMBNAILS,
+        POSTS
+    }
+
+    private static class Item {
+        private final ImmutableSetMultimap.Builder<String, String> taxonomy = ImmutableSetMultimap.builder();
+        private long id;
+        private String title;
+        private String creator;
+        private String content;
+        private String date;
+        private String modified;
+        private String status;
+        private String postType;
+        private Long thumbnailId;
+        private String attachmentMetadata;
+    }
+}
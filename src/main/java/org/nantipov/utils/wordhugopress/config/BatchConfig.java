@@ -0,0 +1,21 @@
+package org.nantipov.utils.wordhugopress.config;
+
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@Configuration
+public class BatchConfig {
+
+    /**
+     * Chunks and the job repository without JDBC transactions, for one-shot runs with the repository in memory:
+     * pages and media files are not transactional anyway. Replaces the transaction manager of Spring Boot.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "app.convert", name = "resourceless-transactions", havingValue = "true")
+    public PlatformTransactionManager transactionManager() {
+        return new ResourcelessTransactionManager();
+    }
+}
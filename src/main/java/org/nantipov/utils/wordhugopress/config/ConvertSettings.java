@@ -0,0 +1,63 @@
+package org.nantipov.utils.wordhugopress.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.convert")
+public class ConvertSettings {
+
+    private boolean partitioned = false;
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+    private int partitionsPerSource = 4;
+    private int readerPageSize = 100;
+    private int chunkSize = 10;
+    private boolean adaptiveChunks = true;
+    private int chunkMaxSize = 200;
+    private long chunkMaxBytes = 32 * 1024 * 1024;
+    private Duration chunkMaxTime = Duration.ofSeconds(2);
+    private boolean concurrentSources = false;
+    private int sourceQueueCapacity = 100;
+    private boolean incremental = false;
+    private Path stateDir = Paths.get("output/.wordhugopress");
+    private boolean resourcelessTransactions = false;
+    private ContentConverter contentConverter = ContentConverter.JSOUP;
+    private Renderer renderer = Renderer.FREEMARKER;
+    private String template = "empty-post.ftl";
+    private boolean uploadsIndex = false;
+    private boolean uploadsIndexRescan = false;
+    private int uploadsScanThreads = 16;
+    private long slugCacheSize = 10_000;
+    private int coverWidth = 1024;
+    private boolean permalinkIndex = true;
+
+    public enum ContentConverter {
+        /**
+         * Parses the whole post into a {@code Jsoup} document and converts it.
+         */
+        JSOUP,
+        /**
+         * Converts the post in a single pass over its HTML, without building a document. Posts which are not
+         * well-formed are converted as with {@link #JSOUP}.
+         */
+        STREAMING
+    }
+
+    public enum Renderer {
+        /**
+         * Renders the FreeMarker {@code template}.
+         */
+        FREEMARKER,
+        /**
+         * Writes the front matter and content directly, the same page as {@code empty-post.ftl} renders,
+         * the {@code template} is ignored.
+         */
+        FRONT_MATTER
+    }
+}
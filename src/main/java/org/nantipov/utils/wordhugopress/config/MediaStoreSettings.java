@@ -0,0 +1,23 @@
+package org.nantipov.utils.wordhugopress.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.media-store")
+public class MediaStoreSettings {
+
+    private boolean enabled = false;
+    private Path dir = Paths.get("output/media-store");
+    private LinkMode linkMode = LinkMode.HARD;
+
+    public enum LinkMode {
+        HARD,
+        SYMBOLIC
+    }
+}
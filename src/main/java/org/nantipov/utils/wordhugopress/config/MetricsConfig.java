@@ -0,0 +1,23 @@
+package org.nantipov.utils.wordhugopress.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean(destroyMethod = "close")
+    public MeterRegistry meterRegistry(MetricsSettings metricsSettings) {
+        MeterRegistry meterRegistry = metricsSettings.getFormat() == MetricsSettings.Format.PROMETHEUS
+                                      ? new PrometheusMeterRegistry(PrometheusConfig.DEFAULT)
+                                      : new SimpleMeterRegistry();
+        // Spring Batch publishes its step, chunk and item metrics to the global registry
+        Metrics.addRegistry(meterRegistry);
+        return meterRegistry;
+    }
+}
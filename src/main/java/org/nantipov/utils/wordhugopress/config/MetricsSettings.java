@@ -0,0 +1,29 @@
+package org.nantipov.utils.wordhugopress.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.metrics")
+public class MetricsSettings {
+
+    private boolean enabled = false;
+    private Format format = Format.JSON;
+    private Path file = Paths.get("output/metrics.json");
+
+    public enum Format {
+        /**
+         * Every meter with its tags and measurements.
+         */
+        JSON,
+        /**
+         * Prometheus text exposition format.
+         */
+        PROMETHEUS
+    }
+}
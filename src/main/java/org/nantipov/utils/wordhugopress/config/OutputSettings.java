@@ -0,0 +1,43 @@
+package org.nantipov.utils.wordhugopress.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.output")
+public class OutputSettings {
+
+    private Mode mode = Mode.DIRECTORY;
+    /**
+     * {@code output/content.tar} or {@code output/content.zip} by the mode, if not set.
+     */
+    private Path archive;
+    private int archiveBufferSize = 1024 * 1024;
+
+    public Path getArchive() {
+        if (archive != null) {
+            return archive;
+        }
+        return Paths.get("output/content." + (mode == Mode.ZIP ? "zip" : "tar"));
+    }
+
+    public enum Mode {
+        /**
+         * Page bundles are written into {@code hugo-site-content-items-dir}.
+         */
+        DIRECTORY,
+        /**
+         * Page bundles are streamed into one tar archive.
+         */
+        TAR,
+        /**
+         * Page bundles are streamed into one zip archive.
+         */
+        ZIP
+    }
+}
@@ -1,11 +1,13 @@
 package org.nantipov.utils.wordhugopress.config;
 
 import lombok.Data;
+import org.nantipov.utils.wordhugopress.domain.LocalCopyMode;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -20,12 +22,96 @@ public class SourcesSettings {
 
     @Data
     public static class Source {
+        private SourceType type = SourceType.DATABASE;
+        /**
+         * WXR export or {@code mysqldump} output for the {@code WXR} and {@code SQL_DUMP} types, may be gzipped.
+         */
+        private Path exportFile;
         private Path wordpressHome;
         private String wordpressRemoteBaseUrl;
         private String wordpressTablePrefix = "wp";
         private String targetResourceSuffix;
         private DataSourceProperties database = new DataSourceProperties();
+        private ConnectionSettings connection = new ConnectionSettings();
         private List<String> tags = new ArrayList<>();
         private List<String> categories = new ArrayList<>();
+        private ReaderMode readerMode = ReaderMode.STAGED;
+        private LocalCopyMode localCopyMode = LocalCopyMode.AUTO;
+    }
+
+    @Data
+    public static class ConnectionSettings {
+        private FetchMode fetchMode = FetchMode.AUTO;
+        /**
+         * Rows fetched at once in {@code CURSOR} mode.
+         */
+        private int fetchSize = 100;
+        private int maximumPoolSize = 10;
+        private int minimumIdle = 1;
+        private boolean readOnly = true;
+        private Duration connectionTimeout = Duration.ofSeconds(30);
+        /**
+         * Timeout of reads from the database socket, none if not set; MySQL only.
+         */
+        private Duration socketTimeout;
+        /**
+         * How long the server waits for the client to take the next rows of a streamed result set, it has to cover
+         * processing of a chunk; MySQL only.
+         */
+        private Duration streamingNetTimeout = Duration.ofMinutes(10);
+        /**
+         * Compresses the traffic, for databases far away; MySQL only.
+         */
+        private boolean compression = false;
+        /**
+         * Other properties of the JDBC driver.
+         */
+        private Map<String, String> properties = new HashMap<>();
+    }
+
+    public enum SourceType {
+        /**
+         * Reads the live WordPress database configured in {@code database}.
+         */
+        DATABASE,
+        /**
+         * Reads a WordPress export ({@code Tools > Export}, WXR) from {@code exportFile}.
+         */
+        WXR,
+        /**
+         * Reads {@code INSERT} statements of a {@code mysqldump} of the WordPress database from {@code exportFile}.
+         */
+        SQL_DUMP
+    }
+
+    public enum FetchMode {
+        /**
+         * {@code STREAMING} for MySQL, {@code CURSOR} for other databases.
+         */
+        AUTO,
+        /**
+         * The driver default, MySQL reads the whole result set into memory before returning the first row.
+         */
+        BUFFERED,
+        /**
+         * Rows are streamed one by one over the connection ({@code fetchSize = Integer.MIN_VALUE} for MySQL),
+         * memory does not depend on the size of the result set.
+         */
+        STREAMING,
+        /**
+         * Rows are fetched {@code fetchSize} at a time with a server-side cursor ({@code useCursorFetch} for MySQL).
+         */
+        CURSOR
+    }
+
+    public enum ReaderMode {
+        /**
+         * Pages posts by {@code ID} and loads taxonomy and thumbnails with separate queries per page.
+         */
+        STAGED,
+        /**
+         * Reads posts joined with taxonomy and thumbnails in one query, one row per post term.
+         */
+        JOINED
     }
 }
@@ -0,0 +1,24 @@
+package org.nantipov.utils.wordhugopress.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.transfer")
+public class TransferSettings {
+
+    private int threads = 16;
+    private int perHostLimit = 4;
+    private int queueCapacity = 1000;
+    private int maxAttempts = 3;
+    private Duration initialBackoff = Duration.ofMillis(500);
+    /**
+     * Fail the step when media files could not be delivered, instead of finishing it with the exit code
+     * {@code COMPLETED WITH MEDIA FAILURES}.
+     */
+    private boolean failOnErrors = false;
+}
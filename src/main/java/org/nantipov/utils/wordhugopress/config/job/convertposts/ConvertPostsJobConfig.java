@@ -1,18 +1,36 @@
 package org.nantipov.utils.wordhugopress.config.job.convertposts;
 
+import org.nantipov.utils.wordhugopress.components.AdaptiveChunkPolicy;
+import org.nantipov.utils.wordhugopress.components.IncrementalState;
+import org.nantipov.utils.wordhugopress.components.MediaTransferEngine;
+import org.nantipov.utils.wordhugopress.components.MetricsReporter;
+import org.nantipov.utils.wordhugopress.components.OutputArchive;
+import org.nantipov.utils.wordhugopress.components.OutputManifest;
+import org.nantipov.utils.wordhugopress.components.PermalinkIndex;
+import org.nantipov.utils.wordhugopress.components.PostIdRangePartitioner;
 import org.nantipov.utils.wordhugopress.components.PostItemProcessor;
+import org.nantipov.utils.wordhugopress.components.RestartState;
+import org.nantipov.utils.wordhugopress.components.SlugService;
+import org.nantipov.utils.wordhugopress.components.UploadsIndex;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
 import org.nantipov.utils.wordhugopress.domain.Post;
+import org.nantipov.utils.wordhugopress.tools.RestartingIncrementer;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemReadListener;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.core.job.builder.JobBuilder;
-import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
 import org.springframework.batch.core.step.builder.StepBuilder;
-import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 @Configuration
@@ -20,12 +38,33 @@ public class ConvertPostsJobConfig {
 
     private static final String BEAN_CONVERT_JOB = "convertPostsJob";
     private static final String BEAN_CONVERT_STEP = BEAN_CONVERT_JOB + "_convertPostsStep";
+    private static final String BEAN_CONVERT_PARTITIONED_STEP = BEAN_CONVERT_JOB + "_convertPostsPartitionedStep";
+    private static final String BEAN_CONVERT_WORKER_STEP = BEAN_CONVERT_JOB + "_convertPostsWorkerStep";
+    private static final String BEAN_CONVERT_WORKER_EXECUTOR = BEAN_CONVERT_JOB + "_workerExecutor";
 
     @Bean(BEAN_CONVERT_JOB)
-    public Job convertPostsJob(JobRepository jobRepository, @Qualifier(BEAN_CONVERT_STEP) Step step1) {
+    public Job convertPostsJob(JobRepository jobRepository,
+                               JobExplorer jobExplorer,
+                               ConvertSettings convertSettings,
+                               IncrementalState incrementalState,
+                               UploadsIndex uploadsIndex,
+                               RestartState restartState,
+                               OutputArchive outputArchive,
+                               SlugService slugService,
+                               PermalinkIndex permalinkIndex,
+                               MetricsReporter metricsReporter,
+                               @Qualifier(BEAN_CONVERT_STEP) Step step1,
+                               @Qualifier(BEAN_CONVERT_PARTITIONED_STEP) Step partitionedStep) {
         return new JobBuilder(BEAN_CONVERT_JOB, jobRepository)
-                .incrementer(new RunIdIncrementer())
-                .start(step1)
+                .incrementer(new RestartingIncrementer(jobExplorer, jobRepository, BEAN_CONVERT_JOB))
+                .listener(incrementalState)
+                .listener(restartState)
+                .listener(outputArchive)
+                .listener(slugService)
+                .listener(permalinkIndex)
+                .listener(uploadsIndex)
+                .listener(metricsReporter)
+                .start(convertSettings.isPartitioned() ? partitionedStep : step1)
                 .build();
     }
 
@@ -33,15 +72,72 @@ public class ConvertPostsJobConfig {
     public Step convertStepJob(
             JobRepository jobRepository,
             PlatformTransactionManager transactionManager,
-            @Qualifier(ConvertPostsReaderConfig.BEAN_NAME) ItemReader<Post> reader,
+            @Qualifier(ConvertPostsReaderConfig.BEAN_NAME) ItemStreamReader<Post> reader,
             @Qualifier(ConvertPostsWriterConfig.BEAN_NAME) ItemWriter<Post> writer,
-            PostItemProcessor processor
+            PostItemProcessor processor,
+            AdaptiveChunkPolicy chunkPolicy,
+            MediaTransferEngine mediaTransferEngine,
+            OutputManifest outputManifest,
+            ObjectProvider<ChunkListener> chunkListeners
     ) {
-        return new StepBuilder(BEAN_CONVERT_STEP, jobRepository)
-                .<Post, Post>chunk(10, transactionManager)
+        SimpleStepBuilder<Post, Post> builder = new StepBuilder(BEAN_CONVERT_STEP, jobRepository)
+                .<Post, Post>chunk(chunkPolicy, transactionManager)
                 .reader(reader)
+                .listener((ItemReadListener<Post>) chunkPolicy)
                 .processor(processor)
-                .writer(writer)
+                .writer(writer);
+        chunkListeners.orderedStream().forEach(builder::listener);
+        return builder.listener(mediaTransferEngine)
+                      .listener(outputManifest)
+                      .build();
+    }
+
+    @Bean(BEAN_CONVERT_PARTITIONED_STEP)
+    public Step convertPartitionedStep(
+            JobRepository jobRepository,
+            ConvertSettings convertSettings,
+            PostIdRangePartitioner partitioner,
+            @Qualifier(BEAN_CONVERT_WORKER_STEP) Step workerStep,
+            @Qualifier(BEAN_CONVERT_WORKER_EXECUTOR) ThreadPoolTaskExecutor workerExecutor,
+            MediaTransferEngine mediaTransferEngine,
+            OutputManifest outputManifest
+    ) {
+        return new StepBuilder(BEAN_CONVERT_PARTITIONED_STEP, jobRepository)
+                .partitioner(BEAN_CONVERT_WORKER_STEP, partitioner)
+                .step(workerStep)
+                .gridSize(convertSettings.getPartitionsPerSource())
+                .taskExecutor(workerExecutor)
+                .listener(mediaTransferEngine)
+                .listener(outputManifest)
                 .build();
     }
+
+    @Bean(BEAN_CONVERT_WORKER_STEP)
+    public Step convertWorkerStep(
+            JobRepository jobRepository,
+            PlatformTransactionManager transactionManager,
+            @Qualifier(ConvertPostsReaderConfig.BEAN_NAME_PARTITION) ItemStreamReader<Post> reader,
+            @Qualifier(ConvertPostsWriterConfig.BEAN_NAME) ItemWriter<Post> writer,
+            PostItemProcessor processor,
+            AdaptiveChunkPolicy chunkPolicy,
+            ObjectProvider<ChunkListener> chunkListeners
+    ) {
+        SimpleStepBuilder<Post, Post> builder = new StepBuilder(BEAN_CONVERT_WORKER_STEP, jobRepository)
+                .<Post, Post>chunk(chunkPolicy, transactionManager)
+                .reader(reader)
+                .listener((ItemReadListener<Post>) chunkPolicy)
+                .processor(processor)
+                .writer(writer);
+        chunkListeners.orderedStream().forEach(builder::listener);
+        return builder.build();
+    }
+
+    @Bean(BEAN_CONVERT_WORKER_EXECUTOR)
+    public ThreadPoolTaskExecutor workerExecutor(ConvertSettings convertSettings) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(convertSettings.getWorkerThreads());
+        executor.setMaxPoolSize(convertSettings.getWorkerThreads());
+        executor.setThreadNamePrefix("convert-worker-");
+        return executor;
+    }
 }
@@ -1,26 +1,40 @@
 package org.nantipov.utils.wordhugopress.config.job.convertposts;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
-import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
-import com.google.common.collect.Multimap;
-import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.nantipov.utils.wordhugopress.components.IncrementalState;
+import org.nantipov.utils.wordhugopress.components.PostIdRangePartitioner;
+import org.nantipov.utils.wordhugopress.components.SourceDataSources;
+import org.nantipov.utils.wordhugopress.components.SqlDumpPostItemReader;
+import org.nantipov.utils.wordhugopress.components.StagedPostItemReader;
+import org.nantipov.utils.wordhugopress.components.WxrPostItemReader;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
 import org.nantipov.utils.wordhugopress.config.SourcesSettings;
 import org.nantipov.utils.wordhugopress.domain.Post;
+import org.nantipov.utils.wordhugopress.domain.Watermark;
 import org.nantipov.utils.wordhugopress.tools.CompositeItemReader;
+import org.nantipov.utils.wordhugopress.tools.ConcurrentCompositeItemReader;
+import org.nantipov.utils.wordhugopress.tools.KeyTrackingItemReader;
 import org.nantipov.utils.wordhugopress.tools.PartitionItemReader;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.batch.item.database.builder.JdbcCursorItemReaderBuilder;
-import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.RowMapper;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
-import javax.sql.DataSource;
+import java.util.stream.Collector;
 
 @Configuration
 public class ConvertPostsReaderConfig {
@@ -28,55 +42,128 @@ public class ConvertPostsReaderConfig {
     private static final Set<String> DRAFT_STATUSES = ImmutableSet.of("draft", "auto-draft");
 
     static final String BEAN_NAME = "postsReader";
+    static final String BEAN_NAME_PARTITION = "postsPartitionReader";
 
     private final SourcesSettings sourcesSettings;
+    private final ConvertSettings convertSettings;
+    private final SourceDataSources sourceDataSources;
+    private final IncrementalState incrementalState;
+    private final MeterRegistry meterRegistry;
 
-    public ConvertPostsReaderConfig(SourcesSettings sourcesSettings) {
+    public ConvertPostsReaderConfig(SourcesSettings sourcesSettings, ConvertSettings convertSettings,
+                                    SourceDataSources sourceDataSources, IncrementalState incrementalState,
+                                    MeterRegistry meterRegistry) {
         this.sourcesSettings = sourcesSettings;
+        this.convertSettings = convertSettings;
+        this.sourceDataSources = sourceDataSources;
+        this.incrementalState = incrementalState;
+        this.meterRegistry = meterRegistry;
     }
 
     @Bean(BEAN_NAME)
-    public ItemReader<Post> reader() {
-        return CompositeItemReader.of(
-                sourcesSettings.getSources()
-                               .entrySet()
-                               .stream()
-                               .map(entry -> reader(entry.getKey(), entry.getValue()))
-                               .collect(Collectors.toList())
+    public ItemStreamReader<Post> reader() {
+        Map<String, ItemReader<Post>> readers = new LinkedHashMap<>();
+        sourcesSettings.getSources()
+                       .forEach((sourceName, source) -> readers.put(
+                               sourceName, sourceReader(sourceName, source, -1, Long.MAX_VALUE)
+                       ));
+        return convertSettings.isConcurrentSources()
+               ? ConcurrentCompositeItemReader.of(BEAN_NAME, readers, convertSettings.getSourceQueueCapacity())
+               : CompositeItemReader.of(BEAN_NAME, readers);
+    }
+
+    @Bean(BEAN_NAME_PARTITION)
+    @StepScope
+    public ItemStreamReader<Post> partitionReader(
+            @Value("#{stepExecutionContext['" + PostIdRangePartitioner.KEY_SOURCE_NAME + "']}") String sourceName,
+            @Value("#{stepExecutionContext['" + PostIdRangePartitioner.KEY_LAST_ID + "']}") long lastId,
+            @Value("#{stepExecutionContext['" + PostIdRangePartitioner.KEY_MAX_ID + "']}") long maxId
+    ) {
+        return sourceReader(sourceName, sourcesSettings.getSources().get(sourceName), lastId, maxId);
+    }
+
+    private ItemStreamReader<Post> sourceReader(String sourceName, SourcesSettings.Source source,
+                                                long afterId, long maxId) {
+        Watermark watermark = incrementalState.getWatermark(sourceName).orElse(null);
+        switch (source.getType()) {
+            case WXR:
+                return new WxrPostItemReader(source.getExportFile(), sourceName, afterId, maxId, watermark,
+                                             meterRegistry);
+            case SQL_DUMP:
+                return new SqlDumpPostItemReader(source.getExportFile(), source.getWordpressTablePrefix(), sourceName,
+                                                 afterId, maxId, watermark, meterRegistry);
+            default:
+                return keyTrackingReader(sourceName, source, afterId, maxId);
+        }
+    }
+
+    /**
+     * Reader of the source which remembers the last read post, on restart it starts after that post.
+     */
+    private ItemStreamReader<Post> keyTrackingReader(String sourceName, SourcesSettings.Source source,
+                                                     long afterId, long maxId) {
+        return new KeyTrackingItemReader<>(
+                lastId -> reader(sourceName, source, lastId, maxId),
+                afterId,
+                Post::getId,
+                PostIdRangePartitioner.KEY_LAST_ID
         );
     }
 
-    private ItemReader<Post> reader(String sourceName, SourcesSettings.Source source) {
+    private ItemReader<Post> reader(String sourceName, SourcesSettings.Source source, long afterId, long maxId) {
+        Watermark watermark = incrementalState.getWatermark(sourceName).orElse(null);
+        if (source.getReaderMode() == SourcesSettings.ReaderMode.JOINED) {
+            return joinedReader(sourceName, source, afterId, maxId, watermark);
+        }
+        return new StagedPostItemReader(
+                sourceDataSources.jdbcTemplate(sourceName),
+                source.getWordpressTablePrefix(),
+                (rs, rowNum) -> post(rs, sourceName),
+                convertSettings.getReaderPageSize(),
+                afterId,
+                maxId,
+                watermark,
+                meterRegistry,
+                sourceName
+        );
+    }
+
+    private ItemReader<Post> joinedReader(String sourceName, SourcesSettings.Source source,
+                                          long afterId, long maxId, Watermark watermark) {
+        Counter rows = Counter.builder("wordhugopress.read.rows")
+                              .tag("source", sourceName)
+                              .tag("query", "joined")
+                              .register(meterRegistry);
         return new PartitionItemReader<>(
                 new JdbcCursorItemReaderBuilder<Post>()
                         .name("readerDatabase" + sourceName)
-                        .dataSource(dataSource(source.getDatabase()))
-                        .sql(getSQLQueryPosts(source.getWordpressTablePrefix()))
-                        .rowMapper((rs, rowNum) -> post(rs, sourceName))
+                        .dataSource(sourceDataSources.get(sourceName))
+                        .sql(getSQLQueryJoinedPosts(source.getWordpressTablePrefix(), watermark != null))
+                        .queryArguments(watermark != null
+                                        ? new Object[]{afterId, maxId, watermark.getModifiedAt(),
+                                                       watermark.getModifiedAt(), watermark.getId()}
+                                        : new Object[]{afterId, maxId})
+                        .fetchSize(sourceDataSources.getFetchSize(sourceName))
+                        .verifyCursorPosition(!sourceDataSources.isStreaming(sourceName))
+                        .saveState(false) // position is kept by the key tracking reader
+                        .rowMapper(new JoinedRowMapper(sourceName, rows))
                         .build(),
-                (p1, p2) -> p2.getId() == p1.getId(),
-                posts -> {
-                    Post firstPost = posts.iterator().next();
-                    if (posts.size() > 1) {
-                        Multimap<String, String> taxonomy =
-                                posts.stream()
-                                     .map(Post::getTaxonomy)
-                                     .reduce((m1, m2) ->
-                                                     ImmutableSetMultimap.<String, String>builder()
-                                                             .putAll(m1)
-                                                             .putAll(m2)
-                                                             .build()
-                                     )
-                                     .orElseGet(ImmutableMultimap::of);
-                        firstPost.setTaxonomy(taxonomy);
-                    }
-                    return firstPost;
-                },
+                Post::getId,
+                joinedPostCollector(),
                 -1
         );
     }
 
-    private String getSQLQueryPosts(String tablePrefix) {
+    /**
+     * Collects joined rows of one post: the first row is the post, only terms are taken from the others.
+     */
+    @VisibleForTesting
+    static Collector<Post, ?, Post> joinedPostCollector() {
+        return Collector.of(JoinedPostBuilder::new, JoinedPostBuilder::add, JoinedPostBuilder::merge,
+                            JoinedPostBuilder::build);
+    }
+
+    private String getSQLQueryJoinedPosts(String tablePrefix, boolean isAfterWatermark) {
         return "SELECT\n" +
                "    p.post_date, p.ID, p.post_modified, p.post_title, p.post_content, p.post_status,\n" +
                "    u.display_name user_displayname,\n" +
@@ -104,16 +191,11 @@ public class ConvertPostsReaderConfig {
                "\n" +
                "WHERE\n" +
                "    p.post_type = 'post'\n" +
+               "    AND p.ID > ? AND p.ID <= ?\n" +
+               (isAfterWatermark ? "    AND (p.post_modified > ? OR p.post_modified = ? AND p.ID > ?)\n" : "") +
                "ORDER BY p.ID";
     }
 
-    private DataSource dataSource(DataSourceProperties properties) {
-        return properties.initializeDataSourceBuilder()
-                         .driverClassName("com.mysql.cj.jdbc.Driver")
-                         .type(HikariDataSource.class)
-                         .build();
-    }
-
     private Post post(ResultSet rs, String sourceName) throws SQLException {
         Post post = new Post();
         post.setAuthor(rs.getString("user_displayname"));
@@ -123,13 +205,68 @@ public class ConvertPostsReaderConfig {
         post.setTitle(rs.getString("post_title"));
         post.setContent(rs.getString("post_content"));
         post.setSourceName(sourceName);
-        if (rs.getString("taxonomy") != null && rs.getString("term_value") != null) {
-            post.setTaxonomy(ImmutableSetMultimap.of(rs.getString("taxonomy"), rs.getString("term_value")));
-        } else {
-            post.setTaxonomy(ImmutableMultimap.of());
-        }
-        post.setThumbnailRawData(rs.getString("thumbnail_data"));
         post.setDraft(DRAFT_STATUSES.contains(Strings.nullToEmpty(rs.getString("post_status")).toLowerCase()));
         return post;
     }
+
+    /**
+     * Maps rows of the joined query. Rows repeating the previous post carry only its term, so content of a post
+     * is not decoded again for every term.
+     */
+    private class JoinedRowMapper implements RowMapper<Post> {
+        private final String sourceName;
+        private final Counter rows;
+        private long previousId = Long.MIN_VALUE;
+
+        private JoinedRowMapper(String sourceName, Counter rows) {
+            this.sourceName = sourceName;
+            this.rows = rows;
+        }
+
+        @Override
+        public Post mapRow(ResultSet rs, int rowNum) throws SQLException {
+            rows.increment();
+            long id = rs.getLong("ID");
+            Post post;
+            if (id == previousId) {
+                post = new Post();
+                post.setId(id);
+            } else {
+                post = post(rs, sourceName);
+                post.setThumbnailRawData(rs.getString("thumbnail_data"));
+                previousId = id;
+            }
+            String taxonomy = rs.getString("taxonomy");
+            String termValue = rs.getString("term_value");
+            post.setTaxonomy(taxonomy != null && termValue != null
+                             ? ImmutableSetMultimap.of(taxonomy, termValue)
+                             : ImmutableSetMultimap.of());
+            return post;
+        }
+    }
+
+    private static class JoinedPostBuilder {
+        private final ImmutableSetMultimap.Builder<String, String> taxonomy = ImmutableSetMultimap.builder();
+        private Post post;
+
+        private void add(Post row) {
+            if (post == null) {
+                post = row;
+            }
+            taxonomy.putAll(row.getTaxonomy());
+        }
+
+        private JoinedPostBuilder merge(JoinedPostBuilder other) {
+            if (other.post != null) {
+                add(other.post);
+                taxonomy.putAll(other.taxonomy.build());
+            }
+            return this;
+        }
+
+        private Post build() {
+            post.setTaxonomy(taxonomy.build());
+            return post;
+        }
+    }
 }
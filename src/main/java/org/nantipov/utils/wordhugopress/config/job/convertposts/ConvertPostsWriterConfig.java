@@ -1,11 +1,17 @@
 package org.nantipov.utils.wordhugopress.config.job.convertposts;
 
+import org.nantipov.utils.wordhugopress.components.FreemarkerPostRenderer;
+import org.nantipov.utils.wordhugopress.components.FrontMatterPostRenderer;
 import org.nantipov.utils.wordhugopress.components.PostItemWriter;
+import org.nantipov.utils.wordhugopress.components.PostRenderer;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
 import org.nantipov.utils.wordhugopress.domain.Post;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.IOException;
+
 @Configuration
 public class ConvertPostsWriterConfig {
 
@@ -15,4 +21,13 @@ public class ConvertPostsWriterConfig {
     public ItemWriter<Post> writer(PostItemWriter postItemWriter) {
         return postItemWriter;
     }
+
+    @Bean
+    public PostRenderer postRenderer(ConvertSettings convertSettings,
+                                     freemarker.template.Configuration freemarkerConfiguration) throws IOException {
+        if (convertSettings.getRenderer() == ConvertSettings.Renderer.FREEMARKER) {
+            return new FreemarkerPostRenderer(freemarkerConfiguration.getTemplate(convertSettings.getTemplate()));
+        }
+        return new FrontMatterPostRenderer();
+    }
 }
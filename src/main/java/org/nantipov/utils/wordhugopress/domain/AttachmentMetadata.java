@@ -0,0 +1,68 @@
+package org.nantipov.utils.wordhugopress.domain;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Image attachment as described by {@code _wp_attachment_metadata}: the original file and its resized variants.
+ */
+@Data
+public class AttachmentMetadata {
+    /**
+     * Path of the original image relative to {@code wp-content/uploads}.
+     */
+    private final String file;
+    private final int width;
+    private final int height;
+    private final List<Variant> variants;
+
+    /**
+     * Chooses the smallest image at least {@code targetWidth} wide, or the widest one if none is.
+     *
+     * @param targetWidth wanted width, {@code 0} or less chooses the original
+     * @return path of the chosen image relative to {@code wp-content/uploads}
+     */
+    public Optional<String> bestFit(int targetWidth) {
+        if (file == null || file.isEmpty()) {
+            return Optional.empty();
+        }
+        if (targetWidth <= 0) {
+            return Optional.of(file);
+        }
+        String bestFile = file;
+        int bestWidth = width > 0 ? width : Integer.MAX_VALUE; // an original of unknown size is assumed to fit
+        for (Variant variant : variants) {
+            if (variant.getFile() == null || variant.getFile().isEmpty() || variant.getWidth() <= 0) {
+                continue;
+            }
+            boolean fits = variant.getWidth() >= targetWidth;
+            boolean bestFits = bestWidth >= targetWidth;
+            if (fits ? !bestFits || variant.getWidth() < bestWidth : !bestFits && variant.getWidth() > bestWidth) {
+                bestFile = variant.getFile();
+                bestWidth = variant.getWidth();
+            }
+        }
+        if (bestFile == file) {
+            return Optional.of(file);
+        }
+        // variants are stored next to the original and named without its directory
+        int slashIndex = file.lastIndexOf('/');
+        return Optional.of(slashIndex < 0 ? bestFile : file.substring(0, slashIndex + 1) + bestFile);
+    }
+
+    @Data
+    public static class Variant {
+        /**
+         * Size name, e.g. {@code thumbnail} or {@code medium_large}.
+         */
+        private final String name;
+        /**
+         * File name, in the directory of the original.
+         */
+        private final String file;
+        private final int width;
+        private final int height;
+    }
+}
@@ -0,0 +1,29 @@
+package org.nantipov.utils.wordhugopress.domain;
+
+/**
+ * How a resource which is available as a local file is put into the target directory.
+ */
+public enum LocalCopyMode {
+    /**
+     * Copy-on-write clone where the file system supports it, channel transfer otherwise, as {@link #REFLINK}.
+     */
+    AUTO,
+    /**
+     * Copy-on-write clone, channel transfer when cloning is not supported. Spawns {@code cp --reflink=always}
+     * for every file, as long as {@code cp} is found and cloning between the two file systems succeeds.
+     */
+    REFLINK,
+    /**
+     * Hard link when the source and the target are on the same file system, channel transfer otherwise. A linked
+     * file is the very same file as the source: changing one of them changes the other.
+     */
+    HARDLINK,
+    /**
+     * Channel to channel transfer ({@code FileChannel.transferTo}), bytes do not pass through the Java heap.
+     */
+    TRANSFER,
+    /**
+     * Regular stream copy, as for remote resources.
+     */
+    STREAM
+}
@@ -8,4 +8,5 @@ import java.net.URI;
 public class ResourceTransferRequest {
     private final URI from;
     private final String localFilename;
+    private final LocalCopyMode localCopyMode;
 }
@@ -0,0 +1,32 @@
+package org.nantipov.utils.wordhugopress.domain;
+
+import lombok.Data;
+
+import java.sql.Timestamp;
+
+/**
+ * High-water mark of the incremental conversion: the latest {@code post_modified} of the converted posts and the
+ * highest {@code ID} of the posts modified at that moment. Posts modified later, or at the same moment with
+ * a higher {@code ID}, are after it.
+ */
+@Data
+public class Watermark {
+    private final Timestamp modifiedAt;
+    private final long id;
+
+    /**
+     * @return {@code true} if the post is after the watermark, i.e. has to be converted
+     */
+    public boolean isBefore(Post post) {
+        return post.getModifiedAt() != null && isBefore(post.getModifiedAt(), post.getId());
+    }
+
+    public boolean isBefore(Watermark other) {
+        return isBefore(other.modifiedAt, other.id);
+    }
+
+    private boolean isBefore(Timestamp modifiedAt, long id) {
+        int order = modifiedAt.compareTo(this.modifiedAt);
+        return order > 0 || order == 0 && id > this.id;
+    }
+}
@@ -0,0 +1,149 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracts archives written with {@code app.output.mode: tar} or {@code zip} into a directory.
+ * <p>
+ * The archive is read sequentially, entries are written by a pool of threads. Entries up to 8 MiB are read into
+ * memory and handed to the pool, which holds a bounded number of them, larger ones are written by the reading thread.
+ * Extraction stops at the first file which could not be written. Tar or zip is told by the content of the archive,
+ * whatever its name is.
+ * <p>
+ * Usage: {@code ArchiveExtractor <target dir> <archive>... [--threads=N]}
+ */
+public final class ArchiveExtractor {
+
+    private static final int MAX_BUFFERED_ENTRY_SIZE = 8 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int ZIP_SIGNATURE_LENGTH = 4;
+
+    private ArchiveExtractor() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        List<Path> paths = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else {
+                paths.add(Paths.get(arg));
+            }
+        }
+        if (paths.size() < 2) {
+            System.err.println("Usage: ArchiveExtractor <target dir> <archive>... [--threads=N]");
+            System.exit(2);
+        }
+        for (Path archive : paths.subList(1, paths.size())) {
+            long entries = extract(archive, paths.get(0), threads);
+            System.out.printf("%s: %d entries%n", archive, entries);
+        }
+    }
+
+    /**
+     * @return number of extracted files
+     */
+    public static long extract(Path archive, Path targetDir, int threads) throws IOException {
+        Path root = targetDir.toAbsolutePath().normalize();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+        List<Future<?>> writes = new ArrayList<>();
+        long files = 0;
+        try (ArchiveInputStream in = open(archive)) {
+            ArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (!in.canReadEntryData(entry)) {
+                    continue;
+                }
+                Path target = root.resolve(entry.getName()).normalize();
+                if (!target.startsWith(root)) {
+                    throw new IOException("Entry " + entry.getName() + " is outside of " + root);
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                    continue;
+                }
+                files++;
+                if (entry.getSize() >= 0 && entry.getSize() <= MAX_BUFFERED_ENTRY_SIZE) {
+                    byte[] data = in.readNBytes((int) entry.getSize());
+                    writes.add(executor.submit(() -> write(target, data)));
+                } else {
+                    Files.createDirectories(target.getParent());
+                    Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                checkFinished(writes);
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting " + archive, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not extract " + archive, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return files;
+    }
+
+    /**
+     * Forgets finished writes, the failure of one is thrown.
+     */
+    private static void checkFinished(List<Future<?>> writes) throws InterruptedException, ExecutionException {
+        Iterator<Future<?>> iterator = writes.iterator();
+        while (iterator.hasNext()) {
+            Future<?> write = iterator.next();
+            if (write.isDone()) {
+                write.get();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static ArchiveInputStream open(Path archive) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(archive), BUFFER_SIZE);
+        in.mark(ZIP_SIGNATURE_LENGTH);
+        byte[] signature = in.readNBytes(ZIP_SIGNATURE_LENGTH);
+        in.reset();
+        // "PK\3\4" starts the first entry of a zip, "PK\5\6" the directory of an empty one
+        if (signature.length == ZIP_SIGNATURE_LENGTH && signature[0] == 'P' && signature[1] == 'K' &&
+            (signature[2] == 3 && signature[3] == 4 || signature[2] == 5 && signature[3] == 6)) {
+            return new ZipArchiveInputStream(in);
+        }
+        return new TarArchiveInputStream(in);
+    }
+
+    private static void write(Path target, byte[] data) {
+        try {
+            Files.createDirectories(target.getParent());
+            Files.write(target, data);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + target, e);
+        }
+    }
+}
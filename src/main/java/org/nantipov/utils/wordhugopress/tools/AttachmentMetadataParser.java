@@ -0,0 +1,295 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import org.nantipov.utils.wordhugopress.domain.AttachmentMetadata;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads {@code _wp_attachment_metadata}, the PHP {@code serialize()} form of an array like
+ * <pre>
+ * a:5:{s:5:"width";i:1024;s:6:"height";i:768;s:4:"file";s:19:"2020/01/cover-1.jpg";
+ *      s:5:"sizes";a:1:{s:9:"thumbnail";a:4:{s:4:"file";s:19:"cover-1-150x150.jpg";s:5:"width";i:150;...}}
+ *      s:10:"image_meta";a:0:{}}
+ * </pre>
+ * <p>
+ * The value is parsed in one pass over the string. Keys are compared in place and only {@code file},
+ * {@code width}, {@code height} and {@code sizes} are materialized, everything else is skipped.
+ * String lengths are UTF-8 byte counts; a length which does not match (e.g. after the database was converted
+ * to another charset) is tolerated by looking for the closing quote.
+ */
+public final class AttachmentMetadataParser {
+
+    private static final int MAX_DEPTH = 32;
+
+    private final String data;
+    private int position;
+    // bounds of the last read string
+    private int stringStart;
+    private int stringEnd;
+
+    private AttachmentMetadataParser(String data) {
+        this.data = data;
+    }
+
+    /**
+     * @return metadata of the attachment, or {@code null} if the value is empty or malformed
+     */
+    @Nullable
+    public static AttachmentMetadata parse(@Nullable String data) {
+        if (data == null || data.isEmpty()) {
+            return null;
+        }
+        try {
+            return new AttachmentMetadataParser(data).attachment();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private AttachmentMetadata attachment() {
+        String file = null;
+        int width = 0;
+        int height = 0;
+        List<AttachmentMetadata.Variant> variants = new ArrayList<>();
+        int count = arrayStart();
+        for (int i = 0; i < count; i++) {
+            if (!key()) {
+                skipValue(0);
+            } else if (keyEquals("file")) {
+                file = stringValue();
+            } else if (keyEquals("width")) {
+                width = intValue();
+            } else if (keyEquals("height")) {
+                height = intValue();
+            } else if (keyEquals("sizes") && peek() == 'a') {
+                variants(variants);
+            } else {
+                skipValue(0);
+            }
+        }
+        expect('}');
+        return new AttachmentMetadata(file, width, height, variants);
+    }
+
+    private void variants(List<AttachmentMetadata.Variant> variants) {
+        int count = arrayStart();
+        for (int i = 0; i < count; i++) {
+            String name = key() ? data.substring(stringStart, stringEnd) : null;
+            if (peek() != 'a') {
+                skipValue(0);
+                continue;
+            }
+            String file = null;
+            int width = 0;
+            int height = 0;
+            int fields = arrayStart();
+            for (int j = 0; j < fields; j++) {
+                if (!key()) {
+                    skipValue(0);
+                } else if (keyEquals("file")) {
+                    file = stringValue();
+                } else if (keyEquals("width")) {
+                    width = intValue();
+                } else if (keyEquals("height")) {
+                    height = intValue();
+                } else {
+                    skipValue(0);
+                }
+            }
+            expect('}');
+            variants.add(new AttachmentMetadata.Variant(name, file, width, height));
+        }
+        expect('}');
+    }
+
+    /**
+     * Reads the {@code a:<count>:} header of an array and its opening brace.
+     */
+    private int arrayStart() {
+        expect('a');
+        expect(':');
+        int count = (int) number(':');
+        expect('{');
+        return count;
+    }
+
+    /**
+     * Reads an array key.
+     *
+     * @return {@code true} for a string key, its bounds are in {@link #stringStart} and {@link #stringEnd}
+     */
+    private boolean key() {
+        if (peek() == 's') {
+            string();
+            return true;
+        }
+        skipValue(0);
+        return false;
+    }
+
+    private boolean keyEquals(String key) {
+        return stringEnd - stringStart == key.length() && data.startsWith(key, stringStart);
+    }
+
+    @Nullable
+    private String stringValue() {
+        if (peek() != 's') {
+            skipValue(0);
+            return null;
+        }
+        string();
+        return data.substring(stringStart, stringEnd);
+    }
+
+    /**
+     * Reads an integer, which may also be stored as a string or a float.
+     */
+    private int intValue() {
+        char type = peek();
+        if (type == 'i' || type == 'd') {
+            position += 2;
+            int start = position;
+            skipTo(';');
+            return parseInt(start, position - 1);
+        }
+        if (type == 's') {
+            string();
+            return parseInt(stringStart, stringEnd);
+        }
+        skipValue(0);
+        return 0;
+    }
+
+    /**
+     * Reads {@code s:<length>:"<value>";}.
+     */
+    private void string() {
+        expect('s');
+        expect(':');
+        long length = number(':');
+        expect('"');
+        stringStart = position;
+        int end = utf8End(position, length);
+        if (end < 0 || end + 1 >= data.length() || data.charAt(end) != '"' || data.charAt(end + 1) != ';') {
+            end = data.indexOf("\";", position);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unterminated string at " + stringStart);
+            }
+        }
+        stringEnd = end;
+        position = end + 2;
+    }
+
+    /**
+     * @return index of the char following {@code byteLength} UTF-8 bytes starting at {@code start}, or {@code -1}
+     */
+    private int utf8End(int start, long byteLength) {
+        int index = start;
+        long bytes = 0;
+        while (bytes < byteLength && index < data.length()) {
+            char c = data.charAt(index++);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                index++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes == byteLength ? index : -1;
+    }
+
+    private void skipValue(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Too deep at " + position);
+        }
+        char type = peek();
+        switch (type) {
+            case 's':
+                string();
+                break;
+            case 'i':
+            case 'd':
+            case 'b':
+            case 'N':
+                skipTo(';');
+                break;
+            case 'a':
+                skipEntries(arrayStart(), depth);
+                break;
+            case 'O':
+                // O:<length>:"<class>":<count>:{...}
+                position++;
+                expect(':');
+                long length = number(':');
+                expect('"');
+                int end = utf8End(position, length);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Malformed class name at " + position);
+                }
+                position = end;
+                expect('"');
+                expect(':');
+                int fields = (int) number(':');
+                expect('{');
+                skipEntries(fields, depth);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported value '" + type + "' at " + position);
+        }
+    }
+
+    private void skipEntries(int count, int depth) {
+        for (int i = 0; i < count; i++) {
+            skipValue(depth + 1);
+            skipValue(depth + 1);
+        }
+        expect('}');
+    }
+
+    private long number(char terminator) {
+        int start = position;
+        skipTo(terminator);
+        return parseInt(start, position - 1);
+    }
+
+    private int parseInt(int start, int end) {
+        long value = 0;
+        boolean negative = start < end && data.charAt(start) == '-';
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            char c = data.charAt(i);
+            if (c == '.') {
+                break;
+            }
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Not a number at " + i);
+            }
+            value = Math.min(value * 10 + (c - '0'), Integer.MAX_VALUE);
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    private void skipTo(char c) {
+        int index = data.indexOf(c, position);
+        if (index < 0) {
+            throw new IllegalArgumentException("Expected '" + c + "' after " + position);
+        }
+        position = index + 1;
+    }
+
+    private char peek() {
+        return data.charAt(position);
+    }
+
+    private void expect(char c) {
+        if (data.charAt(position) != c) {
+            throw new IllegalArgumentException("Expected '" + c + "' at " + position);
+        }
+        position++;
+    }
+}
@@ -4,58 +4,92 @@ import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemStream;
 import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.batch.item.NonTransientResourceException;
 import org.springframework.batch.item.ParseException;
 import org.springframework.batch.item.UnexpectedInputException;
 
-import java.util.Collection;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
-public class CompositeItemReader<T> implements ItemReader<T>, ItemStream {
+/**
+ * Reads named readers one after another.
+ * <p>
+ * State of every reader is kept in the execution context under its own prefix {@code <name>.<reader name>.},
+ * together with the name of the current reader, so on restart reading continues from the same reader
+ * and position.
+ */
+public class CompositeItemReader<T> implements ItemStreamReader<T> {
 
-    private final Collection<ItemReader<T>> readers;
-    private final Iterator<ItemReader<T>> iterator;
-    private ItemReader<T> currentReader;
+    private static final String CURRENT_READER_KEY = "current";
 
-    private CompositeItemReader(Collection<ItemReader<T>> readers) {
-        this.readers = readers;
-        this.iterator = readers.iterator();
+    private final String name;
+    private final List<String> readerNames;
+    private final List<ItemReader<T>> readers;
+    private int currentIndex = -1;
+
+    private CompositeItemReader(String name, Map<String, ItemReader<T>> readers) {
+        this.name = name;
+        this.readerNames = new ArrayList<>(readers.keySet());
+        this.readers = new ArrayList<>(readers.values());
     }
 
-    public static <T> CompositeItemReader<T> of(Collection<ItemReader<T>> readers) {
-        return new CompositeItemReader<T>(readers);
+    /**
+     * @param readers readers by their names, in the order of reading
+     */
+    public static <T> CompositeItemReader<T> of(String name, Map<String, ItemReader<T>> readers) {
+        return new CompositeItemReader<>(name, readers);
     }
 
     @Override
     public T read() throws Exception, UnexpectedInputException, ParseException, NonTransientResourceException {
-        while (true) {
-            T value = (currentReader != null) ? currentReader.read() : null;
-            if (value != null) {
-                return value;
-            } else {
-                if (iterator.hasNext()) {
-                    currentReader = iterator.next();
-                } else {
-                    return null;
+        while (currentIndex < readers.size()) {
+            if (currentIndex >= 0) {
+                T value = readers.get(currentIndex).read();
+                if (value != null) {
+                    return value;
                 }
             }
+            currentIndex++;
         }
+        return null;
     }
 
     @Override
     public void open(ExecutionContext executionContext) throws ItemStreamException {
-        readers.stream()
-               .filter(reader -> reader instanceof ItemStream)
-               .map(reader -> (ItemStream) reader)
-               .forEach(reader -> reader.open(executionContext));
+        String currentKey = key(CURRENT_READER_KEY);
+        currentIndex = executionContext.containsKey(currentKey)
+                       ? readerNames.indexOf(executionContext.getString(currentKey))
+                       : -1;
+        for (int i = 0; i < readers.size(); i++) {
+            if (readers.get(i) instanceof ItemStream) {
+                String prefix = readerPrefix(i);
+                ExecutionContext readerContext = new ExecutionContext();
+                executionContext.entrySet()
+                                .stream()
+                                .filter(entry -> entry.getKey().startsWith(prefix))
+                                .forEach(entry -> readerContext.put(entry.getKey().substring(prefix.length()),
+                                                                    entry.getValue()));
+                ((ItemStream) readers.get(i)).open(readerContext);
+            }
+        }
     }
 
     @Override
     public void update(ExecutionContext executionContext) throws ItemStreamException {
-        readers.stream()
-               .filter(reader -> reader instanceof ItemStream)
-               .map(reader -> (ItemStream) reader)
-               .forEach(reader -> reader.update(executionContext));
+        if (currentIndex >= 0 && currentIndex < readers.size()) {
+            executionContext.putString(key(CURRENT_READER_KEY), readerNames.get(currentIndex));
+        }
+        for (int i = 0; i < readers.size(); i++) {
+            if (readers.get(i) instanceof ItemStream) {
+                String prefix = readerPrefix(i);
+                ExecutionContext readerContext = new ExecutionContext();
+                ((ItemStream) readers.get(i)).update(readerContext);
+                readerContext.entrySet()
+                             .forEach(entry -> executionContext.put(prefix + entry.getKey(), entry.getValue()));
+            }
+        }
     }
 
     @Override
@@ -65,4 +99,12 @@ public class CompositeItemReader<T> implements ItemReader<T>, ItemStream {
                .map(reader -> (ItemStream) reader)
                .forEach(ItemStream::close);
     }
+
+    private String key(String key) {
+        return name + "." + key;
+    }
+
+    private String readerPrefix(int index) {
+        return name + "." + readerNames.get(index) + ".";
+    }
 }
@@ -0,0 +1,192 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads named readers at the same time, each one in its own thread, and hands their items over through
+ * a bounded queue; a reader waits while the queue is full.
+ * <p>
+ * Every queued item carries the state of its reader right after it was read, and only the state of items
+ * already taken from the queue is saved, under the prefix {@code <name>.<reader name>.}, so on restart
+ * queued but not processed items are read again. A failure of any reader stops the others and is thrown
+ * from {@link #read()}.
+ */
+@Slf4j
+public class ConcurrentCompositeItemReader<T> implements ItemStreamReader<T> {
+
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private final String name;
+    private final List<String> readerNames;
+    private final List<ItemReader<T>> readers;
+    private final BlockingQueue<Element<T>> queue;
+    private final ExecutionContext[] consumedStates;
+    private final List<Thread> threads = new ArrayList<>();
+
+    private volatile boolean isClosed = false;
+    private int runningReaders = 0;
+
+    private ConcurrentCompositeItemReader(String name, Map<String, ItemReader<T>> readers, int queueCapacity) {
+        this.name = name;
+        this.readerNames = new ArrayList<>(readers.keySet());
+        this.readers = new ArrayList<>(readers.values());
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.consumedStates = new ExecutionContext[readers.size()];
+    }
+
+    /**
+     * @param readers       readers by their names
+     * @param queueCapacity number of items read ahead of the step
+     */
+    public static <T> ConcurrentCompositeItemReader<T> of(String name, Map<String, ItemReader<T>> readers,
+                                                          int queueCapacity) {
+        return new ConcurrentCompositeItemReader<>(name, readers, queueCapacity);
+    }
+
+    @Override
+    public T read() throws Exception {
+        while (runningReaders > 0) {
+            Element<T> element = queue.take();
+            if (element.failure != null) {
+                runningReaders = 0;
+                if (element.failure instanceof Exception) {
+                    throw (Exception) element.failure;
+                }
+                throw (Error) element.failure;
+            }
+            if (element.item == null) {
+                runningReaders--;
+                continue;
+            }
+            if (element.state != null) {
+                consumedStates[element.readerIndex] = element.state;
+            }
+            return element.item;
+        }
+        return null;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        isClosed = false;
+        for (int i = 0; i < readers.size(); i++) {
+            if (readers.get(i) instanceof ItemStream) {
+                String prefix = readerPrefix(i);
+                ExecutionContext readerContext = new ExecutionContext();
+                executionContext.entrySet()
+                                .stream()
+                                .filter(entry -> entry.getKey().startsWith(prefix))
+                                .forEach(entry -> readerContext.put(entry.getKey().substring(prefix.length()),
+                                                                    entry.getValue()));
+                ((ItemStream) readers.get(i)).open(readerContext);
+                consumedStates[i] = readerContext;
+            }
+        }
+        runningReaders = readers.size();
+        for (int i = 0; i < readers.size(); i++) {
+            int readerIndex = i;
+            Thread thread = new Thread(() -> produce(readerIndex), name + "-" + readerNames.get(i));
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    private void produce(int readerIndex) {
+        ItemReader<T> reader = readers.get(readerIndex);
+        try {
+            T item;
+            while (!isClosed && (item = reader.read()) != null) {
+                ExecutionContext state = null;
+                if (reader instanceof ItemStream) {
+                    state = new ExecutionContext();
+                    ((ItemStream) reader).update(state);
+                }
+                put(new Element<>(readerIndex, item, state, null));
+            }
+            put(new Element<>(readerIndex, null, null, null));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            if (isClosed) {
+                log.debug("Reader {} failed after close", readerNames.get(readerIndex), e);
+                return;
+            }
+            try {
+                put(new Element<>(readerIndex, null, null, e));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void put(Element<T> element) throws InterruptedException {
+        while (!isClosed) {
+            if (queue.offer(element, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        for (int i = 0; i < readers.size(); i++) {
+            if (consumedStates[i] != null) {
+                String prefix = readerPrefix(i);
+                consumedStates[i].entrySet()
+                                 .forEach(entry -> executionContext.put(prefix + entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        isClosed = true;
+        threads.forEach(Thread::interrupt);
+        // closing a reader also releases a thread blocked on its database cursor
+        readers.stream()
+               .filter(reader -> reader instanceof ItemStream)
+               .map(reader -> (ItemStream) reader)
+               .forEach(ItemStream::close);
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        threads.clear();
+        queue.clear();
+    }
+
+    private String readerPrefix(int index) {
+        return name + "." + readerNames.get(index) + ".";
+    }
+
+    private static class Element<T> {
+        private final int readerIndex;
+        private final T item;
+        private final ExecutionContext state;
+        private final Throwable failure;
+
+        private Element(int readerIndex, T item, ExecutionContext state, Throwable failure) {
+            this.readerIndex = readerIndex;
+            this.item = item;
+            this.state = state;
+            this.failure = failure;
+        }
+    }
+}
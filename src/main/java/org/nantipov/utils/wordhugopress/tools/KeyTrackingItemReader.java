@@ -0,0 +1,72 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Remembers the key of the last read item in the execution context and, on restart, creates the reader
+ * to start after it.
+ */
+public class KeyTrackingItemReader<T> implements ItemStreamReader<T> {
+
+    private final LongFunction<ItemReader<T>> readerFactory;
+    private final long initialKey;
+    private final ToLongFunction<T> keyExtractor;
+    private final String contextKey;
+
+    private ItemReader<T> delegate;
+    private Long lastKey = null;
+
+    /**
+     * @param readerFactory creates reader of items after the given key
+     * @param initialKey    key to start after, unless the execution context has one
+     */
+    public KeyTrackingItemReader(LongFunction<ItemReader<T>> readerFactory, long initialKey,
+                                 ToLongFunction<T> keyExtractor, String contextKey) {
+        this.readerFactory = readerFactory;
+        this.initialKey = initialKey;
+        this.keyExtractor = keyExtractor;
+        this.contextKey = contextKey;
+    }
+
+    @Override
+    public T read() throws Exception {
+        T item = delegate.read();
+        if (item != null) {
+            lastKey = keyExtractor.applyAsLong(item);
+        }
+        return item;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        long afterKey = executionContext.containsKey(contextKey) ? executionContext.getLong(contextKey) : initialKey;
+        delegate = readerFactory.apply(afterKey);
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).open(executionContext);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (lastKey != null) {
+            executionContext.putLong(contextKey, lastKey);
+        }
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).update(executionContext);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).close();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nantipov.utils.wordhugopress.domain.LocalCopyMode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Puts local files into the target without streaming them through the Java heap where possible.
+ * <p>
+ * Cloning is not tried again once {@code cp} is not found, or once it failed between two file systems.
+ */
+@Slf4j
+public class LocalFileCopier {
+
+    private static final Set<List<FileStore>> NOT_CLONING_FILE_STORES = ConcurrentHashMap.newKeySet();
+
+    private static volatile boolean cpAvailable = true;
+
+    private LocalFileCopier() {
+
+    }
+
+    /**
+     * Copies {@code source} into the new file {@code target}, which must not exist yet.
+     */
+    public static void copy(Path source, Path target, LocalCopyMode mode) throws IOException {
+        switch (mode) {
+            case AUTO:
+            case REFLINK:
+                if (tryReflink(source, target)) {
+                    return;
+                }
+                transfer(source, target);
+                break;
+            case HARDLINK:
+                if (tryHardLink(source, target)) {
+                    return;
+                }
+                transfer(source, target);
+                break;
+            case TRANSFER:
+                transfer(source, target);
+                break;
+            default:
+                try (InputStream inputStream = Files.newInputStream(source)) {
+                    Files.copy(inputStream, target);
+                }
+                break;
+        }
+    }
+
+    private static boolean tryHardLink(Path source, Path target) {
+        try {
+            Files.createLink(target, source);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            // most likely another file system
+            log.debug("Could not link {} to {}: {}", source, target, e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean tryReflink(Path source, Path target) {
+        if (!cpAvailable) {
+            return false;
+        }
+        List<FileStore> fileStores = fileStores(source, target);
+        if (fileStores != null && NOT_CLONING_FILE_STORES.contains(fileStores)) {
+            return false;
+        }
+        Process process;
+        try {
+            process = new ProcessBuilder("cp", "--reflink=always", source.toString(), target.toString())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+        } catch (IOException e) {
+            cpAvailable = false;
+            log.info("Could not run cp, local files are copied with channel transfer: {}", e.getMessage());
+            return false;
+        }
+        try {
+            if (process.waitFor() == 0) {
+                return true;
+            }
+            if (fileStores != null && NOT_CLONING_FILE_STORES.add(fileStores)) {
+                log.info("Could not clone {} to {}, files from {} to {} are copied with channel transfer",
+                         source, target, fileStores.get(0), fileStores.get(1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Files.deleteIfExists(target);
+        } catch (IOException e) {
+            log.debug("Could not clean up {}", target, e);
+        }
+        return false;
+    }
+
+    private static List<FileStore> fileStores(Path source, Path target) {
+        try {
+            return List.of(Files.getFileStore(source), Files.getFileStore(target.toAbsolutePath().getParent()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void transfer(Path source, Path target) throws IOException {
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.WRITE,
+                                                          StandardOpenOption.CREATE_NEW)) {
+            long size = sourceChannel.size();
+            long position = 0;
+            while (position < size) {
+                position += sourceChannel.transferTo(position, size - position, targetChannel);
+            }
+        }
+    }
+}
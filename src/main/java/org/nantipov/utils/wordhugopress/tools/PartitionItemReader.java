@@ -6,33 +6,46 @@ import org.springframework.batch.item.ItemStream;
 import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.ItemStreamReader;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.function.BiPredicate;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
 
 /**
- * Splits stream into partitions by certain criteria.
+ * Splits stream into partitions of consecutive items with the same key, every partition is collected into
+ * one output item.
+ * <p>
+ * Items are passed to the collector as they are read, so only the collector's container and one item read
+ * ahead are kept in memory, regardless of the size of a partition.
+ * <p>
+ * To tell where a partition ends the reader reads the first item of the next one ahead. The saved state is
+ * the state of the input reader before that item was read, so on restart the look-ahead item is read again
+ * instead of being lost.
  */
 public class PartitionItemReader<I, O> implements ItemStreamReader<O> {
 
     private final ItemReader<I> inputReader;
-    private final BiPredicate<I, I> samePartitionPredicate;
-    private final Function<List<I>, O> mapper;
-    private final long maxItemsInBuffer; // 0 - unlimited
+    private final ToLongFunction<I> partitionKey;
+    private final Supplier<Object> supplier;
+    private final BiConsumer<Object, I> accumulator;
+    private final Function<Object, O> finisher;
+    private final long maxItemsInPartition; // 0 - unlimited
 
-    private final List<I> buffer = new LinkedList<>();
-    private I previousItem = null;
+    private I nextItem = null;
+    private ExecutionContext partitionEndState = null;
 
     private boolean isInputReadClosed = false;
 
-    public PartitionItemReader(ItemReader<I> inputReader, BiPredicate<I, I> samePartitionPredicate,
-                               Function<List<I>, O> mapper, long maxItemsInBuffer) {
+    @SuppressWarnings("unchecked")
+    public <A> PartitionItemReader(ItemReader<I> inputReader, ToLongFunction<I> partitionKey,
+                                   Collector<I, A, O> collector, long maxItemsInPartition) {
         this.inputReader = inputReader;
-        this.samePartitionPredicate = samePartitionPredicate;
-        this.mapper = mapper;
-        this.maxItemsInBuffer = maxItemsInBuffer;
+        this.partitionKey = partitionKey;
+        this.supplier = (Supplier<Object>) collector.supplier();
+        this.accumulator = (BiConsumer<Object, I>) collector.accumulator();
+        this.finisher = (Function<Object, O>) collector.finisher();
+        this.maxItemsInPartition = maxItemsInPartition;
     }
 
     @Override
@@ -41,39 +54,44 @@ public class PartitionItemReader<I, O> implements ItemStreamReader<O> {
             return null;
         }
 
-        I inputItem;
-        while (isSamePartition(inputItem = inputReader.read(), buffer.size())) {
-            previousItem = inputItem;
-            buffer.add(inputItem);
-        }
-
-        previousItem = inputItem;
-
+        I inputItem = nextItem != null ? nextItem : inputReader.read();
+        nextItem = null;
         if (inputItem == null) {
             isInputReadClosed = true;
+            return null;
         }
 
-        O outputItem;
-        if (!buffer.isEmpty()) {
-            List<I> bufferedItems = new ArrayList<>(buffer);
-            buffer.clear();
-
-            if (inputItem != null) {
-                buffer.add(inputItem);
-            }
+        long key = partitionKey.applyAsLong(inputItem);
+        Object container = supplier.get();
+        accumulator.accept(container, inputItem);
+        long itemsCount = 1;
+
+        ExecutionContext stateBeforeRead = inputState();
+        while ((inputItem = inputReader.read()) != null &&
+               (maxItemsInPartition <= 0 || itemsCount < maxItemsInPartition) &&
+               partitionKey.applyAsLong(inputItem) == key) {
+            accumulator.accept(container, inputItem);
+            itemsCount++;
+            stateBeforeRead = inputState();
+        }
+        partitionEndState = stateBeforeRead;
 
-            outputItem = mapper.apply(bufferedItems);
+        if (inputItem == null) {
+            isInputReadClosed = true;
         } else {
-            outputItem = null;
+            nextItem = inputItem;
         }
 
-        return outputItem;
+        return finisher.apply(container);
     }
 
-    private boolean isSamePartition(I item, long bufferSize) {
-        return item != null &&
-               (maxItemsInBuffer <= 0 || bufferSize < maxItemsInBuffer) &&
-               (this.previousItem == null || samePartitionPredicate.test(previousItem, item));
+    private ExecutionContext inputState() {
+        if (!(inputReader instanceof ItemStream)) {
+            return null;
+        }
+        ExecutionContext state = new ExecutionContext();
+        ((ItemStream) inputReader).update(state);
+        return state;
     }
 
     @Override
@@ -85,7 +103,9 @@ public class PartitionItemReader<I, O> implements ItemStreamReader<O> {
 
     @Override
     public void update(ExecutionContext executionContext) throws ItemStreamException {
-        if (inputReader instanceof ItemStream) {
+        if (partitionEndState != null) {
+            partitionEndState.entrySet().forEach(entry -> executionContext.put(entry.getKey(), entry.getValue()));
+        } else if (inputReader instanceof ItemStream) {
             ((ItemStream) inputReader).update(executionContext);
         }
     }
@@ -0,0 +1,70 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersIncrementer;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.repository.JobRepository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Gives parameters of the last execution of the job if it has not completed, so the job is restarted from
+ * where it stopped, otherwise parameters of a new job instance.
+ * <p>
+ * Only one conversion runs at a time, so an execution still marked as running was left by a process that
+ * died; it is marked as failed first.
+ */
+@Slf4j
+public class RestartingIncrementer implements JobParametersIncrementer {
+
+    private final JobExplorer jobExplorer;
+    private final JobRepository jobRepository;
+    private final String jobName;
+    private final JobParametersIncrementer incrementer = new RunIdIncrementer();
+
+    public RestartingIncrementer(JobExplorer jobExplorer, JobRepository jobRepository, String jobName) {
+        this.jobExplorer = jobExplorer;
+        this.jobRepository = jobRepository;
+        this.jobName = jobName;
+    }
+
+    @Override
+    public JobParameters getNext(JobParameters parameters) {
+        JobInstance lastInstance = jobExplorer.getLastJobInstance(jobName);
+        JobExecution lastExecution = lastInstance != null ? jobExplorer.getLastJobExecution(lastInstance) : null;
+        if (lastExecution != null) {
+            if (lastExecution.isRunning()) {
+                markFailed(lastExecution);
+            }
+            if (lastExecution.getStatus() == BatchStatus.FAILED || lastExecution.getStatus() == BatchStatus.STOPPED) {
+                log.info("Restarting job {} execution {}", jobName, lastExecution.getId());
+                return lastExecution.getJobParameters();
+            }
+        }
+        return incrementer.getNext(parameters);
+    }
+
+    private void markFailed(JobExecution jobExecution) {
+        log.warn("Job {} execution {} was left running, marking it as failed", jobName, jobExecution.getId());
+        LocalDateTime now = LocalDateTime.now();
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+            if (stepExecution.getStatus().isRunning()) {
+                stepExecution.setStatus(BatchStatus.FAILED);
+                stepExecution.setExitStatus(ExitStatus.FAILED);
+                stepExecution.setEndTime(now);
+                jobRepository.update(stepExecution);
+            }
+        }
+        jobExecution.setStatus(BatchStatus.FAILED);
+        jobExecution.setExitStatus(ExitStatus.FAILED);
+        jobExecution.setEndTime(now);
+        jobRepository.update(jobExecution);
+    }
+}
@@ -0,0 +1,454 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import org.springframework.lang.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams rows of {@code INSERT} statements out of a {@code mysqldump} file.
+ * <p>
+ * The dump is read one char at a time and never held in memory, values are materialized only when the caller
+ * asks for them, so skipping a table or a large column costs a scan and no allocation. Columns of a table are
+ * taken from the column list of the {@code INSERT} statement ({@code --complete-insert}) or from its
+ * {@code CREATE TABLE} statement. Other statements and comments are skipped.
+ * <pre>
+ * while ((table = scanner.nextRow(tables)) != null) {
+ *     while (scanner.hasNextValue()) {
+ *         String value = scanner.nextValue(true);
+ *     }
+ * }
+ * </pre>
+ */
+public class SqlDumpScanner implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int EOF = -1;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder value = new StringBuilder();
+    private final Map<String, List<String>> createdColumns = new HashMap<>();
+    private int length;
+    private int position;
+
+    private String table;
+    private List<String> insertColumns;
+    private boolean isInValues;
+    private boolean isInRow;
+    private boolean isFirstValue;
+
+    public SqlDumpScanner(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Moves to the next row of an {@code INSERT} into one of the tables, the rest of the current row is skipped.
+     *
+     * @return name of the table, or {@code null} at the end of the dump
+     */
+    @Nullable
+    public String nextRow(Set<String> tables) throws IOException {
+        if (isInRow) {
+            skipRow();
+        }
+        while (true) {
+            if (isInValues) {
+                skipWhitespace();
+                int c = read();
+                if (c == ',') {
+                    skipWhitespace();
+                    expect('(');
+                    startRow();
+                    return table;
+                }
+                isInValues = false;
+                if (c != ';' && c != EOF) {
+                    skipStatement();
+                }
+            }
+            if (!skipWhitespaceAndComments()) {
+                return null;
+            }
+            String keyword = word();
+            if (keyword.equals("INSERT") || keyword.equals("REPLACE")) {
+                if (insert(tables)) {
+                    return table;
+                }
+            } else if (keyword.equals("CREATE")) {
+                create();
+            } else {
+                skipStatement();
+            }
+        }
+    }
+
+    /**
+     * @return columns of the table of the current row, or {@code null} if the dump does not tell them
+     */
+    @Nullable
+    public List<String> columns() {
+        return insertColumns != null ? insertColumns : createdColumns.get(table);
+    }
+
+    /**
+     * @return {@code false} when all values of the current row are read
+     */
+    public boolean hasNextValue() throws IOException {
+        if (!isInRow) {
+            return false;
+        }
+        skipWhitespace();
+        if (peek() == ')') {
+            read();
+            isInRow = false;
+            return false;
+        }
+        if (!isFirstValue) {
+            expect(',');
+            skipWhitespace();
+        }
+        isFirstValue = false;
+        return true;
+    }
+
+    /**
+     * Reads the next value of the row.
+     *
+     * @param keep {@code false} to skip the value without building it
+     * @return the value, or {@code null} for {@code NULL} or a skipped value
+     */
+    @Nullable
+    public String nextValue(boolean keep) throws IOException {
+        value.setLength(0);
+        int c = peek();
+        if (c == '_') {
+            // charset introducer, e.g. _binary '...'
+            word();
+            value.setLength(0);
+            skipWhitespace();
+            c = peek();
+        }
+        if (c == '\'' || c == '"') {
+            string(keep);
+            return keep ? value.toString() : null;
+        }
+        while ((c = peek()) != ',' && c != ')' && c != EOF) {
+            value.append((char) read());
+        }
+        String literal = value.toString().trim();
+        return !keep || literal.equalsIgnoreCase("NULL") ? null : literal;
+    }
+
+    public void skipRow() throws IOException {
+        while (hasNextValue()) {
+            nextValue(false);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private boolean insert(Set<String> tables) throws IOException {
+        String keyword;
+        do {
+            skipWhitespace();
+            keyword = word();
+        } while (!keyword.equals("INTO") && !keyword.isEmpty());
+        skipWhitespace();
+        table = identifier();
+        skipWhitespace();
+        insertColumns = null;
+        if (peek() == '(') {
+            read();
+            insertColumns = new ArrayList<>();
+            do {
+                skipWhitespace();
+                insertColumns.add(identifier());
+                skipWhitespace();
+            } while (read() == ',');
+            skipWhitespace();
+        }
+        keyword = word();
+        skipWhitespace();
+        if (!keyword.startsWith("VALUE") || peek() != '(' || !tables.contains(table)) {
+            skipStatement();
+            return false;
+        }
+        read();
+        isInValues = true;
+        startRow();
+        return true;
+    }
+
+    private void create() throws IOException {
+        skipWhitespace();
+        if (!word().equals("TABLE")) {
+            skipStatement();
+            return;
+        }
+        skipWhitespace();
+        String name = identifier();
+        while (name.equalsIgnoreCase("IF") || name.equalsIgnoreCase("NOT") || name.equalsIgnoreCase("EXISTS")) {
+            skipWhitespace();
+            name = identifier();
+        }
+        skipWhitespace();
+        if (peek() != '(') {
+            skipStatement();
+            return;
+        }
+        read();
+        List<String> columns = new ArrayList<>();
+        int c;
+        do {
+            skipWhitespace();
+            // column definitions start with a quoted name, keys and constraints with a keyword
+            if (peek() == '`') {
+                columns.add(identifier());
+            }
+            c = skipDefinition();
+        } while (c == ',');
+        createdColumns.put(name, columns);
+        skipStatement();
+    }
+
+    /**
+     * Skips a definition of {@code CREATE TABLE} up to its closing comma or parenthesis.
+     *
+     * @return the closing char
+     */
+    private int skipDefinition() throws IOException {
+        int depth = 0;
+        int c;
+        while ((c = read()) != EOF) {
+            if (c == '\'' || c == '"' || c == '`') {
+                quoted(c, false);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (depth == 0) {
+                    return c;
+                }
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                return c;
+            }
+        }
+        return c;
+    }
+
+    private void startRow() {
+        isInRow = true;
+        isFirstValue = true;
+    }
+
+    private void skipStatement() throws IOException {
+        int c;
+        while ((c = read()) != EOF && c != ';') {
+            if (c == '\'' || c == '"' || c == '`') {
+                quoted(c, false);
+            } else if (c == '/' && peek() == '*') {
+                skipBlockComment();
+            } else if ((c == '-' && peek() == '-') || c == '#') {
+                skipLine();
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} at the end of the dump
+     */
+    private boolean skipWhitespaceAndComments() throws IOException {
+        while (true) {
+            skipWhitespace();
+            int c = peek();
+            if (c == EOF) {
+                return false;
+            }
+            if (c == ';') {
+                read();
+            } else if (c == '#') {
+                skipLine();
+            } else if (c == '-' && peekNext() == '-') {
+                skipLine();
+            } else if (c == '/' && peekNext() == '*') {
+                read();
+                skipBlockComment();
+            } else {
+                return true;
+            }
+        }
+    }
+
+    private void skipBlockComment() throws IOException {
+        read(); // '*'
+        int previous = 0;
+        int c;
+        while ((c = read()) != EOF && !(previous == '*' && c == '/')) {
+            previous = c;
+        }
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != EOF && c != '\n');
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (Character.isWhitespace(peek())) {
+            read();
+        }
+    }
+
+    /**
+     * Reads a keyword, upper-cased.
+     */
+    private String word() throws IOException {
+        value.setLength(0);
+        int c;
+        while ((c = peek()) != EOF && (Character.isLetterOrDigit(c) || c == '_')) {
+            value.append((char) read());
+        }
+        return value.toString().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Reads a plain or quoted identifier, the table of {@code db.table}.
+     */
+    private String identifier() throws IOException {
+        String name;
+        do {
+            value.setLength(0);
+            if (peek() == '`') {
+                quoted(read(), true);
+            } else {
+                int c;
+                while ((c = peek()) != EOF && (Character.isLetterOrDigit(c) || c == '_' || c == '$')) {
+                    value.append((char) read());
+                }
+            }
+            name = value.toString();
+        } while (peek() == '.' && read() == '.');
+        return name;
+    }
+
+    /**
+     * Reads a quoted string into {@link #value}.
+     */
+    private void string(boolean keep) throws IOException {
+        quoted(read(), keep);
+    }
+
+    /**
+     * Reads the rest of a quoted string or identifier after its opening quote.
+     */
+    private void quoted(int quote, boolean keep) throws IOException {
+        int c;
+        while ((c = read()) != EOF) {
+            if (c == '\\' && quote != '`') {
+                int escaped = read();
+                if (keep) {
+                    value.append(unescape(escaped));
+                }
+            } else if (c == quote) {
+                if (peek() != quote) {
+                    return;
+                }
+                read();
+                if (keep) {
+                    value.append((char) c);
+                }
+            } else if (keep) {
+                value.append((char) c);
+            }
+        }
+        throw new IOException("Unterminated string in the dump");
+    }
+
+    private static String unescape(int c) {
+        switch (c) {
+            case '0':
+                return "\0";
+            case 'b':
+                return "\b";
+            case 'n':
+                return "\n";
+            case 'r':
+                return "\r";
+            case 't':
+                return "\t";
+            case 'Z':
+                return "\u001A";
+            case '%':
+                return "\\%";
+            case '_':
+                return "\\_";
+            case EOF:
+                return "";
+            default:
+                return String.valueOf((char) c);
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = read();
+        if (c != expected) {
+            throw new IOException("Expected '" + expected + "' in the dump but found " +
+                                  (c == EOF ? "the end" : "'" + (char) c + "'"));
+        }
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != EOF) {
+            position++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == length && !fill()) {
+            return EOF;
+        }
+        return buffer[position];
+    }
+
+    private int peekNext() throws IOException {
+        if (position + 1 >= length) {
+            // keep the current char and read more after it
+            System.arraycopy(buffer, position, buffer, 0, length - position);
+            length -= position;
+            position = 0;
+            int read = reader.read(buffer, length, buffer.length - length);
+            if (read > 0) {
+                length += read;
+            }
+            if (length < 2) {
+                return EOF;
+            }
+        }
+        return buffer[position + 1];
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        position = 0;
+        length = Math.max(read, 0);
+        return read > 0;
+    }
+}
@@ -0,0 +1,647 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+import org.nantipov.utils.wordhugopress.domain.Reference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import static com.google.common.base.Strings.nullToEmpty;
+
+/**
+ * Converts post HTML into Markdown in a single pass over the HTML, without building a document tree.
+ * <p>
+ * Produces the same Markdown as the {@code Jsoup} document based conversion in {@code PostItemProcessor}
+ * for the handled tags ({@code ul}, {@code ol}, {@code li}, {@code a}, {@code img}, {@code pre}, {@code br},
+ * {@code p}). Only markup whose document tree follows from the stack of open tags is converted: end tags
+ * matching the open tags, optional {@code </p>} and {@code </li>}, no tables or forms. Anything the HTML tree
+ * builder would repair (misnested formatting, stray end tags, ...) is not converted and the post has to be
+ * converted from its document.
+ */
+public class StreamingMarkdownConverter {
+
+    private static final char NBSP = '\u00A0';
+    private static final char ZERO_WIDTH_SPACE = '\u200B';
+    private static final char SOFT_HYPHEN = '\u00AD';
+
+    private static final Set<String> IGNORED_TAGS = Set.of("html", "head", "body");
+    private static final Set<String> HEADING_TAGS = Set.of("h1", "h2", "h3", "h4", "h5", "h6");
+    private static final Set<String> IMPLIED_END_TAGS = Set.of("p", "li");
+    /**
+     * End tags which close the paragraphs and list items opened inside.
+     */
+    private static final Set<String> CLOSING_IMPLIED_END_TAGS = Set.of(
+            "address", "article", "aside", "blockquote", "center", "details", "dir", "div", "dl", "fieldset",
+            "figcaption", "figure", "footer", "header", "hgroup", "menu", "nav", "ol", "pre", "section", "summary",
+            "ul", "li", "h1", "h2", "h3", "h4", "h5", "h6"
+    );
+    /**
+     * Tags with their own insertion modes or tree builder rules, which are not followed here.
+     */
+    private static final Set<String> UNSUPPORTED_TAGS = Set.of(
+            "table", "caption", "colgroup", "col", "tbody", "thead", "tfoot", "tr", "td", "th", "form", "button",
+            "select", "option", "optgroup", "datalist", "frameset", "frame", "template", "svg", "math", "nobr",
+            "image", "isindex", "dd", "dt", "rb", "rp", "rt", "rtc", "listing", "plaintext", "xmp", "iframe",
+            "noembed", "noframes", "noscript", "textarea", "title", "base", "basefont", "bgsound", "link", "meta"
+    );
+    private static final Set<String> LIST_TAGS = Set.of("ul", "ol");
+    private static final Set<String> RAW_TEXT_TAGS = Set.of("script", "style");
+    private static final Set<String> PRESERVE_WHITESPACE_TAGS = Set.of("pre", "plaintext", "title", "textarea");
+    private static final Set<String> FORMATTING_TAGS = Set.of(
+            "a", "b", "big", "code", "em", "font", "i", "nobr", "s", "small", "strike", "strong", "tt", "u"
+    );
+    private static final Set<String> BUTTON_SCOPE_TAGS = Set.of(
+            "applet", "caption", "html", "marquee", "object", "table", "td", "th", "template", "button"
+    );
+    private static final Set<String> CLOSING_P_TAGS = Set.of(
+            "address", "article", "aside", "blockquote", "center", "details", "dialog", "dir", "div", "dl",
+            "fieldset", "figcaption", "figure", "footer", "header", "hgroup", "main", "menu", "nav", "ol", "p",
+            "section", "summary", "ul", "h1", "h2", "h3", "h4", "h5", "h6", "pre", "listing", "form", "table", "hr",
+            "li", "dd", "dt", "plaintext"
+    );
+    private static final Set<String> SPECIAL_TAGS = Set.of(
+            "address", "applet", "area", "article", "aside", "base", "basefont", "bgsound", "blockquote", "body",
+            "br", "button", "caption", "center", "col", "colgroup", "command", "dd", "details", "dir", "div", "dl",
+            "dt", "embed", "fieldset", "figcaption", "figure", "footer", "form", "frame", "frameset", "h1", "h2",
+            "h3", "h4", "h5", "h6", "head", "header", "hgroup", "hr", "html", "iframe", "img", "input", "isindex",
+            "li", "link", "listing", "marquee", "menu", "meta", "nav", "noembed", "noframes", "noscript", "object",
+            "ol", "p", "param", "plaintext", "pre", "script", "section", "select", "style", "summary", "table",
+            "tbody", "td", "textarea", "tfoot", "th", "thead", "title", "tr", "ul", "wbr", "xmp"
+    );
+
+    private final String html;
+    private final UnaryOperator<Reference> referenceAdjuster;
+    private final StringBuilder output;
+    private final List<String> openTags = new ArrayList<>();
+    // links and images are adjusted once the whole post is converted
+    private final List<Link> links = new ArrayList<>();
+
+    private Capture capture = null;
+    private int position = 0;
+    private boolean isDocumentStarted = false;
+    private boolean isBodyStarted = false;
+    private boolean isSupported = true;
+
+    private StreamingMarkdownConverter(String html, UnaryOperator<Reference> referenceAdjuster) {
+        this.html = html;
+        this.referenceAdjuster = referenceAdjuster;
+        this.output = new StringBuilder(html.length());
+    }
+
+    /**
+     * Converts HTML into Markdown, every link and image reference is passed through {@code referenceAdjuster}.
+     *
+     * @return empty if the HTML is not converted, then no reference has been passed to {@code referenceAdjuster}
+     */
+    public static Optional<String> convert(String html, UnaryOperator<Reference> referenceAdjuster) {
+        return new StreamingMarkdownConverter(nullToEmpty(html), referenceAdjuster).convert();
+    }
+
+    private Optional<String> convert() {
+        int length = html.length();
+        int textStart = 0;
+        int searchFrom = 0;
+        while (true) {
+            int markupStart = html.indexOf('<', searchFrom);
+            if (markupStart < 0 || markupStart + 1 >= length) {
+                break;
+            }
+            char next = html.charAt(markupStart + 1);
+            boolean isEndTag = next == '/' && markupStart + 2 < length && isAsciiLetter(html.charAt(markupStart + 2));
+            if (!isEndTag && next != '!' && next != '?' && next != '/' && !isAsciiLetter(next)) {
+                searchFrom = markupStart + 1;
+                continue;
+            }
+            text(html, textStart, markupStart);
+            position = markupStart;
+            if (html.startsWith("<!--", position)) {
+                comment();
+            } else if (next == '!' || next == '?' || next == '/' && !isEndTag) {
+                // doctype or bogus comment
+                unsupported();
+            } else if (isEndTag) {
+                endTag();
+            } else {
+                startTag();
+            }
+            if (!isSupported) {
+                return Optional.empty();
+            }
+            textStart = position;
+            searchFrom = position;
+        }
+        text(html, textStart, length);
+        while (!openTags.isEmpty()) {
+            closeTopTag();
+        }
+        return Optional.of(markdown());
+    }
+
+    /**
+     * Stops the conversion, the markup needs the rules of the HTML tree builder.
+     */
+    private void unsupported() {
+        isSupported = false;
+    }
+
+    // tokens
+
+    private void comment() {
+        int end = html.indexOf("-->", position + 4);
+        String data = html.substring(position + 4, end < 0 ? html.length() : end);
+        position = end < 0 ? html.length() : end + 3;
+        if (capture != null) {
+            capture.separatorDepth = -1;
+        } else if (!isInList()) {
+            output.append("<!--").append(data).append("-->");
+        }
+    }
+
+    private void endTag() {
+        int nameEnd = tagNameEnd(position + 2);
+        String name = html.substring(position + 2, nameEnd).toLowerCase(Locale.ROOT);
+        int end = html.indexOf('>', nameEnd);
+        position = end < 0 ? html.length() : end + 1;
+        endTag(name);
+    }
+
+    private void startTag() {
+        int length = html.length();
+        int nameEnd = tagNameEnd(position + 1);
+        String name = html.substring(position + 1, nameEnd).toLowerCase(Locale.ROOT);
+        Map<String, String> attributes = new HashMap<>();
+        boolean isSelfClosing = false;
+        int index = nameEnd;
+        while (index < length) {
+            char c = html.charAt(index);
+            if (c == '>') {
+                index++;
+                break;
+            } else if (c == '/') {
+                isSelfClosing = index + 1 < length && html.charAt(index + 1) == '>';
+                index++;
+            } else if (Character.isWhitespace(c)) {
+                index++;
+            } else {
+                int attributeNameStart = index;
+                while (index < length && !isAttributeNameEnd(html.charAt(index))) {
+                    index++;
+                }
+                String attributeName = html.substring(attributeNameStart, index).toLowerCase(Locale.ROOT);
+                index = skipWhitespace(index);
+                String value = "";
+                if (index < length && html.charAt(index) == '=') {
+                    index = skipWhitespace(index + 1);
+                    if (index < length && (html.charAt(index) == '"' || html.charAt(index) == '\'')) {
+                        int valueEnd = html.indexOf(html.charAt(index), index + 1);
+                        valueEnd = valueEnd < 0 ? length : valueEnd;
+                        value = html.substring(index + 1, valueEnd);
+                        index = Math.min(length, valueEnd + 1);
+                    } else {
+                        int valueStart = index;
+                        while (index < length && !Character.isWhitespace(html.charAt(index)) &&
+                               html.charAt(index) != '>') {
+                            index++;
+                        }
+                        value = html.substring(valueStart, index);
+                    }
+                }
+                attributes.putIfAbsent(attributeName, Parser.unescapeEntities(value, true));
+            }
+        }
+        position = index;
+
+        if (isSelfClosing && !isVoid(name) || UNSUPPORTED_TAGS.contains(name)) {
+            // versions of the tree builder differ on self-closing tags which are not void
+            unsupported();
+            return;
+        }
+        startTag(name, attributes);
+        if (RAW_TEXT_TAGS.contains(name)) {
+            int end = indexOfEndTag(name);
+            if (capture == null && !isInList()) {
+                output.append(html, position, end);
+            }
+            position = end;
+        } else if (name.equals("pre") && position < length && html.charAt(position) == '\n') {
+            position++;
+        }
+    }
+
+    // tree
+
+    private void startTag(String name, Map<String, String> attributes) {
+        if (IGNORED_TAGS.contains(name)) {
+            return;
+        }
+        isDocumentStarted = true;
+        isBodyStarted = true;
+        if (name.equals("a") && openTags.contains("a")) {
+            unsupported();
+            return;
+        }
+        if (name.equals("li")) {
+            closeListItem();
+        }
+        if (CLOSING_P_TAGS.contains(name) && isParagraphInButtonScope()) {
+            closeImplicitly(openTags.lastIndexOf("p"));
+        }
+        if (HEADING_TAGS.contains(name) && !openTags.isEmpty() &&
+            HEADING_TAGS.contains(openTags.get(openTags.size() - 1))) {
+            // a heading in a heading closes it
+            unsupported();
+            return;
+        }
+        if (capture != null) {
+            if (isBlock(name) || name.equals("br") || capture.separatorDepth == openTags.size()) {
+                capture.separate();
+            }
+            capture.separatorDepth = isVoid(name) && isBlock(name) ? openTags.size() : -1;
+            if (capture.firstChildTag == null && openTags.size() == capture.depth + 1) {
+                capture.firstChildTag = name;
+                capture.firstChildAttributes = attributes;
+            }
+            pushTag(name);
+            return;
+        }
+
+        switch (name) {
+            case "ul":
+            case "ol":
+                output.append("\n");
+                break;
+            case "li":
+                String parent = openTags.isEmpty() ? "" : openTags.get(openTags.size() - 1);
+                output.append(parent.equals("ol") ? "1. " : "- ");
+                break;
+            case "a":
+            case "pre":
+                capture = new Capture(name, openTags.size(), attributes);
+                break;
+            case "img":
+                links.add(new Link(output.length(), null, attributes));
+                break;
+            case "br":
+                output.append("\n");
+                break;
+            case "p":
+                output.append("\n");
+                break;
+            default:
+                break;
+        }
+        pushTag(name);
+    }
+
+    private void endTag(String name) {
+        isDocumentStarted = true;
+        if (IGNORED_TAGS.contains(name) || !isBodyStarted && !name.equals("br")) {
+            // before the content starts, end tags are ignored
+            return;
+        }
+        if (name.equals("br")) {
+            startTag(name, Map.of());
+            return;
+        }
+        if (name.equals("p") && !isParagraphInButtonScope()) {
+            // an unmatched closing paragraph is an empty paragraph
+            if (capture != null) {
+                unsupported();
+            } else {
+                output.append("\n\n");
+            }
+            return;
+        }
+        // only paragraphs and list items are closed without their end tags, by the end tags of blocks
+        int index = openTags.size() - 1;
+        while (index >= 0 && !openTags.get(index).equals(name) && IMPLIED_END_TAGS.contains(openTags.get(index)) &&
+               CLOSING_IMPLIED_END_TAGS.contains(name)) {
+            index--;
+        }
+        if (index < 0 || !openTags.get(index).equals(name)) {
+            // a stray or misnested end tag
+            unsupported();
+            return;
+        }
+        closeTagsDownTo(index);
+    }
+
+    private void text(String source, int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        String text = Parser.unescapeEntities(source.substring(start, end), false);
+        if (isBlank(text)) {
+            if (!isDocumentStarted) {
+                // leading whitespace is dropped
+                return;
+            }
+        } else {
+            isDocumentStarted = true;
+            isBodyStarted = true;
+        }
+        if (capture != null) {
+            if (capture.separatorDepth == openTags.size()) {
+                capture.separate();
+                capture.separatorDepth = -1;
+            }
+            capture.appendText(text, isWhitespacePreserved());
+        } else if (!isInList()) {
+            appendNormalisedWhitespace(output, text, false);
+        }
+    }
+
+    /**
+     * @return {@code true} if the text has only HTML whitespace, as {@code TextNode#isBlank()} tells
+     */
+    private static boolean isBlank(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!isHtmlWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the text with runs of whitespace (including {@code &nbsp;}) collapsed into one space and invisible
+     * chars dropped, as {@code TextNode#text()} does.
+     */
+    private static void appendNormalisedWhitespace(StringBuilder builder, String text, boolean isStripLeading) {
+        boolean isLastWhitespace = false;
+        boolean isNonWhitespaceReached = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isHtmlWhitespace(c) || c == NBSP) {
+                if ((isStripLeading && !isNonWhitespaceReached) || isLastWhitespace) {
+                    continue;
+                }
+                builder.append(' ');
+                isLastWhitespace = true;
+            } else if (c != ZERO_WIDTH_SPACE && c != SOFT_HYPHEN) {
+                builder.append(c);
+                isLastWhitespace = false;
+                isNonWhitespaceReached = true;
+            }
+        }
+    }
+
+    private static boolean isHtmlWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    private void pushTag(String name) {
+        if (!isVoid(name)) {
+            openTags.add(name);
+        }
+    }
+
+    private void closeTagsDownTo(int depth) {
+        while (openTags.size() > depth) {
+            closeTopTag();
+        }
+    }
+
+    private void closeTopTag() {
+        String name = openTags.remove(openTags.size() - 1);
+        if (capture != null) {
+            if (openTags.size() == capture.depth) {
+                Capture finished = capture;
+                capture = null;
+                if (finished.tag.equals("a")) {
+                    links.add(new Link(output.length(), finished, null));
+                } else {
+                    output.append("\n```\n").append(finished.text()).append("\n```\n");
+                }
+            } else {
+                // text or an inline element right after a block is separated from it
+                capture.separatorDepth = isBlock(name) ? openTags.size() : -1;
+            }
+            return;
+        }
+        switch (name) {
+            case "ul":
+            case "ol":
+            case "li":
+            case "p":
+                output.append("\n");
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Closes the tags down to the depth without their end tags. Formatting tags closed this way would be
+     * reopened by the tree builder, which is not followed.
+     */
+    private void closeImplicitly(int depth) {
+        for (int index = depth; index < openTags.size(); index++) {
+            if (FORMATTING_TAGS.contains(openTags.get(index))) {
+                unsupported();
+                return;
+            }
+        }
+        closeTagsDownTo(depth);
+    }
+
+    private void closeListItem() {
+        for (int index = openTags.size() - 1; index >= 0; index--) {
+            String openTag = openTags.get(index);
+            if (openTag.equals("li")) {
+                closeImplicitly(index);
+                return;
+            }
+            if (SPECIAL_TAGS.contains(openTag) && !openTag.equals("address") && !openTag.equals("div") &&
+                !openTag.equals("p")) {
+                return;
+            }
+        }
+    }
+
+    private boolean isParagraphInButtonScope() {
+        for (int index = openTags.size() - 1; index >= 0; index--) {
+            String openTag = openTags.get(index);
+            if (openTag.equals("p")) {
+                return true;
+            }
+            if (BUTTON_SCOPE_TAGS.contains(openTag)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean isInList() {
+        return !openTags.isEmpty() && LIST_TAGS.contains(openTags.get(openTags.size() - 1));
+    }
+
+    private boolean isWhitespacePreserved() {
+        for (int index = openTags.size() - 1; index >= Math.max(0, openTags.size() - 6); index--) {
+            if (PRESERVE_WHITESPACE_TAGS.contains(openTags.get(index))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // markdown
+
+    private String markdown() {
+        if (links.isEmpty()) {
+            return output.toString();
+        }
+        StringBuilder markdown = new StringBuilder(output.length() + links.size() * 32);
+        int start = 0;
+        for (Link link : links) {
+            markdown.append(output, start, link.offset);
+            if (link.anchor != null) {
+                appendAnchor(markdown, link.anchor);
+            } else {
+                appendImage(markdown, link.imageAttributes);
+            }
+            start = link.offset;
+        }
+        return markdown.append(output, start, output.length()).toString();
+    }
+
+    private void appendAnchor(StringBuilder output, Capture anchor) {
+        Reference reference = referenceAdjuster.apply(
+                new Reference(nullToEmpty(anchor.attributes.get("href")), anchor.text(), null)
+        );
+        if ("img".equals(anchor.firstChildTag)) {
+            output.append('[');
+            appendImage(output, anchor.firstChildAttributes);
+            output.append(']')
+                  .append('(').append(reference.getResourceLocation()).append(')');
+        } else {
+            output.append('[')
+                  .append(Objects.toString(reference.getText(), reference.getResourceLocation()))
+                  .append("](").append(reference.getResourceLocation()).append(')');
+        }
+    }
+
+    private void appendImage(StringBuilder output, Map<String, String> attributes) {
+        Reference reference = referenceAdjuster.apply(
+                new Reference(nullToEmpty(attributes.get("src")), nullToEmpty(attributes.get("alt")), null)
+        );
+        output.append("![").append(nullToEmpty(reference.getText()))
+              .append("](").append(reference.getResourceLocation()).append(')');
+    }
+
+    // helpers
+
+    private int tagNameEnd(int start) {
+        int index = start;
+        while (index < html.length()) {
+            char c = html.charAt(index);
+            if (Character.isWhitespace(c) || c == '/' || c == '>') {
+                break;
+            }
+            index++;
+        }
+        return index;
+    }
+
+    private int skipWhitespace(int start) {
+        int index = start;
+        while (index < html.length() && Character.isWhitespace(html.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private int indexOfEndTag(String name) {
+        int index = position;
+        while ((index = html.indexOf("</", index)) >= 0) {
+            if (html.regionMatches(true, index + 2, name, 0, name.length())) {
+                return index;
+            }
+            index += 2;
+        }
+        return html.length();
+    }
+
+    private static boolean isAttributeNameEnd(char c) {
+        return Character.isWhitespace(c) || c == '=' || c == '>' || c == '/';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isVoid(String name) {
+        Tag tag = Tag.valueOf(name);
+        return tag.isKnownTag() && tag.isEmpty();
+    }
+
+    private static boolean isBlock(String name) {
+        return Tag.valueOf(name).isBlock();
+    }
+
+    /**
+     * Link or image at the offset of the output.
+     */
+    private static class Link {
+        private final int offset;
+        private final Capture anchor;
+        private final Map<String, String> imageAttributes;
+
+        private Link(int offset, Capture anchor, Map<String, String> imageAttributes) {
+            this.offset = offset;
+            this.anchor = anchor;
+            this.imageAttributes = imageAttributes;
+        }
+    }
+
+    /**
+     * Text of an element which is converted as a whole ({@code a} or {@code pre}),
+     * accumulated the same way as {@code Element.text()} does.
+     */
+    private static class Capture {
+        private final String tag;
+        private final int depth;
+        private final Map<String, String> attributes;
+        private final StringBuilder text = new StringBuilder();
+        private String firstChildTag = null;
+        private Map<String, String> firstChildAttributes = null;
+        // depth of the block closed last, if it is the last node there
+        private int separatorDepth = -1;
+
+        private Capture(String tag, int depth, Map<String, String> attributes) {
+            this.tag = tag;
+            this.depth = depth;
+            this.attributes = attributes;
+        }
+
+        private void appendText(String value, boolean isWhitespacePreserved) {
+            if (isWhitespacePreserved) {
+                text.append(value);
+            } else {
+                appendNormalisedWhitespace(text, value, isLastCharWhitespace());
+            }
+        }
+
+        private void separate() {
+            if (text.length() > 0 && !isLastCharWhitespace()) {
+                text.append(' ');
+            }
+        }
+
+        private boolean isLastCharWhitespace() {
+            return text.length() > 0 && text.charAt(text.length() - 1) == ' ';
+        }
+
+        private String text() {
+            return text.toString().trim();
+        }
+    }
+}
@@ -3,7 +3,7 @@ package org.nantipov.utils.wordhugopress;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "spring.batch.job.enabled=false")
 public class WordHugoPressApplicationTests {
 
     @Test
@@ -0,0 +1,159 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveChunkPolicyTest {
+
+    private static final long MILLIS = 1_000_000;
+
+    private ConvertSettings convertSettings;
+    private TestPolicy policy;
+
+    @BeforeEach
+    public void setUp() {
+        convertSettings = new ConvertSettings();
+        convertSettings.setChunkSize(10);
+        convertSettings.setChunkMaxSize(200);
+        convertSettings.setChunkMaxBytes(1000);
+        convertSettings.setChunkMaxTime(Duration.ofSeconds(2));
+        policy = new TestPolicy(convertSettings);
+    }
+
+    @Test
+    public void sizesChunksByTimePerPost() {
+        // nothing is known about the posts yet
+        assertThat(chunk(100 * MILLIS, "")).isEqualTo(10);
+        // 2 s of 100 ms posts
+        assertThat(chunk(100 * MILLIS, "")).isEqualTo(20);
+        // slower posts than expected close the chunk by time
+        assertThat(chunk(500 * MILLIS, "")).isEqualTo(4);
+    }
+
+    @Test
+    public void clampsChunkSize() {
+        assertThat(chunk(MILLIS, "")).isEqualTo(10);
+        assertThat(chunk(MILLIS, "")).isEqualTo(200);
+
+        policy = new TestPolicy(convertSettings);
+        assertThat(chunk(3000 * MILLIS, "")).isEqualTo(1);
+        assertThat(chunk(3000 * MILLIS, "")).isEqualTo(1);
+    }
+
+    @Test
+    public void closesChunkByBytesOfContent() {
+        // 200 bytes per post
+        assertThat(chunk(0, "x".repeat(100))).isEqualTo(5);
+        assertThat(chunk(0, "")).isEqualTo(10);
+    }
+
+    @Test
+    public void halvesChunksUnderHeapPressure() {
+        policy.heapUnderPressure = true;
+
+        assertThat(chunk(0, "")).isEqualTo(5);
+        // 500 bytes left
+        assertThat(chunk(0, "x".repeat(100))).isEqualTo(3);
+    }
+
+    @Test
+    public void keepsChunkSizeWhenNotAdaptive() {
+        convertSettings.setAdaptiveChunks(false);
+        policy.heapUnderPressure = true;
+
+        assertThat(chunk(3000 * MILLIS, "x".repeat(1000))).isEqualTo(10);
+        assertThat(chunk(3000 * MILLIS, "x".repeat(1000))).isEqualTo(10);
+    }
+
+    @Test
+    public void completesWhenNothingIsLeftToRead() {
+        policy.beforeChunk(null);
+        RepeatContext context = policy.start(null);
+
+        assertThat(policy.isComplete(context, RepeatStatus.CONTINUABLE)).isFalse();
+        assertThat(policy.isComplete(context, RepeatStatus.FINISHED)).isTrue();
+        assertThat(policy.isComplete(context, null)).isTrue();
+        policy.afterChunk(null);
+    }
+
+    @Test
+    public void countsReadPostsOnTheirOwnThread() throws Exception {
+        policy.beforeChunk(null);
+        RepeatContext context = policy.start(null);
+        policy.afterRead(post("x".repeat(100)));
+        policy.update(context);
+
+        // a partition reads a large post meanwhile
+        CompletableFuture.runAsync(() -> {
+            policy.beforeChunk(null);
+            RepeatContext partitionContext = policy.start(null);
+            policy.afterRead(post("x".repeat(1000)));
+            policy.update(partitionContext);
+            assertThat(policy.isComplete(partitionContext)).isTrue();
+            policy.afterChunk(null);
+        }).get();
+        // a post read outside of a chunk
+        CompletableFuture.runAsync(() -> policy.afterRead(post("x".repeat(1000)))).get();
+
+        assertThat(policy.isComplete(context)).isFalse();
+        policy.afterRead(post("x".repeat(100)));
+        policy.update(context);
+        assertThat(policy.isComplete(context)).isFalse();
+        policy.afterChunk(null);
+    }
+
+    /**
+     * Runs one chunk of posts, each read in the given time.
+     *
+     * @return number of posts of the chunk
+     */
+    private int chunk(long nanosPerPost, String content) {
+        policy.beforeChunk(null);
+        RepeatContext context = policy.start(null);
+        int posts = 0;
+        while (!policy.isComplete(context)) {
+            policy.nanos += nanosPerPost;
+            policy.afterRead(post(content));
+            policy.update(context);
+            posts++;
+        }
+        policy.afterChunk(null);
+        return posts;
+    }
+
+    private static Post post(String content) {
+        Post post = new Post();
+        post.setTitle("");
+        post.setContent(content);
+        return post;
+    }
+
+    private static class TestPolicy extends AdaptiveChunkPolicy {
+        private volatile long nanos;
+        private volatile boolean heapUnderPressure;
+
+        private TestPolicy(ConvertSettings convertSettings) {
+            super(convertSettings, new SimpleMeterRegistry());
+        }
+
+        @Override
+        long nanoTime() {
+            return nanos;
+        }
+
+        @Override
+        boolean isHeapUnderPressure() {
+            return heapUnderPressure;
+        }
+    }
+}
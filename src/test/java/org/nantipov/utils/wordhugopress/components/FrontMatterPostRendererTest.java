@@ -0,0 +1,155 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import freemarker.template.Configuration;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.nantipov.utils.wordhugopress.domain.Post;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FrontMatterPostRendererTest {
+
+    private static PostRenderer freemarkerRenderer;
+
+    @BeforeAll
+    public static void setUp() throws IOException {
+        Configuration configuration = new Configuration(Configuration.VERSION_2_3_32);
+        configuration.setClassForTemplateLoading(FrontMatterPostRendererTest.class, "/templates/");
+        configuration.setDefaultEncoding(StandardCharsets.UTF_8.name());
+        freemarkerRenderer = new FreemarkerPostRenderer(configuration.getTemplate("empty-post.ftl"));
+    }
+
+    @Test
+    public void rendersSameAsTemplate() throws IOException {
+        Post post = post();
+        post.setThumbnailFilename("cover-150x150.jpg");
+        post.setTaxonomy(ImmutableSetMultimap.of("post_tag", "java", "post_tag", "hugo",
+                                                 "category", "Notes", "series", "Migration"));
+
+        assertThat(render(new FrontMatterPostRenderer(), post)).isEqualTo(render(freemarkerRenderer, post));
+    }
+
+    @Test
+    public void rendersSameAsTemplateWithoutCoverAndTerms() throws IOException {
+        Post post = post();
+        post.setDraft(true);
+        post.setCreatedAt(new Timestamp(1_500_000_000_120L));
+        post.setTaxonomy(ImmutableSetMultimap.of());
+
+        assertThat(render(new FrontMatterPostRenderer(), post)).isEqualTo(render(freemarkerRenderer, post));
+    }
+
+    @Test
+    public void rendersSameBytesAsTemplateForCorpus() throws IOException {
+        for (Post post : corpus()) {
+            assertThat(render(new FrontMatterPostRenderer(), post).getBytes(StandardCharsets.UTF_8))
+                    .as("post %s", post)
+                    .isEqualTo(render(freemarkerRenderer, post).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("missingValues")
+    public void failsLikeTemplateWithoutRequiredValue(String name, Consumer<Post> removeValue) {
+        Post post = post();
+        post.setThumbnailFilename("cover.jpg");
+        post.setTaxonomy(ImmutableSetMultimap.of());
+        removeValue.accept(post);
+
+        assertThatThrownBy(() -> render(freemarkerRenderer, post)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> render(new FrontMatterPostRenderer(), post)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void rendersSameAsTemplateWithoutThumbnailOrDirectory() throws IOException {
+        Post post = post();
+        post.setPostDirectoryName(null);
+        post.setThumbnailFilename("");
+        post.setTaxonomy(ImmutableSetMultimap.of());
+
+        assertThat(render(new FrontMatterPostRenderer(), post)).isEqualTo(render(freemarkerRenderer, post));
+    }
+
+    static Stream<Arguments> missingValues() {
+        return Stream.of(
+                Arguments.of("title", (Consumer<Post>) post -> post.setTitle(null)),
+                Arguments.of("author", (Consumer<Post>) post -> post.setAuthor(null)),
+                Arguments.of("createdAt", (Consumer<Post>) post -> post.setCreatedAt(null)),
+                Arguments.of("modifiedAt", (Consumer<Post>) post -> post.setModifiedAt(null)),
+                Arguments.of("postDirectoryName", (Consumer<Post>) post -> post.setPostDirectoryName(null)),
+                Arguments.of("taxonomy", (Consumer<Post>) post -> post.setTaxonomy(null)),
+                Arguments.of("processedContent", (Consumer<Post>) post -> post.setProcessedContent(null))
+        );
+    }
+
+    /**
+     * Posts with the combinations of titles, dates, thumbnails and terms the template renders differently.
+     */
+    private static List<Post> corpus() {
+        String[] titles = {"Hello", "", "It's \"quoted\" & <b>bold</b>", "Привет, 世界 😀",
+                           "a\\b: ${x} #{y}"};
+        long[] times = {0L, 1_500_000_000_000L, 1_500_000_000_120L, 1_500_000_000_005L, 1_500_000_000_999L,
+                        -1_000_000_000_001L, 1_679_792_400_000L, 253_402_214_400_000L};
+        String[] thumbnails = {null, "", "cover-150x150.jpg"};
+        List<ImmutableSetMultimap<String, String>> taxonomies = List.of(
+                ImmutableSetMultimap.of(),
+                ImmutableSetMultimap.of("category", "Notes"),
+                ImmutableSetMultimap.of("post_tag", "java", "post_tag", "it's", "category", "Ünïcode",
+                                        "series", "Migration", "post_format", "")
+        );
+        List<Post> posts = new ArrayList<>();
+        int id = 0;
+        for (String title : titles) {
+            for (long time : times) {
+                for (String thumbnail : thumbnails) {
+                    for (ImmutableSetMultimap<String, String> taxonomy : taxonomies) {
+                        Post post = post();
+                        post.setId(++id);
+                        post.setTitle(title);
+                        post.setAuthor(title.isEmpty() ? "" : "Author " + title);
+                        post.setCreatedAt(new Timestamp(time));
+                        post.setModifiedAt(new Timestamp(time + id));
+                        post.setDraft(id % 2 == 0);
+                        post.setThumbnailFilename(thumbnail);
+                        post.setTaxonomy(taxonomy);
+                        post.setProcessedContent(id % 3 == 0 ? "" : "Some *text* of " + title + "\n");
+                        posts.add(post);
+                    }
+                }
+            }
+        }
+        return posts;
+    }
+
+    private static Post post() {
+        Post post = new Post();
+        post.setId(1);
+        post.setTitle("Привет, world");
+        post.setAuthor("Author");
+        post.setCreatedAt(new Timestamp(1_500_000_000_000L));
+        post.setModifiedAt(new Timestamp(1_600_000_000_000L));
+        post.setPostDirectoryName("privet-world");
+        post.setProcessedContent("Some *text*\n\n![image](image.png)");
+        return post;
+    }
+
+    private static String render(PostRenderer renderer, Post post) throws IOException {
+        StringWriter out = new StringWriter();
+        renderer.render(post, out);
+        return out.toString();
+    }
+}
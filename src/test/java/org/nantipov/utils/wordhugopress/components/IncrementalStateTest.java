@@ -0,0 +1,173 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.nantipov.utils.wordhugopress.domain.Watermark;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IncrementalStateTest {
+
+    private static final String SOURCE_NAME = "blog";
+
+    @TempDir
+    Path dir;
+
+    private Path contentDir;
+    private ConvertSettings convertSettings;
+    private SourcesSettings sourcesSettings;
+    private SourceDataSources sourceDataSources;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        contentDir = Files.createDirectories(dir.resolve("content"));
+        convertSettings = new ConvertSettings();
+        convertSettings.setIncremental(true);
+        convertSettings.setStateDir(dir.resolve("state"));
+
+        SourcesSettings.Source source = new SourcesSettings.Source();
+        source.getDatabase().setUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        source.getConnection().setReadOnly(false);
+        sourcesSettings = new SourcesSettings();
+        sourcesSettings.getSources().put(SOURCE_NAME, source);
+        sourceDataSources = new SourceDataSources(sourcesSettings);
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(sourceDataSources.get(SOURCE_NAME));
+        jdbcTemplate.execute("CREATE TABLE wp_posts (ID BIGINT PRIMARY KEY, post_type VARCHAR(20))");
+        jdbcTemplate.execute("INSERT INTO wp_posts VALUES (1, 'post'), (4, 'post'), (6, 'page')");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        sourceDataSources.destroy();
+    }
+
+    @Test
+    public void removesDirectoriesOfRenamedAndDeletedPosts() throws IOException {
+        writeState("1\tkept", "2\tdeleted", "4\told-name");
+        createPage("kept");
+        createPage("deleted");
+        createPage("old-name");
+        createPage("new-name");
+
+        IncrementalState state = new IncrementalState(convertSettings, sourcesSettings, sourceDataSources, contentDir);
+        state.written(post(4, "new-name"));
+        state.afterJob(completedJob());
+
+        assertThat(contentDir.resolve("kept")).exists();
+        assertThat(contentDir.resolve("new-name")).exists();
+        assertThat(contentDir.resolve("deleted")).doesNotExist();
+        assertThat(contentDir.resolve("old-name")).doesNotExist();
+        assertThat(Files.readAllLines(convertSettings.getStateDir().resolve(SOURCE_NAME + ".state")))
+                .contains("1\tkept", "4\tnew-name")
+                .noneMatch(line -> line.startsWith("2\t"));
+    }
+
+    @Test
+    public void keepsDirectoryStillUsedByAnotherPost() throws IOException {
+        writeState("1\tshared", "4\told-name");
+        createPage("shared");
+
+        IncrementalState state = new IncrementalState(convertSettings, sourcesSettings, sourceDataSources, contentDir);
+        state.written(post(1, "renamed"));
+        state.written(post(4, "shared"));
+        state.afterJob(completedJob());
+
+        assertThat(contentDir.resolve("shared")).exists();
+    }
+
+    @Test
+    public void neverRemovesContentDirectoryOrOutsideOfIt() throws IOException {
+        // untitled posts had an empty directory name before
+        writeState("2\t", "3\t.", "5\t../outside", "7\tnested/page");
+        createPage("other");
+        createPage("nested/page");
+        Path outside = Files.createDirectories(dir.resolve("outside"));
+
+        IncrementalState state = new IncrementalState(convertSettings, sourcesSettings, sourceDataSources, contentDir);
+        state.afterJob(completedJob());
+
+        assertThat(contentDir.resolve("other/index.md")).exists();
+        assertThat(contentDir.resolve("nested/page")).exists();
+        assertThat(outside).exists();
+    }
+
+    @Test
+    public void keepsLatestModifiedPostAsWatermark() {
+        IncrementalState state = new IncrementalState(convertSettings, sourcesSettings, sourceDataSources, contentDir);
+        assertThat(state.getWatermark(SOURCE_NAME)).isEmpty();
+        state.written(post(4, "four"));
+        state.written(post(1, "one"));
+        state.afterJob(completedJob());
+
+        IncrementalState nextState = new IncrementalState(convertSettings, sourcesSettings, sourceDataSources,
+                                                          contentDir);
+        assertThat(nextState.getWatermark(SOURCE_NAME))
+                .contains(new Watermark(Timestamp.valueOf("2020-01-01 00:00:00"), 4));
+    }
+
+    @Test
+    public void readsWatermarkWithoutId() throws IOException {
+        Timestamp modifiedAt = Timestamp.valueOf("2020-01-01 00:00:00");
+        writeState("watermark\t" + modifiedAt.getTime(), "1\tkept");
+
+        IncrementalState state = new IncrementalState(convertSettings, sourcesSettings, sourceDataSources, contentDir);
+
+        assertThat(state.getWatermark(SOURCE_NAME)).contains(new Watermark(modifiedAt, Long.MIN_VALUE));
+    }
+
+    @Test
+    public void keepsEverythingWhenJobFailed() throws IOException {
+        writeState("2\tdeleted");
+        createPage("deleted");
+
+        IncrementalState state = new IncrementalState(convertSettings, sourcesSettings, sourceDataSources, contentDir);
+        JobExecution jobExecution = new JobExecution(1L);
+        jobExecution.setStatus(BatchStatus.FAILED);
+        state.afterJob(jobExecution);
+
+        assertThat(contentDir.resolve("deleted")).exists();
+    }
+
+    private void writeState(String... lines) throws IOException {
+        Files.createDirectories(convertSettings.getStateDir());
+        Files.write(convertSettings.getStateDir().resolve(SOURCE_NAME + ".state"),
+                    List.of(lines), StandardCharsets.UTF_8);
+    }
+
+    private void createPage(String postDirectoryName) throws IOException {
+        Path page = Files.createDirectories(contentDir.resolve(postDirectoryName));
+        Files.write(page.resolve("index.md"), "page".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Post post(long id, String postDirectoryName) {
+        Post post = new Post();
+        post.setId(id);
+        post.setSourceName(SOURCE_NAME);
+        post.setModifiedAt(Timestamp.valueOf("2020-01-01 00:00:00"));
+        post.setPostDirectoryName(postDirectoryName);
+        return post;
+    }
+
+    private static JobExecution completedJob() {
+        JobExecution jobExecution = new JobExecution(1L);
+        jobExecution.setStatus(BatchStatus.COMPLETED);
+        return jobExecution;
+    }
+}
@@ -0,0 +1,55 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nantipov.utils.wordhugopress.config.MediaStoreSettings;
+import org.nantipov.utils.wordhugopress.domain.LocalCopyMode;
+import org.nantipov.utils.wordhugopress.domain.ResourceTransferRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MediaStoreTest {
+
+    private static final byte[] CONTENT = "uploaded file".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void storesSameContentOnce() throws Exception {
+        Path upload1 = Files.write(dir.resolve("upload1.jpg"), CONTENT);
+        Path upload2 = Files.write(dir.resolve("upload2.jpg"), CONTENT);
+        Path post1 = Files.createDirectories(dir.resolve("post1"));
+        Path post2 = Files.createDirectories(dir.resolve("post2"));
+        MediaStoreSettings settings = settings();
+        MediaStore store = new MediaStore(settings);
+
+        store.put(request(upload1, "a.jpg"), post1.resolve("a.jpg"));
+        store.put(request(upload2, "b.jpg"), post2.resolve("b.jpg"));
+        store.flush();
+
+        assertThat(post1.resolve("a.jpg")).hasBinaryContent(CONTENT);
+        assertThat(post2.resolve("b.jpg")).hasBinaryContent(CONTENT);
+        assertThat(Files.isSameFile(post1.resolve("a.jpg"), post2.resolve("b.jpg"))).isTrue();
+        try (Stream<Path> files = Files.walk(settings.getDir())) {
+            assertThat(files.filter(file -> file.toString().endsWith(".jpg"))).hasSize(1);
+        }
+        assertThat(Files.readAllLines(settings.getDir().resolve(".index"))).hasSize(2);
+    }
+
+    private static ResourceTransferRequest request(Path upload, String localFilename) {
+        return new ResourceTransferRequest(upload.toUri(), localFilename, LocalCopyMode.TRANSFER);
+    }
+
+    private MediaStoreSettings settings() {
+        MediaStoreSettings settings = new MediaStoreSettings();
+        settings.setEnabled(true);
+        settings.setDir(dir.resolve("store"));
+        return settings;
+    }
+}
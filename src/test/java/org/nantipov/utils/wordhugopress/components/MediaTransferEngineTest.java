@@ -0,0 +1,243 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.MediaStoreSettings;
+import org.nantipov.utils.wordhugopress.config.OutputSettings;
+import org.nantipov.utils.wordhugopress.config.TransferSettings;
+import org.nantipov.utils.wordhugopress.domain.LocalCopyMode;
+import org.nantipov.utils.wordhugopress.domain.ResourceTransferRequest;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MediaTransferEngineTest {
+
+    private static final byte[] IMAGE = "not really an image".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path localDir;
+
+    private HttpServer server;
+    private HttpServer slowServer;
+    private TransferSettings settings;
+    private MediaTransferEngine engine;
+    private final AtomicInteger flakyRequests = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok.png", exchange -> respond(exchange, 200, IMAGE));
+        server.createContext("/flaky.png", exchange -> {
+            if (flakyRequests.incrementAndGet() == 1) {
+                respond(exchange, 503, new byte[0]);
+            } else {
+                respond(exchange, 200, IMAGE);
+            }
+        });
+        server.createContext("/missing.png", exchange -> respond(exchange, 404, new byte[0]));
+        server.start();
+
+        settings = new TransferSettings();
+        settings.setThreads(2);
+        settings.setPerHostLimit(1);
+        settings.setQueueCapacity(1);
+        settings.setMaxAttempts(2);
+        settings.setInitialBackoff(Duration.ofMillis(10));
+        engine = engine(settings);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        engine.destroy();
+        server.stop(0);
+        if (slowServer != null) {
+            slowServer.stop(0);
+        }
+    }
+
+    @Test
+    public void deliversAllRequestsBeforeCompletion() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            engine.submit(request("/ok.png", "ok-" + i + ".png"), localDir);
+        }
+        engine.submit(request("/flaky.png", "flaky.png"), localDir);
+
+        engine.awaitCompletion();
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(localDir.resolve("ok-" + i + ".png")).hasBinaryContent(IMAGE);
+        }
+        assertThat(localDir.resolve("flaky.png")).hasBinaryContent(IMAGE);
+        assertThat(flakyRequests.get()).isEqualTo(2);
+        assertThat(engine.getDelivered()).isEqualTo(6);
+        assertThat(engine.getFailed()).isZero();
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        engine.submit(request("/missing.png", "missing.png"), localDir);
+
+        engine.awaitCompletion();
+
+        assertThat(localDir.resolve("missing.png")).doesNotExist();
+        try (var files = Files.list(localDir)) {
+            assertThat(files).isEmpty();
+        }
+        assertThat(engine.getFailed()).isEqualTo(1);
+    }
+
+    @Test
+    public void slowHostDoesNotHoldTransfersOfOtherHosts() throws Exception {
+        CountDownLatch slowResponses = new CountDownLatch(1);
+        AtomicInteger slowRequests = new AtomicInteger();
+        AtomicInteger maxSlowRequests = new AtomicInteger();
+        slowServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        slowServer.setExecutor(Executors.newCachedThreadPool());
+        slowServer.createContext("/slow.png", exchange -> {
+            maxSlowRequests.accumulateAndGet(slowRequests.incrementAndGet(), Math::max);
+            try {
+                slowResponses.await(10, TimeUnit.SECONDS);
+                respond(exchange, 200, IMAGE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                slowRequests.decrementAndGet();
+            }
+        });
+        slowServer.start();
+        settings.setQueueCapacity(10);
+        engine.destroy();
+        engine = engine(settings);
+
+        for (int i = 0; i < 3; i++) {
+            engine.submit(request(slowServer, "/slow.png", "slow-" + i + ".png"), localDir);
+        }
+        for (int i = 0; i < 3; i++) {
+            engine.submit(request("/ok.png", "ok-" + i + ".png"), localDir);
+        }
+
+        awaitDelivered(3);
+        assertThat(slowResponses.getCount()).isEqualTo(1);
+        slowResponses.countDown();
+        engine.awaitCompletion();
+
+        assertThat(engine.getDelivered()).isEqualTo(6);
+        assertThat(maxSlowRequests.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void retryBackoffDoesNotHoldThreads() throws Exception {
+        settings.setThreads(1);
+        settings.setPerHostLimit(4);
+        settings.setQueueCapacity(10);
+        settings.setInitialBackoff(Duration.ofSeconds(2));
+        engine.destroy();
+        engine = engine(settings);
+
+        engine.submit(request("/flaky.png", "flaky.png"), localDir);
+        for (int i = 0; i < 3; i++) {
+            engine.submit(request("/ok.png", "ok-" + i + ".png"), localDir);
+        }
+
+        awaitDelivered(3);
+        assertThat(flakyRequests.get()).isEqualTo(1);
+        engine.awaitCompletion();
+
+        assertThat(localDir.resolve("flaky.png")).hasBinaryContent(IMAGE);
+        assertThat(flakyRequests.get()).isEqualTo(2);
+        assertThat(engine.getDelivered()).isEqualTo(4);
+    }
+
+    @Test
+    public void reportsLostMediaInExitStatus() throws Exception {
+        StepExecution stepExecution = stepExecution();
+        engine.beforeStep(stepExecution);
+        engine.submit(request("/missing.png", "missing.png"), localDir);
+
+        ExitStatus exitStatus = engine.afterStep(stepExecution);
+
+        assertThat(exitStatus.getExitCode()).isEqualTo(MediaTransferEngine.EXIT_CODE_MEDIA_FAILURES);
+        assertThat(stepExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        StepExecution nextStepExecution = stepExecution();
+        engine.beforeStep(nextStepExecution);
+        engine.submit(request("/ok.png", "ok.png"), localDir);
+        assertThat(engine.afterStep(nextStepExecution)).isEqualTo(ExitStatus.COMPLETED);
+    }
+
+    @Test
+    public void failsStepOnLostMediaWhenConfigured() throws Exception {
+        settings.setFailOnErrors(true);
+        StepExecution stepExecution = stepExecution();
+        engine.beforeStep(stepExecution);
+        engine.submit(request("/missing.png", "missing.png"), localDir);
+
+        ExitStatus exitStatus = engine.afterStep(stepExecution);
+
+        assertThat(exitStatus.getExitCode()).isEqualTo(ExitStatus.FAILED.getExitCode());
+        assertThat(stepExecution.getStatus()).isEqualTo(BatchStatus.FAILED);
+    }
+
+    private MediaTransferEngine engine(TransferSettings settings) {
+        return new MediaTransferEngine(settings, new MediaStore(new MediaStoreSettings()),
+                                       new OutputArchive(new OutputSettings(), new ConvertSettings(), localDir, null),
+                                       new SimpleMeterRegistry());
+    }
+
+    private void awaitDelivered(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (engine.getDelivered() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(engine.getDelivered()).isEqualTo(count);
+    }
+
+    private ResourceTransferRequest request(String path, String localFilename) {
+        return request(server, path, localFilename);
+    }
+
+    private static ResourceTransferRequest request(HttpServer server, String path, String localFilename) {
+        return new ResourceTransferRequest(
+                URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path),
+                localFilename,
+                LocalCopyMode.STREAM
+        );
+    }
+
+    private static StepExecution stepExecution() {
+        StepExecution stepExecution = new StepExecution("convert", new JobExecution(1L));
+        stepExecution.setStatus(BatchStatus.COMPLETED);
+        stepExecution.setExitStatus(ExitStatus.COMPLETED);
+        return stepExecution;
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.MediaStoreSettings;
+import org.nantipov.utils.wordhugopress.config.OutputSettings;
+import org.nantipov.utils.wordhugopress.config.TransferSettings;
+import org.nantipov.utils.wordhugopress.domain.LocalCopyMode;
+import org.nantipov.utils.wordhugopress.domain.ResourceTransferRequest;
+import org.nantipov.utils.wordhugopress.tools.ArchiveExtractor;
+import org.springframework.batch.core.JobExecution;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OutputArchiveTest {
+
+    private static final int THREADS = 4;
+    private static final int POSTS_PER_THREAD = 50;
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @EnumSource(value = OutputSettings.Mode.class, names = {"TAR", "ZIP"})
+    public void extractsConcurrentlyWrittenPagesAndMedia(OutputSettings.Mode mode) throws Exception {
+        Path contentDir = dir.resolve("content");
+        OutputSettings outputSettings = new OutputSettings();
+        outputSettings.setMode(mode);
+        outputSettings.setArchive(dir.resolve("output/content.archive"));
+        OutputArchive outputArchive = new OutputArchive(outputSettings, new ConvertSettings(), contentDir,
+                                                        new RestartState(null));
+        outputArchive.beforeJob(new JobExecution(1L));
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> writes = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int first = thread * POSTS_PER_THREAD;
+            writes.add(executor.submit(() -> {
+                for (int i = first; i < first + POSTS_PER_THREAD; i++) {
+                    outputArchive.write(contentDir.resolve("post-" + i + "/index.md"), page(i));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get();
+        }
+        executor.shutdown();
+        // an entry is written once
+        outputArchive.write(contentDir.resolve("post-0/index.md"), "overwritten");
+
+        Path image = Files.write(dir.resolve("image.png"), "not really an image".getBytes(StandardCharsets.UTF_8));
+        TransferSettings transferSettings = new TransferSettings();
+        transferSettings.setThreads(2);
+        MediaTransferEngine engine = new MediaTransferEngine(transferSettings,
+                                                             new MediaStore(new MediaStoreSettings()),
+                                                             outputArchive, new SimpleMeterRegistry());
+        try {
+            for (int i = 0; i < 3; i++) {
+                engine.submit(new ResourceTransferRequest(image.toUri(), "image-" + i + ".png", LocalCopyMode.STREAM),
+                              contentDir.resolve("post-" + i));
+            }
+            engine.awaitCompletion();
+        } finally {
+            engine.destroy();
+        }
+        assertThat(engine.getDelivered()).isEqualTo(3);
+        assertThat(outputArchive.contains(contentDir.resolve("post-1/image-1.png"))).isTrue();
+
+        outputArchive.afterJob(new JobExecution(1L));
+        assertThat(outputArchive.getSpoolDir()).isNull();
+
+        Path targetDir = dir.resolve("extracted");
+        long files = ArchiveExtractor.extract(outputSettings.getArchive(), targetDir, THREADS);
+
+        assertThat(files).isEqualTo(THREADS * POSTS_PER_THREAD + 3);
+        for (int i = 0; i < THREADS * POSTS_PER_THREAD; i++) {
+            assertThat(targetDir.resolve("post-" + i + "/index.md")).hasContent(page(i));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertThat(targetDir.resolve("post-" + i + "/image-" + i + ".png")).hasSameBinaryContentAs(image);
+        }
+    }
+
+    @Test
+    public void writesEntryAgainAfterFailedWrite() throws Exception {
+        Path contentDir = dir.resolve("content");
+        OutputSettings outputSettings = new OutputSettings();
+        outputSettings.setMode(OutputSettings.Mode.TAR);
+        outputSettings.setArchive(dir.resolve("output/content.tar"));
+        OutputArchive outputArchive = new OutputArchive(outputSettings, new ConvertSettings(), contentDir,
+                                                        new RestartState(null));
+        outputArchive.beforeJob(new JobExecution(1L));
+        Path imageFile = contentDir.resolve("post/image.png");
+
+        assertThatThrownBy(() -> outputArchive.copy(imageFile, dir.resolve("missing.png")))
+                .isInstanceOf(IOException.class);
+        assertThat(outputArchive.contains(imageFile)).isFalse();
+
+        Path image = Files.write(dir.resolve("image.png"), "not really an image".getBytes(StandardCharsets.UTF_8));
+        assertThat(outputArchive.copy(imageFile, image)).isEqualTo(Files.size(image));
+        assertThat(outputArchive.contains(imageFile)).isTrue();
+        assertThat(outputArchive.copy(imageFile, image)).isZero();
+        outputArchive.afterJob(new JobExecution(1L));
+
+        Path targetDir = dir.resolve("extracted");
+        assertThat(ArchiveExtractor.extract(outputSettings.getArchive(), targetDir, 1)).isEqualTo(1);
+        assertThat(targetDir.resolve("post/image.png")).hasSameBinaryContentAs(image);
+    }
+
+    @Test
+    public void namesDefaultArchiveByMode() {
+        OutputSettings outputSettings = new OutputSettings();
+        outputSettings.setMode(OutputSettings.Mode.ZIP);
+        assertThat(outputSettings.getArchive()).isEqualTo(Paths.get("output/content.zip"));
+        outputSettings.setMode(OutputSettings.Mode.TAR);
+        assertThat(outputSettings.getArchive()).isEqualTo(Paths.get("output/content.tar"));
+    }
+
+    private static String page(int i) {
+        return "---\ntitle: Post " + i + "\n---\n" + "Content of post " + i + " ü\n".repeat(i);
+    }
+}
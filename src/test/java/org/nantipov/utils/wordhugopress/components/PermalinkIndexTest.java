@@ -0,0 +1,129 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PermalinkIndexTest {
+
+    private static final String SOURCE_NAME = "blog";
+
+    @TempDir
+    Path stateDir;
+
+    private ConvertSettings convertSettings;
+    private SourcesSettings.Source source;
+    private SourcesSettings sourcesSettings;
+    private SourceDataSources sourceDataSources;
+
+    @BeforeEach
+    public void setUp() {
+        convertSettings = new ConvertSettings();
+        convertSettings.setStateDir(stateDir);
+
+        source = new SourcesSettings.Source();
+        source.getDatabase().setUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        source.getConnection().setReadOnly(false);
+        sourcesSettings = new SourcesSettings();
+        sourcesSettings.getSources().put(SOURCE_NAME, source);
+        sourceDataSources = new SourceDataSources(sourcesSettings);
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(sourceDataSources.get(SOURCE_NAME));
+        jdbcTemplate.execute("CREATE TABLE wp_posts (ID BIGINT PRIMARY KEY, post_type VARCHAR(20), " +
+                             "post_title TEXT, post_name VARCHAR(200))");
+        jdbcTemplate.execute("INSERT INTO wp_posts VALUES " +
+                             "(1, 'post', 'First', 'first'), " +
+                             "(2, 'post', 'Two', '2'), " +
+                             "(10, 'post', 'Hello, world', 'hello-world'), " +
+                             "(11, 'post', 'Привет', '%d0%bf%d1%80%d0%b8%d0%b2%d0%b5%d1%82'), " +
+                             "(12, 'page', 'About', 'about'), " +
+                             "(2020, 'post', 'Year', 'year')");
+        jdbcTemplate.execute("CREATE TABLE wp_postmeta (meta_id BIGINT PRIMARY KEY, post_id BIGINT, " +
+                             "meta_key VARCHAR(255), meta_value TEXT)");
+        jdbcTemplate.execute("INSERT INTO wp_postmeta VALUES " +
+                             "(1, 10, '_wp_old_slug', 'hello'), " +
+                             "(2, 11, '_wp_old_slug', 'hello-world'), " +
+                             "(3, 10, '_edit_lock', 'first')");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        sourceDataSources.destroy();
+    }
+
+    @Test
+    public void resolvesPostsByIdNameAndFormerName() throws MalformedURLException {
+        PermalinkIndex permalinkIndex = permalinkIndex();
+
+        assertThat(resolve(permalinkIndex, "/?p=10")).isEqualTo("hello-world");
+        assertThat(resolve(permalinkIndex, "/index.php?lang=en&p=10")).isEqualTo("hello-world");
+        assertThat(resolve(permalinkIndex, "/archives/10")).isEqualTo("hello-world");
+        assertThat(resolve(permalinkIndex, "/10/")).isEqualTo("hello-world");
+        assertThat(resolve(permalinkIndex, "/2020/01/hello-world/")).isEqualTo("hello-world");
+        assertThat(resolve(permalinkIndex, "/news/Hello-World")).isEqualTo("hello-world");
+        // the current name of a post wins over the former name of another one
+        assertThat(resolve(permalinkIndex, "/2019/05/hello/")).isEqualTo("hello-world");
+        assertThat(resolve(permalinkIndex, "/%D0%BF%D1%80%D0%B8%D0%B2%D0%B5%D1%82/")).isEqualTo("privet");
+        assertThat(resolve(permalinkIndex, "/привет/")).isEqualTo("privet");
+    }
+
+    @Test
+    public void resolvesNoDateArchivesListPagesOrOtherPosts() throws MalformedURLException {
+        PermalinkIndex permalinkIndex = permalinkIndex();
+
+        assertThat(resolve(permalinkIndex, "/2020/01/")).isNull();
+        assertThat(resolve(permalinkIndex, "/2020/01/10/")).isNull();
+        assertThat(resolve(permalinkIndex, "/page/2/")).isNull();
+        assertThat(resolve(permalinkIndex, "/category/news/page/10/")).isNull();
+        assertThat(resolve(permalinkIndex, "/tag/travel/10")).isNull();
+        assertThat(resolve(permalinkIndex, "/archives/99")).isNull();
+        assertThat(resolve(permalinkIndex, "/?page_id=10")).isNull();
+        assertThat(resolve(permalinkIndex, "/about/")).isNull();
+        assertThat(resolve(permalinkIndex, "/")).isNull();
+    }
+
+    @Test
+    public void stripsPathOfBaseUrl() throws MalformedURLException {
+        source.setWordpressRemoteBaseUrl("https://example.org/blog/");
+        PermalinkIndex permalinkIndex = permalinkIndex();
+
+        assertThat(resolve(permalinkIndex, "/blog/10")).isEqualTo("hello-world");
+        assertThat(resolve(permalinkIndex, "/blog/archives/10/")).isEqualTo("hello-world");
+        assertThat(resolve(permalinkIndex, "/blog/2020/01/hello-world/")).isEqualTo("hello-world");
+        assertThat(resolve(permalinkIndex, "/blog/page/2/")).isNull();
+        assertThat(resolve(permalinkIndex, "/blog/")).isNull();
+    }
+
+    @Test
+    public void resolvesNothingWhenDisabled() throws MalformedURLException {
+        convertSettings.setPermalinkIndex(false);
+        PermalinkIndex permalinkIndex = permalinkIndex();
+
+        assertThat(resolve(permalinkIndex, "/?p=10")).isNull();
+        assertThat(resolve(permalinkIndex, "/hello-world/")).isNull();
+    }
+
+    private PermalinkIndex permalinkIndex() {
+        SlugService slugService = new SlugService(convertSettings, sourcesSettings, sourceDataSources);
+        PermalinkIndex permalinkIndex = new PermalinkIndex(convertSettings, sourcesSettings, sourceDataSources,
+                                                           slugService);
+        slugService.beforeJob(null);
+        permalinkIndex.beforeJob(null);
+        return permalinkIndex;
+    }
+
+    private String resolve(PermalinkIndex permalinkIndex, String link) throws MalformedURLException {
+        return permalinkIndex.resolve(new URL("https://example.org" + link), source);
+    }
+}
@@ -0,0 +1,110 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostIdRangePartitionerTest {
+
+    private SourcesSettings sourcesSettings;
+    private SourceDataSources sourceDataSources;
+
+    @BeforeEach
+    public void setUp() {
+        sourcesSettings = new SourcesSettings();
+        sourceDataSources = new SourceDataSources(sourcesSettings);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        sourceDataSources.destroy();
+    }
+
+    @Test
+    public void skipsSourceWithoutPosts() {
+        addSource("empty", "(1, 'page')");
+
+        assertThat(partitioner().partition(4)).isEmpty();
+    }
+
+    @Test
+    public void keepsSinglePostInOnePartition() {
+        addSource("blog", "(42, 'post'), (43, 'page')");
+
+        Map<String, ExecutionContext> partitions = partitioner().partition(4);
+
+        assertThat(partitions).containsOnlyKeys("source-blog-0");
+        assertRange(partitions.get("source-blog-0"), "blog", 41, 42);
+    }
+
+    @Test
+    public void coversEveryPostOfNonContiguousIdsOnce() {
+        List<Long> ids = List.of(5L, 6L, 7L, 100L, 1000L, 1001L);
+        addSource("blog", ids.stream().map(id -> "(" + id + ", 'post')").collect(Collectors.joining(", ")));
+
+        Map<String, ExecutionContext> partitions = partitioner().partition(4);
+
+        assertThat(partitions).hasSize(4);
+        assertRange(partitions.get("source-blog-0"), "blog", 4, 254);
+        assertRange(partitions.get("source-blog-3"), "blog", 754, 1001);
+        for (long id : ids) {
+            assertThat(partitions.values().stream().filter(context -> isInRange(context, id))).hasSize(1);
+        }
+    }
+
+    @Test
+    public void splitsEverySourceOnItsOwn() {
+        addSource("blog", "(1, 'post'), (2, 'post'), (3, 'post'), (4, 'post')");
+        addSource("news", "(10, 'post'), (30, 'post')");
+        SourcesSettings.Source export = new SourcesSettings.Source();
+        export.setType(SourcesSettings.SourceType.WXR);
+        sourcesSettings.getSources().put("export", export);
+
+        Map<String, ExecutionContext> partitions = partitioner().partition(2);
+
+        assertThat(partitions).containsOnlyKeys("source-blog-0", "source-blog-1", "source-news-0", "source-news-1",
+                                                "source-export-0");
+        assertRange(partitions.get("source-blog-0"), "blog", 0, 2);
+        assertRange(partitions.get("source-blog-1"), "blog", 2, 4);
+        assertRange(partitions.get("source-news-0"), "news", 9, 20);
+        assertRange(partitions.get("source-news-1"), "news", 20, 30);
+        // an export file is not split
+        assertRange(partitions.get("source-export-0"), "export", -1, Long.MAX_VALUE);
+    }
+
+    private PostIdRangePartitioner partitioner() {
+        return new PostIdRangePartitioner(sourcesSettings, sourceDataSources);
+    }
+
+    private void addSource(String sourceName, String rows) {
+        SourcesSettings.Source source = new SourcesSettings.Source();
+        source.getDatabase().setUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        source.getConnection().setReadOnly(false);
+        sourcesSettings.getSources().put(sourceName, source);
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(sourceDataSources.get(sourceName));
+        jdbcTemplate.execute("CREATE TABLE wp_posts (ID BIGINT PRIMARY KEY, post_type VARCHAR(20))");
+        jdbcTemplate.execute("INSERT INTO wp_posts VALUES " + rows);
+    }
+
+    private static void assertRange(ExecutionContext context, String sourceName, long lastId, long maxId) {
+        assertThat(context.getString(PostIdRangePartitioner.KEY_SOURCE_NAME)).isEqualTo(sourceName);
+        assertThat(context.getLong(PostIdRangePartitioner.KEY_LAST_ID)).isEqualTo(lastId);
+        assertThat(context.getLong(PostIdRangePartitioner.KEY_MAX_ID)).isEqualTo(maxId);
+    }
+
+    private static boolean isInRange(ExecutionContext context, long id) {
+        return context.getLong(PostIdRangePartitioner.KEY_LAST_ID) < id &&
+               id <= context.getLong(PostIdRangePartitioner.KEY_MAX_ID);
+    }
+}
@@ -0,0 +1,174 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.nantipov.utils.wordhugopress.domain.Reference;
+import org.nantipov.utils.wordhugopress.tools.StreamingMarkdownConverter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostItemProcessorTest {
+
+    private static final String[] TEXTS = {
+            "text", " ", "\n", "a &amp; b", "&lt;x&gt;", "&nbsp;", "&copy", "&#169;", "&#x41;", "&notanentity;",
+            "x < y", "Привет", "  two  spaces ", "&quot;q&quot;", "&amp", "1 > 0"
+    };
+    private static final String[] LEAVES = {
+            "<br>", "<br/>", "<hr>", "<img src=\"i.png\" alt=\"&quot;alt&quot; &amp; more\">", "<img src=q.png>",
+            "<!-- note -->"
+    };
+    private static final String[] TAGS = {
+            "p", "p", "li", "ul", "ol", "b", "em", "a", "pre", "div", "span", "h2", "blockquote", "code", "figure",
+            "figcaption", "strong"
+    };
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "Hello   \n world",
+            "<p>One</p>\n<p>Two &amp; three&nbsp;four</p>",
+            "<ul>\n<li>a</li>\n<li>b <b>bold</b></li>\n</ul>",
+            "<ol><li>x<li>y</ol>after",
+            "<ul><li>outer<ul><li>inner</li></ul></li></ul>",
+            "<a href=\"http://example.org/a.png\">link <b>text</b></a> tail",
+            "<a href='http://example.org/'><img src=\"i.png\" alt=\"Alt &quot;q&quot;\"></a>",
+            "<a href=http://example.org/p/>text <img src=j.png> more</a>",
+            "<pre>\n  code\n   here</pre>",
+            "<pre><code>x &lt; y\n  z</code></pre>",
+            "line<br>break<br/>again",
+            "<p>open <div>block</div> after",
+            "<script>var a = '<p>';</script><p>s</p>",
+            "<h2>Title</h2><p>a<br>b</p>",
+            "<a href=\"u\">a<div>b</div>c</a>",
+            "<figure><img src=\"f.png\"><figcaption>caption</figcaption></figure>",
+            "x < y and y > z",
+            // misnested formatting
+            "<b><i>x</b>y</i>",
+            "<p>a<b>b</p>c",
+            "<a href=\"u\">a<a href=\"v\">b</a>",
+            "<p><a href=\"u\">a<div>b</div>c</a>",
+            // unclosed paragraphs and list items
+            "<p>one<p>two<ul><li>a<li>b<p>c</ul>d",
+            "<ol><li><p>x</ol><p>y</li>",
+            "<h2><p>x<h2>y</h2>",
+            // tables
+            "<table><tr><td>a</td><td>b</td></tr></table>",
+            "<p>x<table><tr><td>y</table>z",
+            "<table>text<a href=\"u\">link</a><tr><td>cell</table>",
+            // entities
+            "&copy; &copy &amp &lt;&gt; &#x41;&#65; &notit; &nbsp;&shy;&#8203;",
+            "<a href=\"http://example.org/?a=1&amp;b=2&copy=3\">q&amp;a</a>",
+            "<img alt=\"&lt;&quot;\" src=x&amp;y>",
+            "<pre>&lt;p&gt;\n\t&amp;</pre>",
+            "<!DOCTYPE html><p>x</p>",
+            "a </ b> <? c ?>"
+    })
+    public void streamingConverterProducesSameMarkdown(String content) {
+        assertThat(convert(content, ConvertSettings.ContentConverter.STREAMING))
+                .isEqualTo(convert(content, ConvertSettings.ContentConverter.JSOUP));
+    }
+
+    /**
+     * The streaming converter either produces the same Markdown as the document conversion, or declines the HTML.
+     */
+    @Test
+    public void streamingConverterMatchesDocumentConversionOrDeclines() {
+        PostItemProcessor processor = processor(ConvertSettings.ContentConverter.JSOUP);
+        Random random = new Random(20231017);
+        int converted = 0;
+        for (int i = 0; i < 2000; i++) {
+            String content = generate(random);
+            Optional<String> markdown = StreamingMarkdownConverter.convert(content, reference -> reference);
+            if (markdown.isPresent()) {
+                assertThat(markdown.get()).as(content).isEqualTo(convert(processor, content));
+                converted++;
+            }
+        }
+        assertThat(converted).isGreaterThan(1000);
+    }
+
+    @Test
+    public void streamingConverterDeclinesMarkupRepairedByTreeBuilder() {
+        List<Reference> references = new ArrayList<>();
+
+        assertThat(StreamingMarkdownConverter.convert("<a href=\"u\">a</a><table><tr><td>b</table>",
+                                                      reference -> {
+                                                          references.add(reference);
+                                                          return reference;
+                                                      })).isEmpty();
+        assertThat(StreamingMarkdownConverter.convert("<b><i>x</b>y</i>", reference -> reference)).isEmpty();
+        assertThat(StreamingMarkdownConverter.convert("<p>a<b>b</p>c", reference -> reference)).isEmpty();
+        assertThat(StreamingMarkdownConverter.convert("<span>a</div>", reference -> reference)).isEmpty();
+        assertThat(references).isEmpty();
+        assertThat(StreamingMarkdownConverter.convert("<p>one<p>two<ul><li>a<li>b</ul>", reference -> reference))
+                .isPresent();
+    }
+
+    /**
+     * Generates HTML of nested tags, paragraphs and list items are left open now and then.
+     */
+    private static String generate(Random random) {
+        StringBuilder html = new StringBuilder();
+        generate(random, html, 0);
+        return html.toString();
+    }
+
+    private static void generate(Random random, StringBuilder html, int depth) {
+        int nodes = 1 + random.nextInt(4);
+        for (int i = 0; i < nodes; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 4 || depth > 4) {
+                html.append(TEXTS[random.nextInt(TEXTS.length)]);
+            } else if (kind < 5) {
+                html.append(LEAVES[random.nextInt(LEAVES.length)]);
+            } else {
+                String tag = TAGS[random.nextInt(TAGS.length)];
+                html.append('<').append(tag);
+                if (tag.equals("a")) {
+                    html.append(" href=\"http://example.org/").append(depth).append(i).append('"');
+                }
+                html.append('>');
+                if (tag.equals("pre") && random.nextBoolean()) {
+                    html.append('\n');
+                }
+                generate(random, html, depth + 1);
+                if (!tag.equals("p") && !tag.equals("li") || random.nextBoolean()) {
+                    html.append("</").append(tag).append('>');
+                }
+            }
+        }
+    }
+
+    private static String convert(String content, ConvertSettings.ContentConverter contentConverter) {
+        return convert(processor(contentConverter), content);
+    }
+
+    private static String convert(PostItemProcessor processor, String content) {
+        Post post = new Post();
+        post.setTitle("Post");
+        post.setContent(content);
+        return processor.process(post).getProcessedContent();
+    }
+
+    private static PostItemProcessor processor(ConvertSettings.ContentConverter contentConverter) {
+        ConvertSettings convertSettings = new ConvertSettings();
+        convertSettings.setContentConverter(contentConverter);
+        SourcesSettings sourcesSettings = new SourcesSettings();
+        SourceDataSources sourceDataSources = new SourceDataSources(sourcesSettings);
+        SlugService slugService = new SlugService(convertSettings, sourcesSettings, sourceDataSources);
+        PermalinkIndex permalinkIndex = new PermalinkIndex(convertSettings, sourcesSettings, sourceDataSources,
+                                                           slugService);
+        return new PostItemProcessor(sourcesSettings, convertSettings, new SourceUrlResolver(sourcesSettings),
+                                     new UploadsIndex(convertSettings, sourcesSettings), slugService, permalinkIndex,
+                                     new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,137 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nantipov.utils.wordhugopress.config.ConvertSettings;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SlugServiceTest {
+
+    @TempDir
+    Path stateDir;
+
+    @Test
+    public void transliteratesTitles() {
+        assertThat(SlugService.slugify(" Привет, мир! 2024 ")).isEqualTo("privet-mir-2024");
+    }
+
+    @Test
+    public void disambiguatesCollidingPosts() {
+        SlugService slugService = slugService();
+        slugService.beforeJob(null);
+
+        assertThat(slugService.postDirectoryName(post("regular", 1, "Hello, world"), null)).isEqualTo("hello-world");
+        assertThat(slugService.postDirectoryName(post("shop", 7, "Hello world!"), null)).isEqualTo("hello-world-7");
+        assertThat(slugService.postDirectoryName(post("regular", 1, "Hello, world"), null)).isEqualTo("hello-world");
+    }
+
+    @Test
+    public void keepsDirectoriesBetweenRuns() {
+        SlugService slugService = slugService();
+        slugService.beforeJob(null);
+        slugService.postDirectoryName(post("regular", 1, "Hello"), null);
+        slugService.postDirectoryName(post("shop", 7, "Hello"), null);
+        slugService.afterJob(null);
+
+        SlugService nextRun = slugService();
+        nextRun.beforeJob(null);
+
+        assertThat(nextRun.postDirectoryName(post("shop", 7, "Hello"), null)).isEqualTo("hello-7");
+        assertThat(nextRun.postDirectoryName(post("regular", 1, "Hello"), null)).isEqualTo("hello");
+    }
+
+    @Test
+    public void numbersCollidingUntitledPostsByTheirIds() {
+        SlugService slugService = slugService();
+        slugService.beforeJob(null);
+
+        assertThat(slugService.postDirectoryName(post("regular", 5, ""), null)).isEqualTo("5");
+        assertThat(slugService.postDirectoryName(post("shop", 5, " "), null)).isEqualTo("5-2");
+        assertThat(slugService.postDirectoryName(post("news", 5, null), null)).isEqualTo("5-3");
+        assertThat(slugService.postDirectoryName(post("shop", 5, " "), null)).isEqualTo("5-2");
+    }
+
+    @Test
+    public void assignsDirectoriesOfDatabasePostsInOrderOfSourceAndId() {
+        SourcesSettings sourcesSettings = new SourcesSettings();
+        sourcesSettings.getSources().put("b-blog", source("(3, 'post', 'Hello'), (9, 'post', 'Hello')"));
+        sourcesSettings.getSources().put("a-blog", source("(12, 'post', 'Hello'), (2, 'page', 'Hello')"));
+        SourceDataSources sourceDataSources = new SourceDataSources(sourcesSettings);
+        try {
+            SlugService slugService = slugService(sourcesSettings, sourceDataSources);
+            slugService.beforeJob(null);
+
+            // converted in another order than the directories were assigned
+            assertThat(slugService.postDirectoryName(post("b-blog", 9, "Hello"), null)).isEqualTo("hello-9");
+            assertThat(slugService.postDirectoryName(post("b-blog", 3, "Hello"), null)).isEqualTo("hello-3");
+            assertThat(slugService.postDirectoryName(post("a-blog", 12, "Hello"), null)).isEqualTo("hello");
+        } finally {
+            sourceDataSources.destroy();
+        }
+    }
+
+    @Test
+    public void freesDirectoriesOfDeletedPosts() throws IOException {
+        SourcesSettings sourcesSettings = new SourcesSettings();
+        SourcesSettings.Source source = source("(3, 'post', 'Hello'), (5, 'post', 'Gone')");
+        sourcesSettings.getSources().put("blog", source);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(source.getDatabase().getUrl()));
+        SourceDataSources sourceDataSources = new SourceDataSources(sourcesSettings);
+        try {
+            SlugService slugService = slugService(sourcesSettings, sourceDataSources);
+            slugService.beforeJob(null);
+            assertThat(slugService.postDirectoryName(post("blog", 3, "Hello"), source)).isEqualTo("hello");
+            slugService.afterJob(null);
+
+            jdbcTemplate.execute("DELETE FROM wp_posts WHERE ID IN (3, 5)");
+            jdbcTemplate.execute("INSERT INTO wp_posts (ID, post_type, post_title) VALUES (9, 'post', 'Hello')");
+            SlugService nextRun = slugService(sourcesSettings, sourceDataSources);
+            nextRun.beforeJob(null);
+            nextRun.afterJob(null);
+
+            assertThat(nextRun.postDirectoryName(post("blog", 9, "Hello"), source)).isEqualTo("hello");
+            assertThat(Files.readAllLines(stateDir.resolve("slugs"))).containsExactly("blog/9\thello");
+        } finally {
+            sourceDataSources.destroy();
+        }
+    }
+
+    private SlugService slugService() {
+        SourcesSettings sourcesSettings = new SourcesSettings();
+        return slugService(sourcesSettings, new SourceDataSources(sourcesSettings));
+    }
+
+    private SlugService slugService(SourcesSettings sourcesSettings, SourceDataSources sourceDataSources) {
+        ConvertSettings convertSettings = new ConvertSettings();
+        convertSettings.setStateDir(stateDir);
+        return new SlugService(convertSettings, sourcesSettings, sourceDataSources);
+    }
+
+    private static SourcesSettings.Source source(String posts) {
+        SourcesSettings.Source source = new SourcesSettings.Source();
+        source.getDatabase().setUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(source.getDatabase().getUrl()));
+        jdbcTemplate.execute("CREATE TABLE wp_posts (ID BIGINT PRIMARY KEY, post_type VARCHAR(20), post_title TEXT, " +
+                             "post_name VARCHAR(200))");
+        jdbcTemplate.execute("INSERT INTO wp_posts (ID, post_type, post_title) VALUES " + posts);
+        return source;
+    }
+
+    private static Post post(String sourceName, long id, String title) {
+        Post post = new Post();
+        post.setSourceName(sourceName);
+        post.setId(id);
+        post.setTitle(title);
+        return post;
+    }
+}
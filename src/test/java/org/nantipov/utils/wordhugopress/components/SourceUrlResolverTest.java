@@ -0,0 +1,35 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import org.junit.jupiter.api.Test;
+import org.nantipov.utils.wordhugopress.config.SourcesSettings;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceUrlResolverTest {
+
+    @Test
+    public void resolvesLongestBaseUrlIgnoringSchemeAndWww() {
+        SourcesSettings sourcesSettings = new SourcesSettings();
+        SourcesSettings.Source blog = source(sourcesSettings, "blog", "http://www.Example.org/");
+        SourcesSettings.Source photos = source(sourcesSettings, "photos", "https://example.org/photos/");
+        source(sourcesSettings, "empty", null);
+        SourceUrlResolver resolver = new SourceUrlResolver(sourcesSettings);
+
+        assertThat(resolver.resolve("http://example.org/2020/01/post/")).isSameAs(blog);
+        assertThat(resolver.resolve("https://WWW.EXAMPLE.ORG/about/")).isSameAs(blog);
+        assertThat(resolver.resolve("http://www.example.org/photos/a.jpg")).isSameAs(photos);
+        assertThat(resolver.resolve("http://example.org/Photos/a.jpg")).isSameAs(blog);
+        assertThat(resolver.resolve("http://example.com/")).isNull();
+        assertThat(resolver.resolve("/relative/path")).isNull();
+
+        assertThat(resolver.belongsTo("http://example.org/photos/a.jpg", blog)).isTrue();
+        assertThat(resolver.belongsTo("http://example.org/a.jpg", photos)).isFalse();
+    }
+
+    private static SourcesSettings.Source source(SourcesSettings sourcesSettings, String name, String baseUrl) {
+        SourcesSettings.Source source = new SourcesSettings.Source();
+        source.setWordpressRemoteBaseUrl(baseUrl);
+        sourcesSettings.getSources().put(name, source);
+        return source;
+    }
+}
@@ -0,0 +1,106 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.nantipov.utils.wordhugopress.domain.Watermark;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlDumpPostItemReaderTest {
+
+    private static final String DUMP =
+            "-- MySQL dump 10.13\n" +
+            "/*!40101 SET NAMES utf8mb4 */;\n" +
+            "CREATE TABLE `wp_posts` (\n" +
+            "  `ID` bigint(20) unsigned NOT NULL AUTO_INCREMENT,\n" +
+            "  `post_author` bigint(20) unsigned NOT NULL DEFAULT '0',\n" +
+            "  `post_date` datetime NOT NULL DEFAULT '0000-00-00 00:00:00',\n" +
+            "  `post_content` longtext NOT NULL,\n" +
+            "  `post_title` text NOT NULL,\n" +
+            "  `post_status` varchar(20) NOT NULL DEFAULT 'publish',\n" +
+            "  `post_modified` datetime NOT NULL DEFAULT '0000-00-00 00:00:00',\n" +
+            "  `post_type` varchar(20) NOT NULL DEFAULT 'post',\n" +
+            "  PRIMARY KEY (`ID`),\n" +
+            "  KEY `type_status_date` (`post_type`,`post_status`,`post_date`,`ID`)\n" +
+            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;\n" +
+            "LOCK TABLES `wp_postmeta` WRITE;\n" +
+            "INSERT INTO `wp_postmeta` VALUES " +
+            "(1,20,'_wp_attachment_metadata','a:1:{s:4:\\\"file\\\";s:5:\\\"a.jpg\\\";}')," +
+            "(2,10,'_thumbnail_id','20'),(3,10,'_edit_lock','1600000000:1');\n" +
+            "UNLOCK TABLES;\n" +
+            "INSERT INTO `wp_posts` VALUES " +
+            "(10,1,'2020-01-02 03:04:05','<p>It\\'s (1, 2);</p>\\n','Hello','publish','2020-01-03 00:00:00','post')," +
+            "(11,1,'2020-01-02 03:04:05','About','About','publish','2020-01-03 00:00:00','page')," +
+            "(12,1,'2020-02-02 03:04:05','','Later','draft','2021-01-03 00:00:00','post');\n" +
+            "INSERT INTO `wp_term_relationships` VALUES (10,1,0),(10,2,0);\n" +
+            "INSERT INTO `wp_term_taxonomy` VALUES (1,1,'category','',0,1),(2,2,'post_tag','',0,1);\n" +
+            "INSERT INTO `wp_terms` VALUES (1,'News','news',0),(2,'Travel','travel',0);\n" +
+            "INSERT INTO `wp_users` VALUES (1,'admin','hash','admin','a@example.org','','2020-01-01 00:00:00','',0," +
+            "'Jane Doe');\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void readsPostsWithTaxonomyAndThumbnails() throws Exception {
+        SqlDumpPostItemReader reader = reader(null);
+        reader.open(new ExecutionContext());
+
+        Post post = reader.read();
+        assertThat(post.getId()).isEqualTo(10);
+        assertThat(post.getTitle()).isEqualTo("Hello");
+        assertThat(post.getContent()).isEqualTo("<p>It's (1, 2);</p>\n");
+        assertThat(post.getAuthor()).isEqualTo("Jane Doe");
+        assertThat(post.getCreatedAt()).isEqualTo(Timestamp.valueOf("2020-01-02 03:04:05"));
+        assertThat(post.getThumbnailRawData()).isEqualTo("a:1:{s:4:\"file\";s:5:\"a.jpg\";}");
+        assertThat(post.getTaxonomy().get("category")).containsExactly("News");
+        assertThat(post.getTaxonomy().get("post_tag")).containsExactly("Travel");
+
+        Post draft = reader.read();
+        assertThat(draft.getId()).isEqualTo(12);
+        assertThat(draft.isDraft()).isTrue();
+        assertThat(reader.read()).isNull();
+        reader.close();
+    }
+
+    @Test
+    public void restartsAfterLastReadPost() throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        SqlDumpPostItemReader reader = reader(null);
+        reader.open(executionContext);
+        reader.read();
+        reader.update(executionContext);
+        reader.close();
+
+        SqlDumpPostItemReader restartedReader = reader(null);
+        restartedReader.open(executionContext);
+        assertThat(restartedReader.read().getId()).isEqualTo(12);
+        restartedReader.close();
+    }
+
+    @Test
+    public void readsPostsAfterWatermark() throws Exception {
+        // the post modified at the moment of the watermark is converted already
+        SqlDumpPostItemReader reader = reader(new Watermark(Timestamp.valueOf("2020-01-03 00:00:00"), 10));
+        reader.open(new ExecutionContext());
+
+        assertThat(reader.read().getId()).isEqualTo(12);
+        assertThat(reader.read()).isNull();
+        reader.close();
+    }
+
+    private SqlDumpPostItemReader reader(Watermark watermark) throws Exception {
+        Path dump = dir.resolve("wordpress.sql");
+        Files.write(dump, DUMP.getBytes(StandardCharsets.UTF_8));
+        return new SqlDumpPostItemReader(dump, "wp", "blog", -1, Long.MAX_VALUE, watermark,
+                                         new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,154 @@
+package org.nantipov.utils.wordhugopress.components;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nantipov.utils.wordhugopress.domain.Post;
+import org.nantipov.utils.wordhugopress.domain.Watermark;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WxrPostItemReaderTest {
+
+    private static final String EXPORT =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n" +
+            "<rss version=\"2.0\"\n" +
+            "     xmlns:content=\"http://purl.org/rss/1.0/modules/content/\"\n" +
+            "     xmlns:dc=\"http://purl.org/dc/elements/1.1/\"\n" +
+            "     xmlns:wp=\"http://wordpress.org/export/1.2/\">\n" +
+            "<channel>\n" +
+            "  <title>Blog</title>\n" +
+            "  <wp:wxr_version>1.2</wp:wxr_version>\n" +
+            "  <wp:author>\n" +
+            "    <wp:author_id>1</wp:author_id>\n" +
+            "    <wp:author_login><![CDATA[admin]]></wp:author_login>\n" +
+            "    <wp:author_display_name><![CDATA[Jane Doe]]></wp:author_display_name>\n" +
+            "  </wp:author>\n" +
+            "  <item>\n" +
+            "    <title>Hello</title>\n" +
+            "    <dc:creator><![CDATA[admin]]></dc:creator>\n" +
+            "    <content:encoded><![CDATA[<p>It's <b>bold</b></p>]]></content:encoded>\n" +
+            "    <wp:post_id>10</wp:post_id>\n" +
+            "    <wp:post_date><![CDATA[2020-01-02 03:04:05]]></wp:post_date>\n" +
+            "    <wp:post_modified><![CDATA[2020-01-03 00:00:00]]></wp:post_modified>\n" +
+            "    <wp:status><![CDATA[publish]]></wp:status>\n" +
+            "    <wp:post_type><![CDATA[post]]></wp:post_type>\n" +
+            "    <category domain=\"category\" nicename=\"news\"><![CDATA[News]]></category>\n" +
+            "    <category domain=\"post_tag\" nicename=\"travel\"><![CDATA[Travel]]></category>\n" +
+            "    <wp:postmeta>\n" +
+            "      <wp:meta_key><![CDATA[_edit_lock]]></wp:meta_key>\n" +
+            "      <wp:meta_value><![CDATA[1600000000:1]]></wp:meta_value>\n" +
+            "    </wp:postmeta>\n" +
+            "    <wp:postmeta>\n" +
+            "      <wp:meta_key><![CDATA[_thumbnail_id]]></wp:meta_key>\n" +
+            "      <wp:meta_value><![CDATA[20]]></wp:meta_value>\n" +
+            "    </wp:postmeta>\n" +
+            "  </item>\n" +
+            "  <item>\n" +
+            "    <title>About</title>\n" +
+            "    <dc:creator><![CDATA[admin]]></dc:creator>\n" +
+            "    <content:encoded><![CDATA[About]]></content:encoded>\n" +
+            "    <wp:post_id>11</wp:post_id>\n" +
+            "    <wp:post_date><![CDATA[2020-01-02 03:04:05]]></wp:post_date>\n" +
+            "    <wp:post_modified><![CDATA[2020-01-03 00:00:00]]></wp:post_modified>\n" +
+            "    <wp:status><![CDATA[publish]]></wp:status>\n" +
+            "    <wp:post_type><![CDATA[page]]></wp:post_type>\n" +
+            "  </item>\n" +
+            "  <item>\n" +
+            "    <title>a.jpg</title>\n" +
+            "    <dc:creator><![CDATA[admin]]></dc:creator>\n" +
+            "    <content:encoded><![CDATA[]]></content:encoded>\n" +
+            "    <wp:post_id>20</wp:post_id>\n" +
+            "    <wp:post_date><![CDATA[2020-01-02 03:04:05]]></wp:post_date>\n" +
+            "    <wp:status><![CDATA[inherit]]></wp:status>\n" +
+            "    <wp:post_type><![CDATA[attachment]]></wp:post_type>\n" +
+            "    <wp:postmeta>\n" +
+            "      <wp:meta_key><![CDATA[_wp_attachment_metadata]]></wp:meta_key>\n" +
+            "      <wp:meta_value><![CDATA[a:1:{s:4:\"file\";s:5:\"a.jpg\";}]]></wp:meta_value>\n" +
+            "    </wp:postmeta>\n" +
+            "  </item>\n" +
+            "  <item>\n" +
+            "    <title>Later</title>\n" +
+            "    <dc:creator><![CDATA[guest]]></dc:creator>\n" +
+            "    <content:encoded><![CDATA[]]></content:encoded>\n" +
+            "    <wp:post_id>12</wp:post_id>\n" +
+            "    <wp:post_date><![CDATA[2020-02-02 03:04:05]]></wp:post_date>\n" +
+            "    <wp:post_modified><![CDATA[2021-01-03 00:00:00]]></wp:post_modified>\n" +
+            "    <wp:status><![CDATA[draft]]></wp:status>\n" +
+            "    <wp:post_type><![CDATA[post]]></wp:post_type>\n" +
+            "  </item>\n" +
+            "</channel>\n" +
+            "</rss>\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void readsPostsWithTaxonomyAndThumbnails() throws Exception {
+        WxrPostItemReader reader = reader(null);
+        reader.open(new ExecutionContext());
+
+        Post post = reader.read();
+        assertThat(post.getId()).isEqualTo(10);
+        assertThat(post.getSourceName()).isEqualTo("blog");
+        assertThat(post.getTitle()).isEqualTo("Hello");
+        assertThat(post.getContent()).isEqualTo("<p>It's <b>bold</b></p>");
+        assertThat(post.getAuthor()).isEqualTo("Jane Doe");
+        assertThat(post.getCreatedAt()).isEqualTo(Timestamp.valueOf("2020-01-02 03:04:05"));
+        assertThat(post.getModifiedAt()).isEqualTo(Timestamp.valueOf("2020-01-03 00:00:00"));
+        assertThat(post.isDraft()).isFalse();
+        assertThat(post.getThumbnailRawData()).isEqualTo("a:1:{s:4:\"file\";s:5:\"a.jpg\";}");
+        assertThat(post.getTaxonomy().get("category")).containsExactly("News");
+        assertThat(post.getTaxonomy().get("post_tag")).containsExactly("Travel");
+
+        // the page and the attachment are skipped, a draft is read as a draft, as from the database
+        Post draft = reader.read();
+        assertThat(draft.getId()).isEqualTo(12);
+        assertThat(draft.isDraft()).isTrue();
+        assertThat(draft.getAuthor()).isEqualTo("guest");
+        assertThat(draft.getThumbnailRawData()).isNull();
+        assertThat(draft.getTaxonomy().isEmpty()).isTrue();
+        assertThat(reader.read()).isNull();
+        reader.close();
+    }
+
+    @Test
+    public void restartsAfterLastReadPost() throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        WxrPostItemReader reader = reader(null);
+        reader.open(executionContext);
+        reader.read();
+        reader.update(executionContext);
+        reader.close();
+
+        WxrPostItemReader restartedReader = reader(null);
+        restartedReader.open(executionContext);
+        assertThat(restartedReader.read().getId()).isEqualTo(12);
+        assertThat(restartedReader.read()).isNull();
+        restartedReader.close();
+    }
+
+    @Test
+    public void readsPostsAfterWatermark() throws Exception {
+        // the post modified at the moment of the watermark is converted already
+        WxrPostItemReader reader = reader(new Watermark(Timestamp.valueOf("2020-01-03 00:00:00"), 10));
+        reader.open(new ExecutionContext());
+
+        assertThat(reader.read().getId()).isEqualTo(12);
+        assertThat(reader.read()).isNull();
+        reader.close();
+    }
+
+    private WxrPostItemReader reader(Watermark watermark) throws Exception {
+        Path export = dir.resolve("wordpress.xml");
+        Files.write(export, EXPORT.getBytes(StandardCharsets.UTF_8));
+        return new WxrPostItemReader(export, "blog", -1, Long.MAX_VALUE, watermark,
+                                     new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,109 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ArchiveExtractorTest {
+
+    private static final byte[] PAGE = "---\ntitle: Hello\n---\n".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void extractsTar() throws IOException {
+        Path archive = dir.resolve("content.tar");
+        // larger than the entries buffered in memory
+        byte[] video = new byte[9 * 1024 * 1024];
+        Arrays.fill(video, (byte) 7);
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(Files.newOutputStream(archive))) {
+            for (int i = 0; i < 100; i++) {
+                putTar(tar, "post-" + i + "/index.md", PAGE);
+            }
+            putTar(tar, "post-0/video.mp4", video);
+        }
+
+        long files = ArchiveExtractor.extract(archive, dir.resolve("content"), 4);
+
+        assertThat(files).isEqualTo(101);
+        for (int i = 0; i < 100; i++) {
+            assertThat(dir.resolve("content/post-" + i + "/index.md")).hasBinaryContent(PAGE);
+        }
+        assertThat(dir.resolve("content/post-0/video.mp4")).hasBinaryContent(video);
+    }
+
+    @Test
+    public void detectsZipByContent() throws IOException {
+        Path archive = dir.resolve("content.tar");
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(Files.newOutputStream(archive))) {
+            putZip(zip, "post/index.md", PAGE);
+        }
+
+        long files = ArchiveExtractor.extract(archive, dir.resolve("content"), 2);
+
+        assertThat(files).isEqualTo(1);
+        assertThat(dir.resolve("content/post/index.md")).hasBinaryContent(PAGE);
+    }
+
+    @Test
+    public void failsWhenFileCanNotBeWritten() throws IOException {
+        Path archive = dir.resolve("content.zip");
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(Files.newOutputStream(archive))) {
+            for (int i = 0; i < 100; i++) {
+                putZip(zip, "post-" + i + "/index.md", PAGE);
+            }
+        }
+        // a file is in the way of the directory of a post
+        Files.createDirectories(dir.resolve("content"));
+        Files.write(dir.resolve("content/post-3"), PAGE);
+
+        assertThatThrownBy(() -> ArchiveExtractor.extract(archive, dir.resolve("content"), 2))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining(archive.toString());
+    }
+
+    @Test
+    public void rejectsEntryOutsideOfTargetDirectory() throws IOException {
+        Path archive = dir.resolve("content.tar");
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(Files.newOutputStream(archive))) {
+            putTar(tar, "../outside.md", PAGE);
+        }
+
+        assertThatThrownBy(() -> ArchiveExtractor.extract(archive, dir.resolve("content"), 2))
+                .isInstanceOf(IOException.class);
+        assertThat(dir.resolve("outside.md")).doesNotExist();
+    }
+
+    private static void putTar(TarArchiveOutputStream tar, String name, byte[] data) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(data.length);
+        put(tar, entry, data);
+    }
+
+    private static void putZip(ZipArchiveOutputStream zip, String name, byte[] data) throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setSize(data.length);
+        put(zip, entry, data);
+    }
+
+    private static void put(ArchiveOutputStream out, ArchiveEntry entry, byte[] data) throws IOException {
+        out.putArchiveEntry(entry);
+        out.write(data);
+        out.closeArchiveEntry();
+    }
+}
@@ -0,0 +1,61 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import org.junit.jupiter.api.Test;
+import org.nantipov.utils.wordhugopress.domain.AttachmentMetadata;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class AttachmentMetadataParserTest {
+
+    private static final String METADATA =
+            "a:5:{s:5:\"width\";i:2048;s:6:\"height\";i:1536;s:4:\"file\";s:22:\"2020/01/fjällen-1.jpg\";" +
+            "s:5:\"sizes\";a:3:{" +
+            "s:9:\"thumbnail\";a:4:{s:4:\"file\";s:22:\"fjällen-1-150x150.jpg\";s:5:\"width\";i:150;" +
+            "s:6:\"height\";i:150;s:9:\"mime-type\";s:10:\"image/jpeg\";}" +
+            "s:6:\"medium\";a:4:{s:4:\"file\";s:22:\"fjällen-1-300x225.jpg\";s:5:\"width\";s:3:\"300\";" +
+            "s:6:\"height\";i:225;s:9:\"mime-type\";s:10:\"image/jpeg\";}" +
+            "s:5:\"large\";a:4:{s:4:\"file\";s:23:\"fjällen-1-1024x768.jpg\";s:5:\"width\";i:1024;" +
+            "s:6:\"height\";i:768;s:9:\"mime-type\";s:10:\"image/jpeg\";}" +
+            "}s:10:\"image_meta\";a:2:{s:7:\"caption\";s:9:\"a;b:\"c\";}\";s:8:\"keywords\";a:0:{}}}";
+
+    @Test
+    public void parsesOriginalAndVariants() {
+        AttachmentMetadata metadata = AttachmentMetadataParser.parse(METADATA);
+
+        assertThat(metadata).isNotNull();
+        assertThat(metadata.getFile()).isEqualTo("2020/01/fjällen-1.jpg");
+        assertThat(metadata.getWidth()).isEqualTo(2048);
+        assertThat(metadata.getHeight()).isEqualTo(1536);
+        assertThat(metadata.getVariants())
+                .extracting(AttachmentMetadata.Variant::getName, AttachmentMetadata.Variant::getWidth)
+                .containsExactly(tuple("thumbnail", 150), tuple("medium", 300), tuple("large", 1024));
+    }
+
+    @Test
+    public void choosesSmallestVariantWideEnough() {
+        AttachmentMetadata metadata = AttachmentMetadataParser.parse(METADATA);
+
+        assertThat(metadata.bestFit(800)).contains("2020/01/fjällen-1-1024x768.jpg");
+        assertThat(metadata.bestFit(300)).contains("2020/01/fjällen-1-300x225.jpg");
+        assertThat(metadata.bestFit(1600)).contains("2020/01/fjällen-1.jpg");
+        assertThat(metadata.bestFit(0)).contains("2020/01/fjällen-1.jpg");
+    }
+
+    @Test
+    public void toleratesWrongStringLengths() {
+        AttachmentMetadata metadata = AttachmentMetadataParser.parse(
+                "a:2:{s:4:\"file\";s:20:\"2020/01/fjällen-1.jpg\";s:5:\"width\";i:640;}"
+        );
+
+        assertThat(metadata.getFile()).isEqualTo("2020/01/fjällen-1.jpg");
+        assertThat(metadata.getWidth()).isEqualTo(640);
+    }
+
+    @Test
+    public void rejectsMalformedValue() {
+        assertThat(AttachmentMetadataParser.parse("a:2:{s:4:\"file\";")).isNull();
+        assertThat(AttachmentMetadataParser.parse("not serialized")).isNull();
+        assertThat(AttachmentMetadataParser.parse(null)).isNull();
+    }
+}
@@ -0,0 +1,57 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.support.ListItemReader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConcurrentCompositeItemReaderTest {
+
+    @Test
+    public void readsAllReaders() throws Exception {
+        ConcurrentCompositeItemReader<String> reader = ConcurrentCompositeItemReader.of(
+                "posts",
+                ImmutableMap.of("a", new ListItemReader<>(Arrays.asList("a1", "a2", "a3")),
+                                "b", new ListItemReader<>(Arrays.asList("b1", "b2"))),
+                1
+        );
+        reader.open(new ExecutionContext());
+        List<String> items = new ArrayList<>();
+        String item;
+        while ((item = reader.read()) != null) {
+            items.add(item);
+        }
+        reader.close();
+
+        assertThat(items).containsExactlyInAnyOrder("a1", "a2", "a3", "b1", "b2");
+    }
+
+    @Test
+    public void throwsFailureOfReader() {
+        ItemReader<String> failingReader = () -> {
+            throw new IllegalStateException("connection lost");
+        };
+        ConcurrentCompositeItemReader<String> reader = ConcurrentCompositeItemReader.of(
+                "posts",
+                ImmutableMap.of("a", new ListItemReader<>(Arrays.asList("a1", "a2")), "b", failingReader),
+                10
+        );
+        reader.open(new ExecutionContext());
+
+        assertThatThrownBy(() -> {
+            while (reader.read() != null) {
+                // drain until the failure arrives
+            }
+        }).isInstanceOf(IllegalStateException.class)
+          .hasMessage("connection lost");
+        reader.close();
+    }
+}
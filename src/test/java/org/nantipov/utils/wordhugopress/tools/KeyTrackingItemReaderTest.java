@@ -0,0 +1,86 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import org.junit.jupiter.api.Test;
+import org.nantipov.utils.wordhugopress.components.PostIdRangePartitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.support.ListItemReader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeyTrackingItemReaderTest {
+
+    private static final List<Long> IDS = List.of(3L, 5L, 8L, 13L, 21L, 34L);
+
+    @Test
+    public void restartsEveryPartitionAfterItsLastReadKey() throws Exception {
+        ExecutionContext first = partition(0, 13);
+        ExecutionContext second = partition(13, 34);
+        KeyTrackingItemReader<Long> firstReader = reader(13);
+        KeyTrackingItemReader<Long> secondReader = reader(34);
+        firstReader.open(first);
+        secondReader.open(second);
+        assertThat(firstReader.read()).isEqualTo(3);
+        assertThat(secondReader.read()).isEqualTo(21);
+        firstReader.update(first);
+        secondReader.update(second);
+        // read, but not committed
+        assertThat(firstReader.read()).isEqualTo(5);
+        firstReader.close();
+        secondReader.close();
+
+        assertThat(readAll(reader(13), first)).containsExactly(5L, 8L, 13L);
+        assertThat(readAll(reader(34), second)).containsExactly(34L);
+    }
+
+    @Test
+    public void keepsInitialKeyUntilItemIsRead() throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        KeyTrackingItemReader<Long> reader = new KeyTrackingItemReader<>(afterId -> items(afterId, 13), 5,
+                                                                         Long::longValue, "lastId");
+        reader.open(executionContext);
+        reader.update(executionContext);
+        reader.close();
+
+        assertThat(executionContext.containsKey("lastId")).isFalse();
+        assertThat(readAll(new KeyTrackingItemReader<>(afterId -> items(afterId, 13), 5, Long::longValue,
+                                                       "lastId"),
+                           executionContext)).containsExactly(8L, 13L);
+    }
+
+    private static ExecutionContext partition(long lastId, long maxId) {
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.putLong(PostIdRangePartitioner.KEY_LAST_ID, lastId);
+        executionContext.putLong(PostIdRangePartitioner.KEY_MAX_ID, maxId);
+        return executionContext;
+    }
+
+    /**
+     * Reader of a partition, as set up for partitioned steps: the initial key is taken from the partition.
+     */
+    private static KeyTrackingItemReader<Long> reader(long maxId) {
+        return new KeyTrackingItemReader<>(afterId -> items(afterId, maxId), -1, Long::longValue,
+                                           PostIdRangePartitioner.KEY_LAST_ID);
+    }
+
+    private static ListItemReader<Long> items(long afterId, long maxId) {
+        return new ListItemReader<>(IDS.stream()
+                                       .filter(id -> id > afterId && id <= maxId)
+                                       .collect(Collectors.toList()));
+    }
+
+    private static List<Long> readAll(KeyTrackingItemReader<Long> reader, ExecutionContext executionContext)
+            throws Exception {
+        List<Long> items = new ArrayList<>();
+        reader.open(executionContext);
+        Long item;
+        while ((item = reader.read()) != null) {
+            items.add(item);
+        }
+        reader.close();
+        return items;
+    }
+}
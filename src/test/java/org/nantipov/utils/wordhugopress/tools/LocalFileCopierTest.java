@@ -0,0 +1,56 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.nantipov.utils.wordhugopress.domain.LocalCopyMode;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LocalFileCopierTest {
+
+    private static final byte[] CONTENT = "uploaded file".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @EnumSource(LocalCopyMode.class)
+    public void copiesContent(LocalCopyMode mode) throws Exception {
+        Path source = Files.write(dir.resolve("source.jpg"), CONTENT);
+        Path target = dir.resolve("target.jpg");
+
+        LocalFileCopier.copy(source, target, mode);
+
+        assertThat(target).hasBinaryContent(CONTENT);
+        assertThat(source).hasBinaryContent(CONTENT);
+    }
+
+    @Test
+    public void linksWithinSameFileSystem() throws Exception {
+        Path source = Files.write(dir.resolve("source.jpg"), CONTENT);
+        Path target = dir.resolve("target.jpg");
+
+        LocalFileCopier.copy(source, target, LocalCopyMode.HARDLINK);
+
+        assertThat(Files.isSameFile(source, target)).isTrue();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = LocalCopyMode.class, names = "HARDLINK", mode = EnumSource.Mode.EXCLUDE)
+    public void keepsSourceWhenTargetChanges(LocalCopyMode mode) throws Exception {
+        Path source = Files.write(dir.resolve("source.jpg"), CONTENT);
+        Path target = dir.resolve("target.jpg");
+
+        LocalFileCopier.copy(source, target, mode);
+        Files.write(target, "edited".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(Files.isSameFile(source, target)).isFalse();
+        assertThat(source).hasBinaryContent(CONTENT);
+    }
+}
@@ -0,0 +1,76 @@
+package org.nantipov.utils.wordhugopress.tools;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PartitionItemReaderTest {
+
+    private static final List<String> ROWS = Arrays.asList("a1", "a2", "b1", "c1", "c2", "c3");
+
+    @Test
+    public void restartsFromLookAheadItem() throws Exception {
+        PartitionItemReader<String, List<String>> reader = reader();
+        ExecutionContext executionContext = new ExecutionContext();
+        reader.open(executionContext);
+        assertThat(reader.read()).containsExactly("a1", "a2");
+        reader.update(executionContext);
+        reader.close();
+
+        PartitionItemReader<String, List<String>> restartedReader = reader();
+        restartedReader.open(executionContext);
+        List<List<String>> partitions = new ArrayList<>();
+        List<String> partition;
+        while ((partition = restartedReader.read()) != null) {
+            partitions.add(partition);
+        }
+        restartedReader.close();
+
+        assertThat(partitions).containsExactly(Arrays.asList("b1"), Arrays.asList("c1", "c2", "c3"));
+    }
+
+    @Test
+    public void splitsLargePartitions() throws Exception {
+        PartitionItemReader<String, List<String>> reader =
+                new PartitionItemReader<>(new RowsReader(), row -> row.charAt(0), Collectors.toList(), 2);
+        reader.open(new ExecutionContext());
+        List<List<String>> partitions = new ArrayList<>();
+        List<String> partition;
+        while ((partition = reader.read()) != null) {
+            partitions.add(partition);
+        }
+
+        assertThat(partitions).containsExactly(Arrays.asList("a1", "a2"), Arrays.asList("b1"),
+                                               Arrays.asList("c1", "c2"), Arrays.asList("c3"));
+    }
+
+    private static PartitionItemReader<String, List<String>> reader() {
+        return new PartitionItemReader<>(new RowsReader(), row -> row.charAt(0), Collectors.toList(), -1);
+    }
+
+    private static class RowsReader extends AbstractItemCountingItemStreamItemReader<String> {
+        private RowsReader() {
+            setName("rows");
+        }
+
+        @Override
+        protected String doRead() {
+            return getCurrentItemCount() <= ROWS.size() ? ROWS.get(getCurrentItemCount() - 1) : null;
+        }
+
+        @Override
+        protected void doOpen() {
+        }
+
+        @Override
+        protected void doClose() {
+        }
+    }
+}